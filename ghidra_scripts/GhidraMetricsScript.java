@@ -45,11 +45,12 @@ public class GhidraMetricsScript extends GhidraScript {
 	
 	@Override
 	protected void run() {
+		GMMetricControllerHeadless controller = null;
 		try {
 			parseArgs();
 
 			String metricName = getArgValue(GMScriptArgument.ARG_METRIC);
-			GMMetricControllerHeadless controller = GhidraMetricsFactory.createHeadless(metricName, getCurrentProgram());
+			controller = GhidraMetricsFactory.createHeadless(metricName, getCurrentProgram(), monitor);
 
 			if (hasArg(GMScriptArgument.ARG_FUNCTION)) {
 				final String fnName = getArgValue(GMScriptArgument.ARG_FUNCTION);
@@ -104,6 +105,12 @@ public class GhidraMetricsScript extends GhidraScript {
 		} catch (Exception e) {
 			Msg.error(this, e.getMessage());
 			e.printStackTrace();
+
+		} finally {
+			// program listeners of the controller must not outlive the script
+			if (controller != null) {
+				controller.dispose();
+			}
 		}
 	}
 
@@ -21,6 +21,7 @@ import ghidra.framework.plugintool.PluginInfo;
 import ghidra.framework.plugintool.PluginTool;
 import ghidra.framework.plugintool.util.PluginStatus;
 import ghidra.program.util.ProgramLocation;
+import ghidra.program.util.ProgramSelection;
 import ghidra.util.HelpLocation;
 
 //@formatter:off
@@ -55,6 +56,11 @@ public class GhidraMetricsPlugin extends ProgramPlugin {
 		provider.locationChanged(loc);
 	}
 
+	@Override
+	protected void selectionChanged(ProgramSelection selection) {
+		provider.selectionChanged(selection);
+	}
+
 	public GhidraMetricsProvider getProvider() {
 		return provider;
 	}
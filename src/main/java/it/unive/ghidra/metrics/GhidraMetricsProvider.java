@@ -10,7 +10,10 @@ import javax.swing.JComponent;
 import docking.action.DockingAction;
 import ghidra.framework.plugintool.ComponentProviderAdapter;
 import ghidra.program.util.ProgramLocation;
+import ghidra.program.util.ProgramSelection;
 import ghidra.util.Msg;
+import ghidra.util.Swing;
+import ghidra.util.task.TaskLauncher;
 import it.unive.ghidra.metrics.base.GMBaseMetricExporter;
 import it.unive.ghidra.metrics.base.interfaces.GMMetricExporter;
 import it.unive.ghidra.metrics.base.interfaces.GMMetricControllerGUI;
@@ -73,13 +76,36 @@ public class GhidraMetricsProvider extends ComponentProviderAdapter {
 	}
 
 	public void showMainWindow() {
+		disposeMetricController();
 		metricController = null;
 		updateWindow();
 	}
 
 	public void showMetricWindow(String metricName) {
-		metricController = GhidraMetricsFactory.create(metricName, getPlugin());
-		updateWindow();
+		disposeMetricController();
+		metricController = null;
+
+		// the metric is computed in a modal dialog showing its progress, where it can be cancelled
+		GMMetricControllerGUI[] created = { null };
+		TaskLauncher.launchModal("Computing " + metricName, monitor -> {
+			created[0] = GhidraMetricsFactory.create(metricName, getPlugin(), monitor);
+		});
+
+		// the window is built and populated on the Swing thread, out of the task
+		Swing.runNow(() -> {
+			if (created[0] != null && !created[0].initWindow()) {
+				created[0].dispose();
+				created[0] = null;
+			}
+			metricController = created[0];
+			updateWindow();
+		});
+	}
+
+	private void disposeMetricController() {
+		if (metricController != null) {
+			metricController.dispose();
+		}
 	}
 
 	public void doExport(GMMetricExporter.FileFormat fileFormat) {
@@ -126,4 +152,12 @@ public class GhidraMetricsProvider extends ComponentProviderAdapter {
 		
 		metricController.locationChanged(loc);
 	}
+
+	public void selectionChanged(ProgramSelection selection) {
+		if ( metricController == null || selection == null || !isVisible() ) {
+			return;
+		}
+
+		metricController.selectionChanged(selection);
+	}
 }
\ No newline at end of file
@@ -10,10 +10,15 @@ import ghidra.program.model.listing.Function;
 import ghidra.program.model.listing.Program;
 import ghidra.program.util.ProgramLocation;
 import ghidra.util.Msg;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskLauncher;
+import ghidra.util.task.TaskMonitor;
 import it.unive.ghidra.metrics.GhidraMetricsPlugin;
 import it.unive.ghidra.metrics.base.interfaces.GMMetric;
 import it.unive.ghidra.metrics.base.interfaces.GMMetricControllerGUI;
 import it.unive.ghidra.metrics.base.interfaces.GMMetricControllerHeadless;
+import it.unive.ghidra.metrics.util.GMOptions;
+import it.unive.ghidra.metrics.util.GMTaskMonitor;
 
 //@formatter:off
 public abstract class GMBaseMetricController<
@@ -22,11 +27,28 @@ public abstract class GMBaseMetricController<
 	W extends GMBaseMetricWindow<M, C, W>>
 implements GMMetricControllerGUI, GMMetricControllerHeadless {
 //@formatter:on
+
+	/**
+	 * Suffix of the time budget option of a metric, in seconds: e.g. <code>halstead-time-budget=600</code>
+	 * cancels any Halstead computation running for more than ten minutes.
+	 */
+	public static final String OPTION_TIME_BUDGET = "-time-budget";
+
+	/**
+	 * A computation of the metric, reporting to and cancelled by the controller monitor.
+	 */
+	@FunctionalInterface
+	public interface GMComputation {
+		void run(GMTaskMonitor monitor) throws CancelledException;
+	}
+
 	protected final boolean guiEnabled;
 	protected final GhidraMetricsPlugin plugin;
 	protected final Program program;
+	protected final GMTaskMonitor monitor;
 
 	private final boolean initialized;
+	private final Class<W> windowClass;
 
 	protected M metric;
 	protected W window;
@@ -37,43 +59,80 @@ implements GMMetricControllerGUI, GMMetricControllerHeadless {
 	protected abstract void init();
 
 	public GMBaseMetricController(Program program, Class<M> metricClass) {
+		this(program, metricClass, TaskMonitor.DUMMY);
+	}
+
+	/**
+	 * @param monitor monitor of the headless run, e.g. the one of the script
+	 */
+	public GMBaseMetricController(Program program, Class<M> metricClass, TaskMonitor monitor) {
 		this.plugin = null;
 		this.program = program;
 		this.guiEnabled = false;
+		this.monitor = new GMTaskMonitor(monitor);
+		this.windowClass = null;
 
-		this.initialized = _init(metricClass, null);
+		this.initialized = _init(metricClass);
 	}
 
 	public GMBaseMetricController(GhidraMetricsPlugin plugin, Class<M> metricClass, Class<W> windowClass) {
+		this(plugin, metricClass, windowClass, TaskMonitor.DUMMY);
+	}
+
+	/**
+	 * Computes the metric; the window is built later by {@link #initWindow()}, on the Swing thread.
+	 *
+	 * @param monitor monitor of the task dialog the metric is created in, used only during the creation
+	 */
+	public GMBaseMetricController(GhidraMetricsPlugin plugin, Class<M> metricClass, Class<W> windowClass, TaskMonitor monitor) {
 		this.plugin = plugin;
 		this.program = plugin.getCurrentProgram();
 		this.guiEnabled = true;
+		this.monitor = new GMTaskMonitor(monitor);
+		this.windowClass = windowClass;
 
-		this.initialized = _init(metricClass, windowClass);
+		this.initialized = _init(metricClass);
+
+		// later computations run in their own task dialogs, see runTask
+		this.monitor.setDelegate(null);
 	}
 	
 
-	private final boolean _init(Class<M> metricClass, Class<W> windowClass) {
+	private final boolean _init(Class<M> metricClass) {
 		
 		if ( !_initMetric(metricClass) )
 			return false;
 
-		if ( guiEnabled && !_initWindown(windowClass) )
-			return false;
-		
-		init();
+		// the metric and the computations of init share one time budget
+		boolean[] initialized = { false };
+		runComputation(monitor -> {
+			initialized[0] = metric._init();
+			if ( initialized[0] ) {
+				init();
+			}
+		});
 
-		return true;
+		return initialized[0];
+	}
+
+	@Override
+	public boolean initWindow() {
+		return guiEnabled && _initWindown(windowClass);
 	}
 	
 	
 	@Override
 	public void printException(Exception e) {
+		if (e instanceof CancelledException) {
+			Msg.warn(this, "Computation cancelled" + (e.getMessage() != null ? ": " + e.getMessage() : ""));
+			return;
+		}
+
 		e.printStackTrace();
 		Msg.error(this, e);
 		
 		if ( guiEnabled ) {
-			Msg.showError(this, getWindow().getComponent(), "Generic Error", e.getMessage());
+			Msg.showError(this, window != null ? window.getComponent() : null, "Generic Error", e.getMessage());
 		}
 	}
 	
@@ -92,6 +151,54 @@ implements GMMetricControllerGUI, GMMetricControllerHeadless {
 		return window;
 	}
 
+	/**
+	 * @return the monitor of the metric computations, with the time budget of the metric
+	 */
+	public GMTaskMonitor getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * Runs a computation with the monitor of the controller, restarting its time budget unless it
+	 * is nested in another computation: in a modal task dialog that can cancel it when the GUI is
+	 * enabled, on the calling thread otherwise.
+	 *
+	 * @return false if the computation has been cancelled
+	 */
+	public boolean runTask(String title, GMComputation computation) {
+		if (!guiEnabled)
+			return runComputation(computation);
+
+		boolean[] completed = { false };
+		TaskLauncher.launchModal(title, taskMonitor -> {
+			TaskMonitor previous = monitor.setDelegate(taskMonitor);
+			try {
+				completed[0] = runComputation(computation);
+			} finally {
+				monitor.setDelegate(previous);
+			}
+		});
+		return completed[0];
+	}
+
+	/**
+	 * Runs a computation on the calling thread, see {@link GMTaskMonitor#begin()}.
+	 *
+	 * @return false if the computation has been cancelled
+	 */
+	protected boolean runComputation(GMComputation computation) {
+		monitor.begin();
+		try {
+			computation.run(monitor);
+			return true;
+		} catch (CancelledException e) {
+			printException(e);
+			return false;
+		} finally {
+			monitor.end();
+		}
+	}
+
 	@Override
 	public Program getProgram() {
 		return program;
@@ -123,7 +230,7 @@ implements GMMetricControllerGUI, GMMetricControllerHeadless {
 	
 	@Override
 	public void functionChanged(Function fn) {
-		metric.functionChanged(fn);
+		runComputation(monitor -> metric.functionChanged(fn));
 		
 		if ( guiEnabled ) {
 			window.refresh();
@@ -131,17 +238,23 @@ implements GMMetricControllerGUI, GMMetricControllerHeadless {
 	}
 
 
+	/**
+	 * Collects the metrics to export as one computation: the ones computed on demand, e.g. by
+	 * {@link #addExportableMetrics}, get their own time budget.
+	 */
 	@Override
-	public Collection<GMMetric> getExportableMetrics() {
+	public final Collection<GMMetric> getExportableMetrics() {
 		List<GMMetric> toExport = new ArrayList<>();
+		runComputation(monitor -> addExportableMetrics(toExport));
+		return toExport;
+	}
 
+	protected void addExportableMetrics(Collection<GMMetric> toExport) {
 		toExport.add(getMetric());
 		
 		if (getMetricFn() != null) {
 			toExport.add(getMetricFn());
 		}
-
-		return toExport;
 	}
 
 	public M getMetricFn() {
@@ -162,7 +275,10 @@ implements GMMetricControllerGUI, GMMetricControllerHeadless {
 			return false;
 		}
 
-		return metric._init();
+		long timeBudget = GMOptions.getLong(metric.getName().toLowerCase() + OPTION_TIME_BUDGET, 0);
+		monitor.setTimeBudget(timeBudget * 1000);
+
+		return true;
 	}
 
 	private final boolean _initWindown(Class<W> windowClass) {
@@ -16,6 +16,13 @@ public interface GMMetricController {
 	void functionChanged(Function fn);
 		
 	void printException(Exception e);
+
+	/**
+	 * Releases the resources (e.g. program listeners) held by the controller.
+	 */
+	default void dispose() {
+		// nothing to release
+	}
 	
 	default GMBaseMetricExporter.Builder makeExporter(GMMetricExporter.FileFormat exportType) {
 		return GMBaseMetricExporter.make(exportType, this);
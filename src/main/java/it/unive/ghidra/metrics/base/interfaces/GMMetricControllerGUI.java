@@ -1,6 +1,7 @@
 package it.unive.ghidra.metrics.base.interfaces;
 
 import ghidra.program.util.ProgramLocation;
+import ghidra.program.util.ProgramSelection;
 import it.unive.ghidra.metrics.GhidraMetricsPlugin;
 
 public interface GMMetricControllerGUI extends GMMetricController {
@@ -8,6 +9,18 @@ public interface GMMetricControllerGUI extends GMMetricController {
 	GhidraMetricsPlugin getPlugin();
 
 	GMWindow getWindow();
+
+	/**
+	 * Builds and populates the window of the computed metric: Swing components are created, so it
+	 * must run on the Swing thread.
+	 *
+	 * @return false if the window could not be built
+	 */
+	boolean initWindow();
 	
 	void locationChanged(ProgramLocation loc);
+
+	default void selectionChanged(ProgramSelection selection) {
+		// selections are ignored by default
+	}
 }
@@ -1,5 +1,6 @@
 package it.unive.ghidra.metrics.base.interfaces;
 
+import java.io.InputStream;
 import java.nio.file.Path;
 
 import it.unive.ghidra.metrics.util.ZipHelper.ZipException;
@@ -7,4 +8,27 @@ import it.unive.ghidra.metrics.util.ZipHelper.ZipException;
 @FunctionalInterface
 public interface GMZipper {
 	Path zip(Path dir, Path file) throws ZipException;
-}
\ No newline at end of file
+
+	/**
+	 * @return the compression level, -1 for the fixed level of the zipper
+	 */
+	default int getLevel() {
+		return -1;
+	}
+
+	/**
+	 * @return true if the zipper can compute compressed sizes without writing files, see {@link #zipSize(InputStream...)}
+	 */
+	default boolean canZipInMemory() {
+		return false;
+	}
+
+	/**
+	 * Compresses the concatenation of the inputs, discarding the output.
+	 * 
+	 * @return the compressed size in bytes
+	 */
+	default long zipSize(InputStream... inputs) throws ZipException {
+		throw new ZipException("In-memory compression not supported");
+	}
+}
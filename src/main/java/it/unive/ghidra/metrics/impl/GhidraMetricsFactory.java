@@ -9,6 +9,7 @@ import java.util.stream.Collectors;
 
 import ghidra.program.model.listing.Program;
 import ghidra.util.Msg;
+import ghidra.util.task.TaskMonitor;
 import it.unive.ghidra.metrics.GhidraMetricsPlugin;
 import it.unive.ghidra.metrics.base.interfaces.GMMetricExporter;
 import it.unive.ghidra.metrics.base.interfaces.GMMetricExporter.FileFormat;
@@ -16,6 +17,8 @@ import it.unive.ghidra.metrics.base.interfaces.GMMetricController;
 import it.unive.ghidra.metrics.base.interfaces.GMMetricControllerGUI;
 import it.unive.ghidra.metrics.base.interfaces.GMMetricControllerHeadless;
 import it.unive.ghidra.metrics.base.interfaces.GMZipper;
+import it.unive.ghidra.metrics.impl.callgraph.GMCallGraph;
+import it.unive.ghidra.metrics.impl.callgraph.GMCallGraphController;
 import it.unive.ghidra.metrics.impl.halstead.GMHalstead;
 import it.unive.ghidra.metrics.impl.halstead.GMHalsteadController;
 import it.unive.ghidra.metrics.impl.mccabe.GMMcCabe;
@@ -35,13 +38,15 @@ public class GhidraMetricsFactory {
 		CONTROLLERS_TABLE.put(GMHalstead.LOOKUP_NAME, GMHalsteadController.class);
 		CONTROLLERS_TABLE.put(GMSimilarity.LOOKUP_NAME, GMSimilarityController.class);
 		CONTROLLERS_TABLE.put(GMMcCabe.LOOKUP_NAME, GMMcCabeController.class);
+		CONTROLLERS_TABLE.put(GMCallGraph.LOOKUP_NAME, GMCallGraphController.class);
 
 		METRICNAMES_TABLE.put(GMHalstead.NAME, GMHalstead.LOOKUP_NAME);
 		METRICNAMES_TABLE.put(GMMcCabe.NAME, GMMcCabe.LOOKUP_NAME);
 		METRICNAMES_TABLE.put(GMSimilarity.NAME, GMSimilarity.LOOKUP_NAME);
+		METRICNAMES_TABLE.put(GMCallGraph.NAME, GMCallGraph.LOOKUP_NAME);
 
-		ZIPPERS_TABLE.put("zip", ZipHelper::zip);
-		ZIPPERS_TABLE.put("gzip", ZipHelper::gzip);
+		ZIPPERS_TABLE.put("zip", ZipHelper.inMemory(ZipHelper::zip, ZipHelper::zipSize));
+		ZIPPERS_TABLE.put("gzip", ZipHelper.inMemory(ZipHelper::gzip, ZipHelper::gzipSize));
 		ZIPPERS_TABLE.put("rzip", ZipHelper::rzip);
 
 		for (GMMetricExporter.FileFormat ff : FileFormat.values()) {
@@ -84,15 +89,29 @@ public class GhidraMetricsFactory {
 		return ZIPPERS_TABLE.get(name);
 	}
 
+	/**
+	 * @return the name the zipper is registered with, or null
+	 */
+	public static String getZipperName(GMZipper zipper) {
+		return ZIPPERS_TABLE.entrySet().stream().filter(e -> e.getValue() == zipper).map(Map.Entry::getKey).findFirst().orElse(null);
+	}
+
 	public static GMMetricControllerGUI create(String metricName, GhidraMetricsPlugin plugin) {
+		return create(metricName, plugin, TaskMonitor.DUMMY);
+	}
+
+	/**
+	 * @param monitor monitor of the task dialog the metric is computed in
+	 */
+	public static GMMetricControllerGUI create(String metricName, GhidraMetricsPlugin plugin, TaskMonitor monitor) {
 		GMMetricControllerGUI manager = null;
 
 		Class<? extends GMMetricController> managerClz = lookupControllerByMetric(metricName);
 		try {
 			Constructor<? extends GMMetricController> constructor = managerClz
-					.getConstructor(GhidraMetricsPlugin.class);
+					.getConstructor(GhidraMetricsPlugin.class, TaskMonitor.class);
 			if (constructor != null) {
-				manager = (GMMetricControllerGUI) constructor.newInstance(plugin);
+				manager = (GMMetricControllerGUI) constructor.newInstance(plugin, monitor);
 
 				if (!manager.isInitialized()) {
 					throw new InstantiationException("Manager not initialized");
@@ -111,13 +130,20 @@ public class GhidraMetricsFactory {
 	}
 
 	public static GMMetricControllerHeadless createHeadless(String metricName, Program program) {
+		return createHeadless(metricName, program, TaskMonitor.DUMMY);
+	}
+
+	/**
+	 * @param monitor monitor of the headless run, e.g. the one of the script
+	 */
+	public static GMMetricControllerHeadless createHeadless(String metricName, Program program, TaskMonitor monitor) {
 		GMMetricControllerHeadless manager = null;
 
 		Class<? extends GMMetricController> managerClz = lookupControllerByMetric(metricName);
 		try {
-			Constructor<? extends GMMetricController> constructor = managerClz.getConstructor(Program.class);
+			Constructor<? extends GMMetricController> constructor = managerClz.getConstructor(Program.class, TaskMonitor.class);
 			if (constructor != null) {
-				manager = (GMMetricControllerHeadless) constructor.newInstance(program);
+				manager = (GMMetricControllerHeadless) constructor.newInstance(program, monitor);
 
 				if (!manager.isInitialized()) {
 					throw new InstantiationException("Manager not initialized");
@@ -0,0 +1,183 @@
+package it.unive.ghidra.metrics.impl.callgraph;
+
+import java.math.BigDecimal;
+
+import ghidra.program.model.listing.Function;
+import ghidra.util.exception.CancelledException;
+import it.unive.ghidra.metrics.base.GMBaseMetric;
+import it.unive.ghidra.metrics.base.interfaces.GMMeasure;
+import it.unive.ghidra.metrics.base.interfaces.GMMeasureKey;
+
+public class GMCallGraph extends GMBaseMetric<GMCallGraph, GMCallGraphController, GMCallGraphWindow> {
+	public static final String NAME = "CallGraph";
+	public static final String LOOKUP_NAME = "callgraph";
+
+	private static final String[] 
+			TABLE_COLUMNS = { "Name", "Value", "Description", "Formula" };
+	private static final java.util.function.Function<GMMeasure<?>, Object[]> 
+			TABLE_ROWS_FUNCTION = measure -> new Object[] {
+				measure.getKey().getName(), 
+				measure.getValue(), 
+				measure.getKey().getInfo(GMMeasureKey.KEY_INFO_DESCRIPTION),
+				measure.getKey().getInfo(GMMeasureKey.KEY_INFO_FORMULA)
+			};
+
+	/**
+	 * Function of a {@link GMCallGraphAnalysis}: measures are read from the analysis arrays.
+	 */
+	public static final class GMCallGraphFunction extends GMCallGraph {
+
+		private final GMCallGraphAnalysis analysis;
+		private final int fn;
+
+		protected GMCallGraphFunction(GMCallGraphController controller, GMCallGraphAnalysis analysis, int fn) {
+			super(NAME, controller);
+			this.analysis = analysis;
+			this.fn = fn;
+		}
+
+		@Override
+		public boolean init() {
+			GMCallGraphKey.FUNCTION_KEYS.forEach(key -> {
+				createMeasure(key);
+			});
+			return true;
+		}
+
+		@Override
+		public String getName() {
+			Function function = getFunction();
+			String fnName = function != null ? function.getName() : analysis.getGraph().getFunctionEntry(fn).toString();
+			return super.getName() + "." + fnName;
+		}
+
+		public Function getFunction() {
+			return program.getFunctionManager().getFunctionAt(analysis.getGraph().getFunctionEntry(fn));
+		}
+
+		public BigDecimal getFanIn() {
+			return BigDecimal.valueOf(analysis.getFanIn(fn));
+		}
+
+		public BigDecimal getFanOut() {
+			return BigDecimal.valueOf(analysis.getFanOut(fn));
+		}
+
+		public BigDecimal getCallSites() {
+			return BigDecimal.valueOf(analysis.getCallSites(fn));
+		}
+
+		public BigDecimal getCallDepth() {
+			return BigDecimal.valueOf(analysis.getCallDepth(fn));
+		}
+
+		public BigDecimal getComponentSize() {
+			return BigDecimal.valueOf(analysis.getComponentSize(fn));
+		}
+	}
+
+	private BigDecimal numFunctions;
+	private BigDecimal numCalls;
+	private BigDecimal numCallSites;
+	private BigDecimal numRecursive;
+	private BigDecimal maxFanIn;
+	private BigDecimal maxFanOut;
+	private BigDecimal maxCallDepth;
+
+	protected GMCallGraph(String name, GMCallGraphController controller) {
+		super(name, controller);
+	}
+
+	public GMCallGraph(GMCallGraphController controller) {
+		this(NAME, controller);
+	}
+
+	@Override
+	public boolean init() {
+		try {
+			return init(getController().getAnalysis());
+
+		} catch (CancelledException e) {
+			controller.printException(e);
+		}
+
+		return false;
+	}
+
+	protected boolean init(GMCallGraphAnalysis analysis) {
+		this.numFunctions = BigDecimal.valueOf(analysis.getGraph().numFunctions());
+		this.numCalls = BigDecimal.valueOf(analysis.getGraph().numEdges());
+		this.numCallSites = BigDecimal.valueOf(analysis.numCallSites());
+		this.numRecursive = BigDecimal.valueOf(analysis.numRecursive());
+		this.maxFanIn = BigDecimal.valueOf(analysis.maxFanIn());
+		this.maxFanOut = BigDecimal.valueOf(analysis.maxFanOut());
+		this.maxCallDepth = BigDecimal.valueOf(analysis.maxCallDepth());
+
+		GMCallGraphKey.PROGRAM_KEYS.forEach(key -> {
+			createMeasure(key);
+		});
+
+		return true;
+	}
+
+	/**
+	 * Replaces the measures with the ones of a new analysis.
+	 */
+	public boolean update(GMCallGraphAnalysis analysis) {
+		clearMeasures();
+		return init(analysis);
+	}
+
+	@Override
+	protected void functionChanged(Function function) {
+		// the last analysis: the call graph is rebuilt on request only, see GMCallGraphController#recompute
+		GMCallGraphAnalysis analysis = getController().getLastAnalysis();
+		int fn = analysis != null ? analysis.getGraph().functionIndex(function.getEntryPoint()) : -1;
+		if (fn < 0) {
+			controller.setMetricFn(null);
+			return;
+		}
+
+		controller.setMetricFn(new GMCallGraphFunction(controller, analysis, fn));
+		controller.getMetricFn().init();
+	}
+
+	public BigDecimal getNumFunctions() {
+		return numFunctions;
+	}
+
+	public BigDecimal getNumCalls() {
+		return numCalls;
+	}
+
+	public BigDecimal getNumCallSites() {
+		return numCallSites;
+	}
+
+	public BigDecimal getNumRecursiveFunctions() {
+		return numRecursive;
+	}
+
+	public BigDecimal getMaxFanIn() {
+		return maxFanIn;
+	}
+
+	public BigDecimal getMaxFanOut() {
+		return maxFanOut;
+	}
+
+	public BigDecimal getMaxCallDepth() {
+		return maxCallDepth;
+	}
+
+	@Override
+	public String[] getTableColumns() {
+		return TABLE_COLUMNS;
+	}
+
+	@Override
+	public java.util.function.Function<GMMeasure<?>, Object[]> getTableRowFn() {
+		return TABLE_ROWS_FUNCTION;
+	}
+
+}
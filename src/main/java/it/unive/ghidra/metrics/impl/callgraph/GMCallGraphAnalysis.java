@@ -0,0 +1,213 @@
+package it.unive.ghidra.metrics.impl.callgraph;
+
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+
+/**
+ * Call metrics of every function of a {@link GMCallGraphSnapshot}, computed in linear time.
+ *
+ * Strongly connected components are found with an iterative Tarjan visit, which emits them in
+ * reverse topological order: the call depth of a component, the longest chain of calls down to
+ * a function calling nothing, is known as soon as it is emitted. Calls inside a component count
+ * zero, so mutually recursive functions share their depth.
+ */
+public final class GMCallGraphAnalysis {
+
+	private final GMCallGraphSnapshot graph;
+
+	private final int[] component; // component of each function, in reverse topological order
+	private final int[] componentSize;
+	private final int[] componentDepth;
+	private final boolean[] recursive; // in a component with a cycle, self calls included
+
+	private int numComponents;
+	private int numRecursive;
+	private int numCallSites;
+	private int maxFanIn;
+	private int maxFanOut;
+	private int maxDepth;
+
+	private GMCallGraphAnalysis(GMCallGraphSnapshot graph) {
+		int numFunctions = graph.numFunctions();
+
+		this.graph = graph;
+		this.component = new int[numFunctions];
+		this.componentSize = new int[numFunctions];
+		this.componentDepth = new int[numFunctions];
+		this.recursive = new boolean[numFunctions];
+	}
+
+	public static GMCallGraphAnalysis analyze(GMCallGraphSnapshot graph, TaskMonitor monitor) throws CancelledException {
+		GMCallGraphAnalysis analysis = new GMCallGraphAnalysis(graph);
+		analysis.components(monitor);
+		analysis.totals();
+		return analysis;
+	}
+
+	private void components(TaskMonitor monitor) throws CancelledException {
+		int numFunctions = graph.numFunctions();
+
+		int[] index = new int[numFunctions]; // visit order + 1, 0 if not visited
+		int[] low = new int[numFunctions];
+		int[] nextEdge = new int[numFunctions];
+		boolean[] onStack = new boolean[numFunctions];
+		int[] stack = new int[numFunctions];
+		int[] path = new int[numFunctions];
+		int top = 0, depth = 0, counter = 0;
+
+		monitor.initialize(numFunctions);
+
+		for (int root = 0; root < numFunctions; root++) {
+			if (index[root] != 0)
+				continue;
+
+			monitor.checkCanceled();
+			index[root] = low[root] = ++counter;
+			nextEdge[root] = graph.succStart(root);
+			stack[top++] = root;
+			onStack[root] = true;
+			path[depth++] = root;
+
+			while (depth > 0) {
+				int fn = path[depth - 1];
+
+				if (nextEdge[fn] < graph.succEnd(fn)) {
+					int callee = graph.succTarget(nextEdge[fn]++);
+					if (index[callee] == 0) {
+						index[callee] = low[callee] = ++counter;
+						nextEdge[callee] = graph.succStart(callee);
+						stack[top++] = callee;
+						onStack[callee] = true;
+						path[depth++] = callee;
+					} else if (onStack[callee]) {
+						low[fn] = Math.min(low[fn], index[callee]);
+					}
+					continue;
+				}
+
+				depth--;
+				if (depth > 0) {
+					int caller = path[depth - 1];
+					low[caller] = Math.min(low[caller], low[fn]);
+				}
+
+				if (low[fn] == index[fn]) {
+					int c = numComponents++;
+					int first = top;
+					do {
+						int member = stack[--first];
+						onStack[member] = false;
+						component[member] = c;
+					} while (stack[first] != fn);
+
+					// callees outside the component belong to components already emitted
+					boolean cyclic = top - first > 1;
+					int cDepth = 0;
+					for (int i = first; i < top; i++) {
+						int member = stack[i];
+						for (int edge = graph.succStart(member); edge < graph.succEnd(member); edge++) {
+							int callee = graph.succTarget(edge);
+							if (component[callee] != c) {
+								cDepth = Math.max(cDepth, componentDepth[component[callee]] + 1);
+							} else if (callee == member) {
+								cyclic = true;
+							}
+						}
+					}
+					componentSize[c] = top - first;
+					componentDepth[c] = cDepth;
+
+					if (cyclic) {
+						for (int i = first; i < top; i++) {
+							recursive[stack[i]] = true;
+						}
+						numRecursive += top - first;
+					}
+
+					monitor.incrementProgress(top - first);
+					top = first;
+				}
+			}
+		}
+	}
+
+	private void totals() {
+		for (int fn = 0; fn < graph.numFunctions(); fn++) {
+			numCallSites += graph.getCallSites(fn);
+			maxFanIn = Math.max(maxFanIn, getFanIn(fn));
+			maxFanOut = Math.max(maxFanOut, getFanOut(fn));
+			maxDepth = Math.max(maxDepth, getCallDepth(fn));
+		}
+	}
+
+	public GMCallGraphSnapshot getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the number of distinct functions calling the function
+	 */
+	public int getFanIn(int fn) {
+		return graph.predEnd(fn) - graph.predStart(fn);
+	}
+
+	/**
+	 * @return the number of distinct functions called by the function
+	 */
+	public int getFanOut(int fn) {
+		return graph.succEnd(fn) - graph.succStart(fn);
+	}
+
+	public int getCallSites(int fn) {
+		return graph.getCallSites(fn);
+	}
+
+	/**
+	 * @return the length of the longest chain of calls from the function, recursive calls excluded
+	 */
+	public int getCallDepth(int fn) {
+		return componentDepth[component[fn]];
+	}
+
+	/**
+	 * @return the strongly connected component of the function; the components it calls have lower numbers
+	 */
+	public int getComponent(int fn) {
+		return component[fn];
+	}
+
+	/**
+	 * @return the number of functions in the strongly connected component of the function
+	 */
+	public int getComponentSize(int fn) {
+		return componentSize[component[fn]];
+	}
+
+	public boolean isRecursive(int fn) {
+		return recursive[fn];
+	}
+
+	public int numComponents() {
+		return numComponents;
+	}
+
+	public int numRecursive() {
+		return numRecursive;
+	}
+
+	public int numCallSites() {
+		return numCallSites;
+	}
+
+	public int maxFanIn() {
+		return maxFanIn;
+	}
+
+	public int maxFanOut() {
+		return maxFanOut;
+	}
+
+	public int maxCallDepth() {
+		return maxDepth;
+	}
+}
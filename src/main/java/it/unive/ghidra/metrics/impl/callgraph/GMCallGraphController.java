@@ -0,0 +1,117 @@
+package it.unive.ghidra.metrics.impl.callgraph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ghidra.program.model.listing.Program;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+import it.unive.ghidra.metrics.GhidraMetricsPlugin;
+import it.unive.ghidra.metrics.base.GMBaseMetricController;
+import it.unive.ghidra.metrics.base.interfaces.GMMetric;
+import it.unive.ghidra.metrics.impl.callgraph.GMCallGraph.GMCallGraphFunction;
+import it.unive.ghidra.metrics.util.GMOptions;
+
+public class GMCallGraphController extends GMBaseMetricController<GMCallGraph, GMCallGraphController, GMCallGraphWindow> {
+
+	/**
+	 * Exports the measures of all the functions of the program.
+	 */
+	public static final String OPTION_ALL_FUNCTIONS = "callgraph-all-functions";
+
+	private GMCallGraphAnalysis analysis;
+
+	public GMCallGraphController(Program program) {
+		super(program, GMCallGraph.class);
+	}
+
+	public GMCallGraphController(Program program, TaskMonitor monitor) {
+		super(program, GMCallGraph.class, monitor);
+	}
+
+	public GMCallGraphController(GhidraMetricsPlugin plugin) {
+		super(plugin, GMCallGraph.class, GMCallGraphWindow.class);
+	}
+
+	public GMCallGraphController(GhidraMetricsPlugin plugin, TaskMonitor monitor) {
+		super(plugin, GMCallGraph.class, GMCallGraphWindow.class, monitor);
+	}
+
+	@Override
+	protected void init() {
+		// the analysis is built by the program metric
+	}
+
+	/**
+	 * Call graph analysis, rebuilt when the program has been modified since the last build.
+	 */
+	public synchronized GMCallGraphAnalysis getAnalysis() throws CancelledException {
+		if (analysis == null || !analysis.getGraph().isValid()) {
+			GMCallGraphSnapshot graph = GMCallGraphSnapshot.build(getProgram(), getMonitor());
+			analysis = GMCallGraphAnalysis.analyze(graph, getMonitor());
+		}
+		return analysis;
+	}
+
+	/**
+	 * @return the last analysis built, possibly older than the program, or null
+	 */
+	public synchronized GMCallGraphAnalysis getLastAnalysis() {
+		return analysis;
+	}
+
+	/**
+	 * @return true if the program has been modified since the last analysis
+	 */
+	public synchronized boolean isOutdated() {
+		return analysis == null || !analysis.getGraph().isValid();
+	}
+
+	/**
+	 * Rebuilds the analysis if the program has been modified and updates the measures.
+	 */
+	public void recompute() {
+		GMCallGraphAnalysis[] result = { null };
+		boolean completed = runTask("Call graph", monitor -> result[0] = getAnalysis());
+
+		if (completed) {
+			getMetric().update(result[0]);
+
+			GMCallGraph metricFn = getMetricFn();
+			if (metricFn instanceof GMCallGraphFunction) {
+				getMetric().functionChanged(((GMCallGraphFunction) metricFn).getFunction());
+			}
+
+			if (guiEnabled) {
+				getWindow().refreshAll();
+			}
+		}
+	}
+
+	/**
+	 * @return the metric of each function of the last analysis, empty if there is none
+	 */
+	public List<GMCallGraph> getFunctionsMetrics() {
+		List<GMCallGraph> rows = new ArrayList<>();
+
+		GMCallGraphAnalysis analysis = getLastAnalysis();
+		if (analysis != null) {
+			for (int fn = 0; fn < analysis.getGraph().numFunctions(); fn++) {
+				GMCallGraph rowMetric = new GMCallGraphFunction(this, analysis, fn);
+				if (rowMetric.init()) {
+					rows.add(rowMetric);
+				}
+			}
+		}
+		return rows;
+	}
+
+	@Override
+	protected void addExportableMetrics(Collection<GMMetric> toExport) {
+		super.addExportableMetrics(toExport);
+		if (GMOptions.getBoolean(OPTION_ALL_FUNCTIONS, false)) {
+			toExport.addAll(getFunctionsMetrics());
+		}
+	}
+}
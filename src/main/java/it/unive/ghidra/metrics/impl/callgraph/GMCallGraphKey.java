@@ -0,0 +1,52 @@
+package it.unive.ghidra.metrics.impl.callgraph;
+
+import java.util.List;
+
+import it.unive.ghidra.metrics.base.GMBaseMeasureKey;
+import it.unive.ghidra.metrics.base.interfaces.GMMeasureKey;
+
+public final class GMCallGraphKey extends GMBaseMeasureKey {
+
+	private static final GMCallGraphKey NUM_FUNCTIONS;
+	private static final GMCallGraphKey NUM_CALLS;
+	private static final GMCallGraphKey NUM_CALL_SITES;
+	private static final GMCallGraphKey NUM_RECURSIVE_FUNCTIONS;
+	private static final GMCallGraphKey MAX_FAN_IN;
+	private static final GMCallGraphKey MAX_FAN_OUT;
+	private static final GMCallGraphKey MAX_CALL_DEPTH;
+
+	private static final GMCallGraphKey FAN_IN;
+	private static final GMCallGraphKey FAN_OUT;
+	private static final GMCallGraphKey CALL_SITES;
+	private static final GMCallGraphKey CALL_DEPTH;
+	private static final GMCallGraphKey COMPONENT_SIZE;
+
+	private static int sn = 0;
+
+	static {
+		//@formatter:off
+		NUM_FUNCTIONS	= new GMCallGraphKey("Num Functions", "Number of functions, external ones excluded.", null);
+		NUM_CALLS	= new GMCallGraphKey("Num Calls", "Number of distinct caller-callee pairs.", null);
+		NUM_CALL_SITES	= new GMCallGraphKey("Num Call Sites", "Number of call references.", null);
+		NUM_RECURSIVE_FUNCTIONS	= new GMCallGraphKey("Num Recursive Functions", "Number of functions calling themselves, directly or through other functions.", null);
+		MAX_FAN_IN	= new GMCallGraphKey("Max Fan In", "Maximum fan-in of the functions.", null);
+		MAX_FAN_OUT	= new GMCallGraphKey("Max Fan Out", "Maximum fan-out of the functions.", null);
+		MAX_CALL_DEPTH	= new GMCallGraphKey("Max Call Depth", "Maximum call depth of the functions.", null);
+
+		FAN_IN	= new GMCallGraphKey("Fan In", "Number of distinct functions calling the function.", null);
+		FAN_OUT	= new GMCallGraphKey("Fan Out", "Number of distinct functions called by the function.", null);
+		CALL_SITES	= new GMCallGraphKey("Call Sites", "Number of call references of the function.", null);
+		CALL_DEPTH	= new GMCallGraphKey("Call Depth", "Longest chain of calls from the function, recursive calls excluded.", null);
+		COMPONENT_SIZE	= new GMCallGraphKey("Component Size", "Number of mutually recursive functions the function belongs to.", "1 if not mutually recursive");
+		//@formatter:on
+	}
+
+	public static final List<GMBaseMeasureKey> PROGRAM_KEYS = List.of(NUM_FUNCTIONS, NUM_CALLS, NUM_CALL_SITES, NUM_RECURSIVE_FUNCTIONS, MAX_FAN_IN, MAX_FAN_OUT, MAX_CALL_DEPTH);
+
+	public static final List<GMBaseMeasureKey> FUNCTION_KEYS = List.of(FAN_IN, FAN_OUT, CALL_SITES, CALL_DEPTH, COMPONENT_SIZE);
+
+	public GMCallGraphKey(String name, String description, String formula) {
+		super(GMMeasureKey.Type.NUMERIC, name, description, formula, sn++);
+	}
+
+}
@@ -0,0 +1,232 @@
+package it.unive.ghidra.metrics.impl.callgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressIterator;
+import ghidra.program.model.listing.Function;
+import ghidra.program.model.listing.FunctionManager;
+import ghidra.program.model.listing.Program;
+import ghidra.program.model.symbol.Reference;
+import ghidra.program.model.symbol.ReferenceManager;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+
+/**
+ * Snapshot of the call graph of a program, in primitive arrays.
+ *
+ * Functions are numbered in entry point order; external functions are not part of the graph.
+ * Callees are stored in CSR layout: the distinct callees of function <code>f</code> are
+ * <code>succTargets[succOffsets[f] .. succOffsets[f+1])</code>, and the distinct callers are
+ * stored the same way in <code>predSources</code>. The number of call references of each
+ * function, duplicates included, is kept as call sites.
+ *
+ * The snapshot is built with a single walk over the references of the {@link ReferenceManager},
+ * instead of asking every function for its called and calling functions.
+ */
+public final class GMCallGraphSnapshot {
+
+	private final Program program;
+	private final long modificationNumber;
+
+	private final Address[] functionEntries;
+	private final int[] callSites;
+	private final int[] succOffsets;
+	private final int[] succTargets;
+	private final int[] predOffsets;
+	private final int[] predSources;
+
+	private GMCallGraphSnapshot(Program program, long modificationNumber, Address[] functionEntries, int[] callSites, int[] succOffsets,
+			int[] succTargets) {
+		this.program = program;
+		this.modificationNumber = modificationNumber;
+		this.functionEntries = functionEntries;
+		this.callSites = callSites;
+		this.succOffsets = succOffsets;
+		this.succTargets = succTargets;
+
+		// callers: counting sort of the edges by callee
+		int numFunctions = functionEntries.length;
+		this.predOffsets = new int[numFunctions + 1];
+		for (int target : succTargets) {
+			predOffsets[target + 1]++;
+		}
+		for (int fn = 0; fn < numFunctions; fn++) {
+			predOffsets[fn + 1] += predOffsets[fn];
+		}
+
+		this.predSources = new int[succTargets.length];
+		int[] next = Arrays.copyOf(predOffsets, numFunctions);
+		for (int fn = 0; fn < numFunctions; fn++) {
+			for (int edge = succOffsets[fn]; edge < succOffsets[fn + 1]; edge++) {
+				predSources[next[succTargets[edge]]++] = fn;
+			}
+		}
+	}
+
+	public static GMCallGraphSnapshot build(Program program, TaskMonitor monitor) throws CancelledException {
+		long modificationNumber = program.getModificationNumber();
+		FunctionManager functionManager = program.getFunctionManager();
+		ReferenceManager referenceManager = program.getReferenceManager();
+
+		List<Address> entries = new ArrayList<>(functionManager.getFunctionCount());
+		for (Function function : functionManager.getFunctions(true)) {
+			if (!function.isExternal()) {
+				entries.add(function.getEntryPoint());
+			}
+		}
+		Address[] functionEntries = entries.toArray(new Address[0]);
+		int numFunctions = functionEntries.length;
+
+		// first pass: call edges in reference order, duplicates included
+		int[] callers = new int[Math.max(numFunctions, 16)];
+		int[] callees = new int[callers.length];
+		int numCalls = 0;
+
+		// the number of references is not known in advance: progress counts the source addresses
+		monitor.setIndeterminate(true);
+
+		AddressIterator sources = referenceManager.getReferenceSourceIterator(program.getMemory(), true);
+		while (sources.hasNext()) {
+			monitor.checkCanceled();
+			monitor.incrementProgress(1);
+			Address source = sources.next();
+
+			int caller = -1;
+			for (Reference reference : referenceManager.getReferencesFrom(source)) {
+				if (!reference.getReferenceType().isCall())
+					continue;
+
+				int callee = Arrays.binarySearch(functionEntries, reference.getToAddress());
+				if (callee < 0)
+					continue;
+
+				if (caller < 0) {
+					Function function = functionManager.getFunctionContaining(source);
+					caller = function != null ? Arrays.binarySearch(functionEntries, function.getEntryPoint()) : -1;
+					if (caller < 0)
+						break;
+				}
+
+				if (numCalls == callers.length) {
+					callers = Arrays.copyOf(callers, numCalls * 2);
+					callees = Arrays.copyOf(callees, numCalls * 2);
+				}
+				callers[numCalls] = caller;
+				callees[numCalls] = callee;
+				numCalls++;
+			}
+		}
+
+		return of(program, modificationNumber, functionEntries, callers, callees, numCalls);
+	}
+
+	/**
+	 * Second pass of {@link #build}: counting sort of the call edges by caller, duplicates removed.
+	 *
+	 * @param callers caller of each call edge, as an index in <code>functionEntries</code>
+	 * @param callees callee of each call edge, as an index in <code>functionEntries</code>
+	 */
+	static GMCallGraphSnapshot of(Program program, long modificationNumber, Address[] functionEntries, int[] callers, int[] callees,
+			int numCalls) {
+		int numFunctions = functionEntries.length;
+
+		int[] callSites = new int[numFunctions];
+		int[] succOffsets = new int[numFunctions + 1];
+		for (int i = 0; i < numCalls; i++) {
+			callSites[callers[i]]++;
+			succOffsets[callers[i] + 1]++;
+		}
+		for (int fn = 0; fn < numFunctions; fn++) {
+			succOffsets[fn + 1] += succOffsets[fn];
+		}
+
+		int[] sorted = new int[numCalls];
+		int[] next = Arrays.copyOf(succOffsets, numFunctions);
+		for (int i = 0; i < numCalls; i++) {
+			sorted[next[callers[i]]++] = callees[i];
+		}
+
+		int[] seen = new int[numFunctions]; // last caller + 1 each callee has been kept for
+		int[] succTargets = new int[numCalls];
+		int numEdges = 0;
+		for (int fn = 0; fn < numFunctions; fn++) {
+			int start = succOffsets[fn];
+			int end = succOffsets[fn + 1];
+			succOffsets[fn] = numEdges;
+			for (int i = start; i < end; i++) {
+				if (seen[sorted[i]] != fn + 1) {
+					seen[sorted[i]] = fn + 1;
+					succTargets[numEdges++] = sorted[i];
+				}
+			}
+		}
+		succOffsets[numFunctions] = numEdges;
+
+		return new GMCallGraphSnapshot(program, modificationNumber, functionEntries, callSites, succOffsets,
+				Arrays.copyOf(succTargets, numEdges));
+	}
+
+	/**
+	 * @return true if the program has not been modified since the snapshot was built
+	 */
+	public boolean isValid() {
+		return program.getModificationNumber() == modificationNumber;
+	}
+
+	public Program getProgram() {
+		return program;
+	}
+
+	public int numFunctions() {
+		return functionEntries.length;
+	}
+
+	/**
+	 * @return the number of distinct caller-callee pairs
+	 */
+	public int numEdges() {
+		return succTargets.length;
+	}
+
+	/**
+	 * @return the function with the given entry point, or a negative value if it is not in the snapshot
+	 */
+	public int functionIndex(Address entryPoint) {
+		return Arrays.binarySearch(functionEntries, entryPoint);
+	}
+
+	public Address getFunctionEntry(int fn) {
+		return functionEntries[fn];
+	}
+
+	public int getCallSites(int fn) {
+		return callSites[fn];
+	}
+
+	public int succStart(int fn) {
+		return succOffsets[fn];
+	}
+
+	public int succEnd(int fn) {
+		return succOffsets[fn + 1];
+	}
+
+	public int succTarget(int edge) {
+		return succTargets[edge];
+	}
+
+	public int predStart(int fn) {
+		return predOffsets[fn];
+	}
+
+	public int predEnd(int fn) {
+		return predOffsets[fn + 1];
+	}
+
+	public int predSource(int edge) {
+		return predSources[edge];
+	}
+}
@@ -0,0 +1,190 @@
+package it.unive.ghidra.metrics.impl.callgraph;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.SwingConstants;
+import javax.swing.table.DefaultTableModel;
+
+import it.unive.ghidra.metrics.base.GMBaseMetricWindow;
+import it.unive.ghidra.metrics.impl.callgraph.GMCallGraph.GMCallGraphFunction;
+
+public class GMCallGraphWindow extends GMBaseMetricWindow<GMCallGraph, GMCallGraphController, GMCallGraphWindow> {
+
+	private JTable tableProgramMeasure;
+	private JTable tableFunctionMeasure;
+	private JTable tableAllFunctions;
+	private JTabbedPane tabbedPane;
+	private JPanel pnlNoFunctionSelected;
+	private JLabel lblNewLabel;
+
+	private static final String[] ALL_FUNCTIONS_COLUMNS = { "Function", "Fan In", "Fan Out", "Call Sites", "Call Depth", "Component Size" };
+
+	public GMCallGraphWindow(GMCallGraphController controller) {
+		super(controller);
+	}
+
+	@Override
+	public boolean init() {
+		populateProgramMeasures();
+		populateFunctionMeasures();
+		populateAllFunctions();
+
+		return true;
+	}
+
+	@Override
+	protected JComponent createComponent() {
+		JComponent component = new JPanel();
+		component.setLayout(new BorderLayout(0, 0));
+
+		tabbedPane = new JTabbedPane(JTabbedPane.TOP);
+		component.add(tabbedPane, BorderLayout.CENTER);
+
+		// tab 0 - Program measures
+		{
+			JPanel pnlProgramMetrics = new JPanel();
+			tabbedPane.addTab("Program measures", null, new JScrollPane(pnlProgramMetrics), null);
+			pnlProgramMetrics.setLayout(new BorderLayout(0, 0));
+
+			tableProgramMeasure = new GMTable();
+
+			JScrollPane scrollPane = new JScrollPane(tableProgramMeasure);
+			scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+			scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+
+			JPanel pnlTop = new JPanel();
+			pnlTop.setLayout(new BorderLayout(0, 0));
+			pnlProgramMetrics.add(pnlTop, BorderLayout.NORTH);
+
+			JPanel pnlButtons = new JPanel();
+			pnlButtons.setLayout(new FlowLayout(FlowLayout.LEADING));
+
+			JButton btnRecompute = new JButton("Recompute");
+			btnRecompute.setToolTipText("Rebuilds the call graph if the program has been modified");
+			btnRecompute.addActionListener(ae -> {
+				getController().recompute();
+			});
+			pnlButtons.add(btnRecompute);
+
+			pnlTop.add(pnlButtons, BorderLayout.NORTH);
+			pnlTop.add(tableProgramMeasure.getTableHeader(), BorderLayout.SOUTH);
+
+			pnlProgramMetrics.add(scrollPane, BorderLayout.CENTER);
+		}
+
+		// tab 1 - Function measures
+		{
+			JPanel pnlFunctionMetrics = new JPanel();
+			tabbedPane.addTab("Function measures", null, new JScrollPane(pnlFunctionMetrics), null);
+			pnlFunctionMetrics.setLayout(new BorderLayout(0, 0));
+
+			pnlNoFunctionSelected = new JPanel();
+			pnlNoFunctionSelected.setVisible(true);
+			pnlFunctionMetrics.add(pnlNoFunctionSelected, BorderLayout.NORTH);
+			pnlNoFunctionSelected.setLayout(new BorderLayout(0, 0));
+
+			lblNewLabel = new JLabel("Select a valid function in the listing");
+			lblNewLabel.setFont(new Font("Dialog", Font.BOLD | Font.ITALIC, 14));
+			lblNewLabel.setHorizontalAlignment(SwingConstants.CENTER);
+			lblNewLabel.setVisible(true);
+			pnlNoFunctionSelected.add(lblNewLabel, BorderLayout.CENTER);
+
+			tableFunctionMeasure = new GMTable();
+			tableFunctionMeasure.setVisible(false);
+			tableFunctionMeasure.setEnabled(false);
+
+			JScrollPane scrollPane = new JScrollPane(tableFunctionMeasure);
+			scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+			scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+
+			pnlFunctionMetrics.add(scrollPane, BorderLayout.CENTER);
+		}
+
+		// tab 2 - All functions
+		{
+			JPanel pnlAllFunctions = new JPanel();
+			tabbedPane.addTab("All functions", null, pnlAllFunctions, null);
+			pnlAllFunctions.setLayout(new BorderLayout(0, 0));
+
+			tableAllFunctions = new GMTable();
+
+			JScrollPane scrollPane = new JScrollPane(tableAllFunctions);
+			scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+			scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+
+			pnlAllFunctions.add(scrollPane, BorderLayout.CENTER);
+		}
+
+		return component;
+	}
+
+	@Override
+	public void refresh() {
+		populateFunctionMeasures();
+
+		super.refresh();
+	}
+
+	/**
+	 * Refreshes all the tabs, after the analysis has been rebuilt.
+	 */
+	public void refreshAll() {
+		populateProgramMeasures();
+		populateFunctionMeasures();
+		populateAllFunctions();
+
+		super.refresh();
+	}
+
+	private void populateProgramMeasures() {
+		populateMeasureTable(tableProgramMeasure, getMetric());
+	}
+
+	private void populateFunctionMeasures() {
+		GMCallGraph callGraphFn = getController().getMetricFn();
+		if (callGraphFn != null) {
+			populateMeasureTable(tableFunctionMeasure, callGraphFn);
+
+			tableFunctionMeasure.setVisible(true);
+			pnlNoFunctionSelected.setVisible(false);
+		} else {
+			tableFunctionMeasure.setVisible(false);
+			pnlNoFunctionSelected.setVisible(true);
+		}
+	}
+
+	private void populateAllFunctions() {
+		DefaultTableModel dtm = new NonEditableTableModel();
+		dtm.setColumnIdentifiers(ALL_FUNCTIONS_COLUMNS);
+
+		for (GMCallGraph row : getController().getFunctionsMetrics()) {
+			GMCallGraphFunction fnRow = (GMCallGraphFunction) row;
+			//@formatter:off
+			dtm.addRow(new Object[] {
+				fnRow.getFunction(),
+				fnRow.getFanIn(), fnRow.getFanOut(), fnRow.getCallSites(),
+				fnRow.getCallDepth(), fnRow.getComponentSize()
+			});
+			//@formatter:on
+		}
+
+		tableAllFunctions.setModel(dtm);
+	}
+
+	public boolean isProgramTabVisible() {
+		return tabbedPane.getSelectedIndex() == 0;
+	}
+
+	public boolean isFunctionTabVisible() {
+		return tabbedPane.getSelectedIndex() == 1;
+	}
+}
@@ -3,10 +3,12 @@ package it.unive.ghidra.metrics.impl.halstead;
 import java.math.BigDecimal;
 
 import ghidra.program.model.listing.Function;
+import ghidra.util.exception.CancelledException;
 import it.unive.ghidra.metrics.base.GMBaseMetric;
 import it.unive.ghidra.metrics.base.interfaces.GMMeasure;
 import it.unive.ghidra.metrics.base.interfaces.GMMeasureKey;
 import it.unive.ghidra.metrics.impl.halstead.GMHalsteadParser.Result;
+import it.unive.ghidra.metrics.util.GMOptions;
 import it.unive.ghidra.metrics.util.NumberUtils;
 
 public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, GMHalsteadWindow> {
@@ -37,6 +39,23 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 			return super.getName() + "." + function.getName();
 		}
 
+		@Override
+		public boolean init() {
+			GMHalsteadCache cache = getController().getFunctionCache();
+
+			Result result = cache.get(function);
+			if (result == null) {
+				try {
+					result = getParser().parse();
+				} catch (CancelledException e) {
+					controller.printException(e);
+					return false;
+				}
+				cache.put(function, result);
+			}
+			return init(result);
+		}
+
 		@Override
 		protected GMHalsteadParser getParser() {
 			return GMHalsteadParser.functionParser(function);
@@ -47,6 +66,86 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 		}
 	}
 
+	/**
+	 * Function row of a {@link GMHalsteadTable}: measures are derived from the
+	 * precomputed counts, without parsing the function again.
+	 */
+	public static final class GMHalsteadFunctionRow extends GMHalstead {
+
+		private final GMHalsteadTable table;
+		private final int row;
+
+		protected GMHalsteadFunctionRow(GMHalsteadController controller, GMHalsteadTable table, int row) {
+			super(NAME, controller);
+			this.table = table;
+			this.row = row;
+		}
+
+		@Override
+		public boolean init() {
+			return init(table.getResult(row));
+		}
+
+		@Override
+		public String getName() {
+			Function function = getFunction();
+			String fnName = function != null ? function.getName() : table.getEntryPoint(row).toString();
+			return super.getName() + "." + fnName;
+		}
+
+		public Function getFunction() {
+			return program.getFunctionManager().getFunctionAt(table.getEntryPoint(row));
+		}
+	}
+
+	/**
+	 * Measures of a set of functions (namespace, call tree, ...) computed from a {@link GMHalsteadVectors} result.
+	 */
+	public static final class GMHalsteadRollup extends GMHalstead {
+
+		private final String label;
+		private final Result result;
+
+		protected GMHalsteadRollup(GMHalsteadController controller, String label, Result result) {
+			super(NAME, controller);
+			this.label = label;
+			this.result = result;
+		}
+
+		@Override
+		public boolean init() {
+			return init(result);
+		}
+
+		@Override
+		public String getName() {
+			return super.getName() + "." + label;
+		}
+	}
+
+	/**
+	 * Derived measures computed once in primitive arithmetic, see {@link NumberUtils.Backend#FAST}.
+	 */
+	private static final class FastMeasures {
+		private final double vocabulary, length, estimatedLength, volume, difficulty, effort;
+
+		private FastMeasures(Result result) {
+			double n1 = result.n1.doubleValue();
+			double n2 = result.n2.doubleValue();
+			double N1 = result.N1.doubleValue();
+			double N2 = result.N2.doubleValue();
+
+			this.vocabulary = n1 + n2;
+			this.length = N1 + N2;
+			this.estimatedLength = n1 * NumberUtils.fastLog2(n1) + n2 * NumberUtils.fastLog2(n2);
+			this.volume = length * NumberUtils.fastLog2(vocabulary);
+			this.difficulty = (n1 / 2) * (N2 / n2);
+			this.effort = difficulty * volume;
+		}
+	}
+
+	private FastMeasures fast;
+
 	private BigDecimal n1; // no. operators [distinct, total]
 	private BigDecimal N1;
 
@@ -63,13 +162,23 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 
 	@Override
 	public boolean init() {
-		Result result = getParser().parse();
+		try {
+			return init(getParser().parse());
+
+		} catch (CancelledException e) {
+			controller.printException(e);
+		}
 
+		return false;
+	}
+
+	protected boolean init(Result result) {
 		if (result.ok()) { 
 			this.n1 = result.n1;
 			this.n2 = result.n2;
 			this.N1 = result.N1;
 			this.N2 = result.N2;
+			this.fast = NumberUtils.isFast() ? new FastMeasures(result) : null;
 	
 			GMHalsteadKey.ALL_KEYS.forEach(key -> {
 				createMeasure(key);
@@ -87,8 +196,22 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 		controller.getMetricFn().init();
 	}
 
+	/**
+	 * Replaces the measures with the ones of a new analysis result.
+	 */
+	public boolean update(Result result) {
+		clearMeasures();
+		return init(result);
+	}
+
 	protected GMHalsteadParser getParser() {
-		return GMHalsteadParser.programParser(getController().getProgram());
+		GMHalsteadParser parser;
+		if (GMOptions.getBoolean(GMHalsteadController.OPTION_INCREMENTAL, false)) {
+			parser = getController().getIncrementalParser();
+		} else {
+			parser = GMHalsteadParser.programParser(getController().getProgram());
+		}
+		return parser.setMonitor(getController().getMonitor());
 	}
 
 	public BigDecimal getNumDistinctOperators() {
@@ -113,6 +236,8 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 	 * @return n1 + n2
 	 */
 	public BigDecimal getVocabulary() {
+		if (fast != null)
+			return NumberUtils.valueOf(fast.vocabulary);
 		return NumberUtils.add(n1, n2);
 	}
 
@@ -122,6 +247,8 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 	 * @return N1 + N2
 	 */
 	public BigDecimal getProgramLength() {
+		if (fast != null)
+			return NumberUtils.valueOf(fast.length);
 		return NumberUtils.add(N1, N2);
 	}
 
@@ -131,6 +258,9 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 	 * @return n1*log2(n1) + n2*log2(n2)
 	 */
 	public BigDecimal getEstimatedLength() {
+		if (fast != null)
+			return NumberUtils.valueOf(fast.estimatedLength);
+
 		BigDecimal n1_log2 = NumberUtils.mul(n1, NumberUtils.log2(n1));
 		BigDecimal n2_log2 = NumberUtils.mul(n2, NumberUtils.log2(n2));
 		return NumberUtils.add(n1_log2, n2_log2);
@@ -142,6 +272,9 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 	 * @return N * log2(n)
 	 */
 	public BigDecimal getVolume() {
+		if (fast != null)
+			return NumberUtils.valueOf(fast.volume);
+
 		BigDecimal N = getProgramLength();
 		BigDecimal n = getVocabulary();
 		return NumberUtils.mul(N, NumberUtils.log2(n));
@@ -153,6 +286,9 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 	 * @return (n1/2) * (N2/n2)
 	 */
 	public BigDecimal getDifficulty() {
+		if (fast != null)
+			return NumberUtils.valueOf(fast.difficulty);
+
 		BigDecimal a = NumberUtils.div(n1, new BigDecimal(2));
 		BigDecimal b = NumberUtils.div(N2, n2);
 		return NumberUtils.mul(a, b);
@@ -164,6 +300,9 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 	 * @return D * V
 	 */
 	public BigDecimal getEffort() {
+		if (fast != null)
+			return NumberUtils.valueOf(fast.effort);
+
 		BigDecimal D = getDifficulty();
 		BigDecimal V = getVolume();
 		return NumberUtils.mul(D, V);
@@ -175,6 +314,9 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 	 * @return E / 18
 	 */
 	public BigDecimal getCodingTime() {
+		if (fast != null)
+			return NumberUtils.valueOf(fast.effort / 18);
+
 		BigDecimal E = getEffort();
 		return NumberUtils.div(E, new BigDecimal(18));
 	}
@@ -185,6 +327,9 @@ public class GMHalstead extends GMBaseMetric<GMHalstead, GMHalsteadController, G
 	 * @return V / 3000
 	 */
 	public BigDecimal getEstimatedErrors() {
+		if (fast != null)
+			return NumberUtils.valueOf(fast.volume / 3000);
+
 		BigDecimal V = getVolume();
 		return NumberUtils.div(V, new BigDecimal(3000));
 	}
@@ -0,0 +1,283 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressRange;
+import ghidra.program.model.address.AddressSet;
+import ghidra.program.model.address.AddressSetView;
+import ghidra.program.model.block.BasicBlockModel;
+import ghidra.program.model.block.CodeBlock;
+import ghidra.program.model.block.CodeBlockIterator;
+import ghidra.program.model.listing.Instruction;
+import ghidra.program.model.listing.Program;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+import it.unive.ghidra.metrics.impl.halstead.GMHalsteadParser.Result;
+
+/**
+ * Operator and operand counts of every basic block of a program, in an address-ordered index.
+ *
+ * A selection is answered by combining the aggregates of the blocks it fully covers (prefix
+ * sums for the totals, the block vectors for the distinct tokens); only the instructions of the
+ * blocks at the edges of the selection are parsed again. Each address range of a block is an
+ * entry of the index, so entries never overlap. The tokens first met by the edge blocks of a
+ * query are interned after the ones of the index and dropped when the query ends, so the
+ * dictionaries do not grow with the number of queries.
+ */
+public final class GMHalsteadBlockIndex {
+
+	/**
+	 * Walks every block range of the program into an index entry, then collects the token ids of
+	 * the partial walks of the edge blocks; its dictionaries are shared by both, so token ids stay
+	 * comparable.
+	 */
+	private static final class GMHalsteadBlockParser extends GMHalsteadParser {
+		private final Program program;
+		private final List<Entry> entries = new ArrayList<>();
+
+		private final GMHalsteadVector.Builder operatorBuilder = new GMHalsteadVector.Builder();
+		private final GMHalsteadVector.Builder operandBuilder = new GMHalsteadVector.Builder();
+
+		protected GMHalsteadBlockParser(Program program) {
+			// token ids are the dictionary: never approximate
+			super(GMHalsteadParser.Type.PROGRAM, false);
+			this.program = program;
+		}
+
+		@Override
+		protected void parseImpl() throws CancelledException {
+			// the number of blocks is not known in advance: progress counts the block ranges
+			getMonitor().setIndeterminate(true);
+
+			BasicBlockModel basicBlockModel = new BasicBlockModel(program);
+			CodeBlockIterator blocks = basicBlockModel.getCodeBlocks(getMonitor());
+			while (blocks.hasNext()) {
+				getMonitor().checkCanceled();
+				CodeBlock block = blocks.next();
+				for (AddressRange range : block.getAddressRanges()) {
+					parseRange(range.getMinAddress(), range.getMaxAddress());
+					entries.add(new Entry(range.getMinAddress(), range.getMaxAddress(), operatorBuilder.build(), operandBuilder.build()));
+				}
+			}
+			entries.sort(Comparator.comparing(entry -> entry.start));
+		}
+
+		protected void parseRange(Address start, Address end) {
+			program.getListing().getInstructions(new AddressSet(start, end), true).forEach(instr -> parseInstruction(instr));
+			getMonitor().incrementProgress(1);
+		}
+
+		@Override
+		protected void instructionParsed(Instruction instruction, int[] operatorIds, int numOperators, int[] operandIds, int numOperands) {
+			for (int i = 0; i < numOperators; i++) {
+				operatorBuilder.add(operatorIds[i]);
+			}
+			for (int i = 0; i < numOperands; i++) {
+				operandBuilder.add(operandIds[i]);
+			}
+		}
+	}
+
+	private static final class Entry {
+		private final Address start, end;
+		private final GMHalsteadVector operators, operands;
+
+		private Entry(Address start, Address end, GMHalsteadVector operators, GMHalsteadVector operands) {
+			this.start = start;
+			this.end = end;
+			this.operators = operators;
+			this.operands = operands;
+		}
+	}
+
+	public static GMHalsteadBlockIndex build(Program program, TaskMonitor monitor) throws CancelledException {
+		GMHalsteadBlockParser parser = new GMHalsteadBlockParser(program);
+		parser.setMonitor(monitor).parseImpl();
+
+		// the edge blocks of the queries are parsed without a monitor
+		parser.setMonitor(TaskMonitor.DUMMY);
+
+		GMHalsteadBlockIndex index = new GMHalsteadBlockIndex(program, parser, parser.entries);
+		parser.entries.clear();
+		return index;
+	}
+
+	private final Program program;
+	private final long modificationNumber;
+	private final GMHalsteadBlockParser parser;
+	private final int numOperators; // interned by the index: the ids of the block vectors
+	private final int numOperands;
+
+	private final Address[] starts;
+	private final Address[] ends;
+	private final GMHalsteadVector[] operators;
+	private final GMHalsteadVector[] operands;
+	private final long[] prefixOperators; // totals of the entries before each index
+	private final long[] prefixOperands;
+	private final int size;
+
+	// distinct tokens of a query: a token is counted when its stamp is not the current epoch
+	private int[] operatorStamps = new int[0];
+	private int[] operandStamps = new int[0];
+	private int epoch;
+
+	private GMHalsteadBlockIndex(Program program, GMHalsteadBlockParser parser, List<Entry> entries) {
+		this.program = program;
+		this.modificationNumber = program.getModificationNumber();
+		this.parser = parser;
+		this.numOperators = parser.internedOperators();
+		this.numOperands = parser.internedOperands();
+
+		this.size = entries.size();
+		this.starts = new Address[size];
+		this.ends = new Address[size];
+		this.operators = new GMHalsteadVector[size];
+		this.operands = new GMHalsteadVector[size];
+		this.prefixOperators = new long[size + 1];
+		this.prefixOperands = new long[size + 1];
+
+		for (int i = 0; i < size; i++) {
+			Entry entry = entries.get(i);
+			starts[i] = entry.start;
+			ends[i] = entry.end;
+			operators[i] = entry.operators;
+			operands[i] = entry.operands;
+			prefixOperators[i + 1] = prefixOperators[i] + entry.operators.total();
+			prefixOperands[i + 1] = prefixOperands[i] + entry.operands.total();
+		}
+	}
+
+	/**
+	 * @return true if the program has not been modified since the index was built
+	 */
+	public boolean isValid() {
+		return program.getModificationNumber() == modificationNumber;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the result of the instructions starting in the selection
+	 */
+	public synchronized Result result(AddressSetView selection) {
+		try {
+			return query(selection);
+		} finally {
+			parser.truncate(numOperators, numOperands);
+		}
+	}
+
+	private Result query(AddressSetView selection) {
+		nextEpoch();
+
+		long totalOperators = 0;
+		long totalOperands = 0;
+		int distinctOperators = 0;
+		int distinctOperands = 0;
+
+		for (AddressRange range : selection.getAddressRanges()) {
+			Address min = range.getMinAddress();
+			Address max = range.getMaxAddress();
+
+			int i = firstEntryEndingAtOrAfter(min);
+			int run = -1; // first entry of the current run of fully covered entries
+			for (; i < size && starts[i].compareTo(max) <= 0; i++) {
+				GMHalsteadVector ops, opnds;
+
+				if (starts[i].compareTo(min) >= 0 && ends[i].compareTo(max) <= 0) {
+					if (run < 0) {
+						run = i;
+					}
+					ops = operators[i];
+					opnds = operands[i];
+				} else {
+					if (run >= 0) {
+						totalOperators += prefixOperators[i] - prefixOperators[run];
+						totalOperands += prefixOperands[i] - prefixOperands[run];
+						run = -1;
+					}
+
+					// edge block: only its instructions inside the range
+					Address from = starts[i].compareTo(min) < 0 ? min : starts[i];
+					Address to = ends[i].compareTo(max) > 0 ? max : ends[i];
+					parser.parseRange(from, to);
+					ops = parser.operatorBuilder.build();
+					opnds = parser.operandBuilder.build();
+					totalOperators += ops.total();
+					totalOperands += opnds.total();
+				}
+
+				distinctOperators += markOperators(ops);
+				distinctOperands += markOperands(opnds);
+			}
+
+			if (run >= 0) {
+				totalOperators += prefixOperators[i] - prefixOperators[run];
+				totalOperands += prefixOperands[i] - prefixOperands[run];
+			}
+		}
+
+		//@formatter:off
+		return new Result(
+				BigDecimal.valueOf(distinctOperators), BigDecimal.valueOf(distinctOperands),
+				BigDecimal.valueOf(totalOperators), BigDecimal.valueOf(totalOperands));
+		//@formatter:on
+	}
+
+	private int firstEntryEndingAtOrAfter(Address address) {
+		int i = Arrays.binarySearch(starts, 0, size, address);
+		if (i >= 0)
+			return i;
+
+		int insertion = -i - 1;
+		if (insertion > 0 && ends[insertion - 1].compareTo(address) >= 0) {
+			return insertion - 1;
+		}
+		return insertion;
+	}
+
+	private void nextEpoch() {
+		if (++epoch == Integer.MAX_VALUE) {
+			Arrays.fill(operatorStamps, 0);
+			Arrays.fill(operandStamps, 0);
+			epoch = 1;
+		}
+	}
+
+	private int markOperators(GMHalsteadVector vector) {
+		int marked = 0;
+		for (int i = 0; i < vector.distinct(); i++) {
+			int id = vector.id(i);
+			if (id >= operatorStamps.length) {
+				operatorStamps = Arrays.copyOf(operatorStamps, Math.max(id + 1, operatorStamps.length * 2));
+			}
+			if (operatorStamps[id] != epoch) {
+				operatorStamps[id] = epoch;
+				marked++;
+			}
+		}
+		return marked;
+	}
+
+	private int markOperands(GMHalsteadVector vector) {
+		int marked = 0;
+		for (int i = 0; i < vector.distinct(); i++) {
+			int id = vector.id(i);
+			if (id >= operandStamps.length) {
+				operandStamps = Arrays.copyOf(operandStamps, Math.max(id + 1, operandStamps.length * 2));
+			}
+			if (operandStamps[id] != epoch) {
+				operandStamps[id] = epoch;
+				marked++;
+			}
+		}
+		return marked;
+	}
+}
@@ -0,0 +1,118 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import ghidra.framework.model.DomainObjectChangedEvent;
+import ghidra.framework.model.DomainObjectListener;
+import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressRange;
+import ghidra.program.model.address.AddressSet;
+import ghidra.program.model.address.AddressSetView;
+import ghidra.program.model.listing.Function;
+import ghidra.program.model.listing.Program;
+import it.unive.ghidra.metrics.impl.halstead.GMHalsteadParser.Result;
+import it.unive.ghidra.metrics.util.GMProgramChanges;
+
+/**
+ * Per-program cache of function results, keyed by entry point and body fingerprint.
+ *
+ * Entries are invalidated by the program change events that touch the function code, while
+ * the cache is registered: the controller owning it unregisters it when disposed.
+ */
+public final class GMHalsteadCache implements DomainObjectListener, GMProgramChanges.Handler {
+
+	private static final class Entry {
+		private final long fingerprint;
+		private final Result result;
+
+		private Entry(long fingerprint, Result result) {
+			this.fingerprint = fingerprint;
+			this.result = result;
+		}
+	}
+
+	private final Program program;
+	private final Map<Address, Entry> entries = new HashMap<>();
+
+	public GMHalsteadCache(Program program) {
+		this.program = program;
+	}
+
+	/**
+	 * @return the cached result of the function, or null if it must be computed
+	 */
+	public synchronized Result get(Function function) {
+		Entry entry = entries.get(function.getEntryPoint());
+		if (entry == null)
+			return null;
+
+		if (entry.fingerprint != fingerprint(function.getBody())) {
+			entries.remove(function.getEntryPoint());
+			return null;
+		}
+		return entry.result;
+	}
+
+	public synchronized void put(Function function, Result result) {
+		entries.put(function.getEntryPoint(), new Entry(fingerprint(function.getBody()), result));
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public void register() {
+		program.addListener(this);
+	}
+
+	public void unregister() {
+		program.removeListener(this);
+	}
+
+	@Override
+	public void domainObjectChanged(DomainObjectChangedEvent ev) {
+		GMProgramChanges.dispatch(ev, this);
+	}
+
+	@Override
+	public synchronized void codeChanged(Address start, Address end) {
+		if (entries.isEmpty())
+			return;
+
+		AddressSet changed = new AddressSet(start, end);
+		Iterator<Function> functions = program.getFunctionManager().getFunctionsOverlapping(changed);
+		while (functions.hasNext()) {
+			entries.remove(functions.next().getEntryPoint());
+		}
+	}
+
+	@Override
+	public synchronized void functionChanged(Address entryPoint) {
+		entries.remove(entryPoint);
+	}
+
+	@Override
+	public synchronized void allChanged() {
+		entries.clear();
+	}
+
+	/**
+	 * Hash of every range of the body: a body with the same extent but different ranges has a
+	 * different fingerprint. Edits of the bytes inside the body are tracked by the listener.
+	 */
+	private static long fingerprint(AddressSetView body) {
+		long h = 1;
+		for (AddressRange range : body) {
+			h = h * 31 + range.getAddressSpace().getSpaceID();
+			h = h * 31 + range.getMinAddress().getOffset();
+			h = h * 31 + range.getMaxAddress().getOffset();
+		}
+		return h;
+	}
+}
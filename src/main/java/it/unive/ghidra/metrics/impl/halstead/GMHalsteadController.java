@@ -1,21 +1,381 @@
 package it.unive.ghidra.metrics.impl.halstead;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressSet;
+import ghidra.program.model.address.AddressSetView;
+import ghidra.program.model.listing.Function;
 import ghidra.program.model.listing.Program;
+import ghidra.program.model.symbol.Namespace;
+import ghidra.program.util.ProgramSelection;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.SwingUpdateManager;
+import ghidra.util.task.TaskMonitor;
 import it.unive.ghidra.metrics.GhidraMetricsPlugin;
 import it.unive.ghidra.metrics.base.GMBaseMetricController;
+import it.unive.ghidra.metrics.base.interfaces.GMMetric;
+import it.unive.ghidra.metrics.impl.halstead.GMHalstead.GMHalsteadFunctionRow;
+import it.unive.ghidra.metrics.impl.halstead.GMHalstead.GMHalsteadRollup;
+import it.unive.ghidra.metrics.impl.halstead.GMHalsteadParser.Result;
+import it.unive.ghidra.metrics.util.GMOptions;
 
 public class GMHalsteadController extends GMBaseMetricController<GMHalstead, GMHalsteadController, GMHalsteadWindow> {
 
+	/**
+	 * Computes and exports the measures of all the functions of the program.
+	 */
+	public static final String OPTION_ALL_FUNCTIONS = "halstead-all-functions";
+
+	/**
+	 * Keeps the program measures up to date with the program changes, for both program modes.
+	 */
+	public static final String OPTION_INCREMENTAL = "halstead-incremental";
+
+	/**
+	 * Rollups exported together with the program measures, see {@link Rollup}.
+	 */
+	public static final String OPTION_ROLLUPS = "halstead-rollups";
+
+	/**
+	 * Address ranges measured and exported as a selection, e.g. <code>0x401000-0x401fff,0x403000-0x4030ff</code>.
+	 */
+	public static final String OPTION_SELECTION = "halstead-selection";
+
+	public enum Rollup {
+		NONE,
+		NAMESPACES, // every namespace containing functions, nested namespaces included
+		CALL_TREES; // every function together with all its callees
+	}
+
+	private GMHalsteadTable functionsTable;
+	private GMHalsteadVectors vectors;
+	private GMHalsteadBlockIndex blockIndex;
+	private static final int SELECTION_DELAY_MILLIS = 250;
+
+	private GMHalstead metricSelection;
+	private SwingUpdateManager selectionUpdater; // coalesces the selection events of a drag
+	private ProgramSelection pendingSelection;
+	private ProgramSelection measuredSelection; // selection of metricSelection, null if none
+	private long measuredModificationNumber;
+	private GMHalsteadCache functionCache;
+	private GMHalsteadIncrementalParser incrementalParser;
+
 	public GMHalsteadController(Program program) {
 		super(program, GMHalstead.class);
 	}
 
+	public GMHalsteadController(Program program, TaskMonitor monitor) {
+		super(program, GMHalstead.class, monitor);
+	}
+
 	public GMHalsteadController(GhidraMetricsPlugin plugin) {
 		super(plugin, GMHalstead.class, GMHalsteadWindow.class);
 	}
 
+	public GMHalsteadController(GhidraMetricsPlugin plugin, TaskMonitor monitor) {
+		super(plugin, GMHalstead.class, GMHalsteadWindow.class, monitor);
+	}
+
+	@Override
+	protected void init() {
+		getFunctionCache();
+
+		if (GMOptions.getBoolean(OPTION_ALL_FUNCTIONS, false)) {
+			computeFunctionsTable();
+		}
+
+		String selection = GMOptions.get(OPTION_SELECTION, null);
+		if (selection != null) {
+			setMetricSelection(selectionMetric(parseSelection(selection)));
+		}
+	}
+
+	/**
+	 * Function results cache, registered as listener of the program on first use.
+	 */
+	public synchronized GMHalsteadCache getFunctionCache() {
+		if (functionCache == null) {
+			functionCache = new GMHalsteadCache(getProgram());
+			functionCache.register();
+		}
+		return functionCache;
+	}
+
+	/**
+	 * Incremental program parser, registered as listener of the program on first use.
+	 */
+	public synchronized GMHalsteadIncrementalParser getIncrementalParser() {
+		if (incrementalParser == null) {
+			incrementalParser = new GMHalsteadIncrementalParser(getProgram(), this);
+			incrementalParser.register();
+		}
+		return incrementalParser;
+	}
+
+	public synchronized boolean isIncremental() {
+		return incrementalParser != null;
+	}
+
+	/**
+	 * Switches the program measures between a one-time analysis and an incremental one.
+	 */
+	public void setIncremental(boolean incremental) {
+		if (incremental == isIncremental())
+			return;
+
+		Result[] result = { null };
+		boolean completed = runTask("Halstead program measures", monitor -> {
+			GMHalsteadParser parser;
+			if (incremental) {
+				parser = getIncrementalParser();
+			} else {
+				synchronized (this) {
+					incrementalParser.unregister();
+					incrementalParser = null;
+				}
+				parser = GMHalsteadParser.programParser(getProgram());
+			}
+
+			result[0] = parser.setMonitor(monitor).parse();
+		});
+
+		if (completed) {
+			programChanged(result[0]);
+		}
+	}
+
+	/**
+	 * Updates the program measures with a new analysis result.
+	 */
+	public void programChanged(Result result) {
+		getMetric().update(result);
+
+		// program events can arrive before the window is built
+		if (guiEnabled && getWindow() != null) {
+			getWindow().refreshProgramMeasures();
+		}
+	}
+
+	/**
+	 * Function token vectors, rebuilt when the program has been modified since the last build.
+	 */
+	public synchronized GMHalsteadVectors getVectors() throws CancelledException {
+		if (vectors == null || !vectors.isValid()) {
+			vectors = GMHalsteadVectors.build(getProgram(), getMonitor());
+		}
+		return vectors;
+	}
+
+	/**
+	 * Basic block index, rebuilt when the program has been modified since the last build.
+	 */
+	public synchronized GMHalsteadBlockIndex getBlockIndex() {
+		if (blockIndex == null || !blockIndex.isValid()) {
+			try {
+				blockIndex = GMHalsteadBlockIndex.build(getProgram(), getMonitor());
+			} catch (CancelledException e) {
+				printException(e);
+				return null;
+			}
+		}
+		return blockIndex;
+	}
+
+	/**
+	 * @return the metric of the instructions in the selection, or null if it cannot be computed
+	 */
+	public GMHalstead selectionMetric(AddressSetView selection) {
+		GMHalsteadBlockIndex index = getBlockIndex();
+		if (index == null)
+			return null;
+
+		GMHalstead metric = new GMHalsteadRollup(this, "selection", index.result(selection));
+		return metric.init() ? metric : null;
+	}
+
+	/**
+	 * Measures the last selection of a burst of events, once no event has arrived for a short delay.
+	 */
+	@Override
+	public void selectionChanged(ProgramSelection selection) {
+		pendingSelection = selection;
+		if (!guiEnabled) {
+			measurePendingSelection();
+			return;
+		}
+
+		if (selectionUpdater == null) {
+			selectionUpdater = new SwingUpdateManager(SELECTION_DELAY_MILLIS, this::measurePendingSelection);
+		}
+		selectionUpdater.update();
+	}
+
+	private void measurePendingSelection() {
+		ProgramSelection selection = pendingSelection;
+
+		// the measures of the selection are still valid
+		if (selection.equals(measuredSelection) && measuredModificationNumber == getProgram().getModificationNumber())
+			return;
+
+		boolean completed;
+		if (selection.isEmpty()) {
+			setMetricSelection(null);
+			completed = true;
+		} else if (hasValidBlockIndex()) {
+			setMetricSelection(selectionMetric(selection));
+			completed = true;
+		} else {
+			// the first selection, or the first after a program change, builds the block index
+			completed = runTask("Halstead selection measures", monitor -> {
+				setMetricSelection(selectionMetric(selection));
+			});
+		}
+
+		if (completed) {
+			measuredSelection = selection;
+			measuredModificationNumber = getProgram().getModificationNumber();
+		}
+
+		if (guiEnabled) {
+			getWindow().refreshSelectionMeasures();
+		}
+	}
+
+	private synchronized boolean hasValidBlockIndex() {
+		return blockIndex != null && blockIndex.isValid();
+	}
+
+	public GMHalstead getMetricSelection() {
+		return metricSelection;
+	}
+
+	public void setMetricSelection(GMHalstead metricSelection) {
+		this.metricSelection = metricSelection;
+	}
+
+	private AddressSetView parseSelection(String selection) {
+		AddressSet addresses = new AddressSet();
+		for (String range : selection.split(",")) {
+			String[] bounds = range.trim().split("-", 2);
+			Address start = getProgram().getAddressFactory().getAddress(bounds[0].trim());
+			Address end = bounds.length > 1 ? getProgram().getAddressFactory().getAddress(bounds[1].trim()) : start;
+			if (start == null || end == null) {
+				throw new IllegalArgumentException("Option '" + OPTION_SELECTION + "' has an invalid range: " + range);
+			}
+			addresses.add(start, end);
+		}
+		return addresses;
+	}
+
+	public GMHalstead namespaceMetric(Namespace namespace) throws CancelledException {
+		return new GMHalsteadRollup(this, namespace.getName(true), getVectors().namespaceResult(namespace));
+	}
+
+	public GMHalstead callTreeMetric(Function function) throws CancelledException {
+		return new GMHalsteadRollup(this, function.getName() + "+callees", getVectors().callTreeResult(function, getMonitor()));
+	}
+
+	/**
+	 * @return the initialized rollup metrics selected by {@link #OPTION_ROLLUPS}
+	 */
+	public List<GMHalstead> getRollupMetrics() {
+		Rollup rollup = GMOptions.getEnum(OPTION_ROLLUPS, Rollup.class, Rollup.NONE);
+
+		List<GMHalstead> rollups = new ArrayList<>();
+		try {
+			if (rollup == Rollup.NAMESPACES) {
+				Map<Long, Namespace> namespaces = new LinkedHashMap<>();
+				for (Function function : getProgram().getFunctionManager().getFunctions(true)) {
+					Namespace namespace = function.getParentNamespace();
+					while (namespace != null && !namespace.isGlobal()) {
+						namespaces.putIfAbsent(namespace.getID(), namespace);
+						namespace = namespace.getParentNamespace();
+					}
+				}
+				for (Namespace namespace : namespaces.values()) {
+					getMonitor().checkCanceled();
+					rollups.add(namespaceMetric(namespace));
+				}
+			} else if (rollup == Rollup.CALL_TREES) {
+				for (Function function : getProgram().getFunctionManager().getFunctions(true)) {
+					getMonitor().checkCanceled();
+					if (!function.isExternal()) {
+						rollups.add(callTreeMetric(function));
+					}
+				}
+			}
+		} catch (CancelledException e) {
+			printException(e);
+		}
+
+		rollups.removeIf(metric -> !metric.init());
+		return rollups;
+	}
+
+	@Override
+	public synchronized void dispose() {
+		if (functionCache != null) {
+			functionCache.unregister();
+			functionCache = null;
+		}
+		if (incrementalParser != null) {
+			incrementalParser.unregister();
+			incrementalParser = null;
+		}
+		if (selectionUpdater != null) {
+			selectionUpdater.dispose();
+			selectionUpdater = null;
+		}
+		GMHalsteadPcode.release(getProgram());
+		vectors = null;
+		blockIndex = null;
+	}
+
+	public GMHalsteadTable computeFunctionsTable() {
+		try {
+			functionsTable = GMHalsteadParser.functionsTable(getProgram(), getMonitor());
+		} catch (CancelledException e) {
+			printException(e);
+		}
+		return functionsTable;
+	}
+
+	public GMHalsteadTable getFunctionsTable() {
+		return functionsTable;
+	}
+
+	public boolean hasFunctionsTable() {
+		return functionsTable != null;
+	}
+
+	/**
+	 * @return the metric of each row of the functions table, empty if the table has not been computed
+	 */
+	public List<GMHalstead> getFunctionsTableMetrics() {
+		List<GMHalstead> rows = new ArrayList<>();
+		if (functionsTable != null) {
+			for (int row = 0; row < functionsTable.size(); row++) {
+				GMHalstead rowMetric = new GMHalsteadFunctionRow(this, functionsTable, row);
+				if (rowMetric.init()) {
+					rows.add(rowMetric);
+				}
+			}
+		}
+		return rows;
+	}
+
 	@Override
-	protected void init() { 
-		// do nothing
+	protected void addExportableMetrics(Collection<GMMetric> toExport) {
+		super.addExportableMetrics(toExport);
+		toExport.addAll(getFunctionsTableMetrics());
+		toExport.addAll(getRollupMetrics());
+		if (metricSelection != null) {
+			toExport.add(metricSelection);
+		}
 	}
 }
@@ -0,0 +1,291 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Occurrence histogram of Halstead tokens (operators or operands).
+ *
+ * Every distinct token is interned once and mapped to an int id, occurrences are
+ * counted in a primitive array indexed by id. Memory grows with the vocabulary
+ * size, not with the number of parsed instructions.
+ *
+ * Tokens are either strings or 64-bit keys computed by {@link GMHalsteadTokenizer};
+ * keys are interned in a primitive open-addressing table, without boxing.
+ */
+public final class GMHalsteadHistogram {
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final Map<String, Integer> ids;
+	private final List<String> tokens;
+
+	private long[] keys; // key of each id, meaningful only when the token is null
+	private int[] counts;
+	private int distinct;
+	private long total;
+
+	private long[] keyTable; // open addressing: key -> id+1 (0 is empty)
+	private int[] keyTableIds;
+	private int keyTableSize;
+
+	public GMHalsteadHistogram() {
+		this.ids = new HashMap<>();
+		this.tokens = new ArrayList<>();
+		this.keys = new long[INITIAL_CAPACITY];
+		this.counts = new int[INITIAL_CAPACITY];
+		this.distinct = 0;
+		this.total = 0;
+
+		this.keyTable = new long[INITIAL_CAPACITY * 2];
+		this.keyTableIds = new int[INITIAL_CAPACITY * 2];
+		this.keyTableSize = 0;
+	}
+
+	/**
+	 * Adds one occurrence of the token.
+	 *
+	 * @return the id of the token
+	 */
+	public int add(String token) {
+		return add(token, 1);
+	}
+
+	/**
+	 * Adds <code>count</code> occurrences of the token.
+	 *
+	 * @return the id of the token
+	 */
+	public int add(String token, int count) {
+		Integer id = ids.get(token);
+		if (id == null) {
+			id = tokens.size();
+			ids.put(token, id);
+			tokens.add(token);
+			ensureCapacity(id + 1);
+		}
+
+		increment(id, count);
+		return id;
+	}
+
+	/**
+	 * Adds one occurrence of the token identified by a 64-bit key.
+	 *
+	 * @return the id of the token
+	 */
+	public int addKey(long key) {
+		return addKey(key, 1);
+	}
+
+	/**
+	 * Adds <code>count</code> occurrences of the token identified by a 64-bit key.
+	 *
+	 * @return the id of the token
+	 */
+	public int addKey(long key, int count) {
+		int mask = keyTable.length - 1;
+		int slot = slot(key, mask);
+		while (keyTableIds[slot] != 0 && keyTable[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+
+		int id;
+		if (keyTableIds[slot] == 0) {
+			id = tokens.size();
+			tokens.add(null);
+			ensureCapacity(id + 1);
+			keys[id] = key;
+
+			keyTable[slot] = key;
+			keyTableIds[slot] = id + 1;
+			if (++keyTableSize * 2 > keyTable.length) {
+				rehash();
+			}
+		} else {
+			id = keyTableIds[slot] - 1;
+		}
+
+		increment(id, count);
+		return id;
+	}
+
+	/**
+	 * Removes one occurrence of the token with the given id.
+	 */
+	public void remove(int id) {
+		remove(id, 1);
+	}
+
+	/**
+	 * Removes <code>count</code> occurrences of the token with the given id. The token stays
+	 * interned, but it is no longer counted as distinct when its count drops to zero.
+	 */
+	public void remove(int id, int count) {
+		if (count > counts[id]) {
+			throw new IllegalStateException("Cannot remove " + count + " occurrences of token " + id + ": only " + counts[id] + " counted");
+		}
+
+		counts[id] -= count;
+		total -= count;
+		if (counts[id] == 0 && count > 0) {
+			distinct--;
+		}
+	}
+
+	/**
+	 * Adds all the occurrences counted by <code>other</code> to this histogram.
+	 * Merging is associative and commutative on the resulting counts.
+	 */
+	public void merge(GMHalsteadHistogram other) {
+		for (int id = 0; id < other.interned(); id++) {
+			if (other.count(id) == 0)
+				continue;
+
+			String token = other.token(id);
+			if (token != null) {
+				add(token, other.count(id));
+			} else {
+				addKey(other.key(id), other.count(id));
+			}
+		}
+	}
+
+	/**
+	 * Removes all the tokens, keeping the allocated arrays for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0, tokens.size(), 0);
+		ids.clear();
+		tokens.clear();
+		distinct = 0;
+		total = 0;
+
+		if (keyTableSize > 0) {
+			Arrays.fill(keyTableIds, 0);
+			keyTableSize = 0;
+		}
+	}
+
+	/**
+	 * Removes all the occurrences, and the tokens interned after the first <code>interned</code>
+	 * ones: the remaining tokens keep their ids.
+	 */
+	public void truncate(int interned) {
+		for (int id = tokens.size() - 1; id >= interned; id--) {
+			String token = tokens.get(id);
+			if (token != null) {
+				ids.remove(token);
+			} else {
+				removeKey(keys[id]);
+			}
+		}
+		Arrays.fill(counts, 0, tokens.size(), 0);
+		tokens.subList(interned, tokens.size()).clear();
+		distinct = 0;
+		total = 0;
+	}
+
+	/**
+	 * Number of distinct tokens: <strong>n</strong>
+	 */
+	public int distinct() {
+		return distinct;
+	}
+
+	/**
+	 * Number of interned tokens, including the ones whose occurrences have all been removed.
+	 */
+	public int interned() {
+		return tokens.size();
+	}
+
+	/**
+	 * Number of token occurrences: <strong>N</strong>
+	 */
+	public long total() {
+		return total;
+	}
+
+	public int count(int id) {
+		return counts[id];
+	}
+
+	/**
+	 * @return the string token, or null if the token was added by key
+	 */
+	public String token(int id) {
+		return tokens.get(id);
+	}
+
+	public long key(int id) {
+		return keys[id];
+	}
+
+	private void increment(int id, int count) {
+		if (counts[id] == 0 && count > 0) {
+			distinct++;
+		}
+		counts[id] += count;
+		total += count;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > counts.length) {
+			int newCapacity = Math.max(capacity, counts.length * 2);
+			counts = Arrays.copyOf(counts, newCapacity);
+			keys = Arrays.copyOf(keys, newCapacity);
+		}
+	}
+
+	/**
+	 * Linear probing deletion: the following entries of the cluster are shifted back, so that
+	 * every key stays reachable from its home slot.
+	 */
+	private void removeKey(long key) {
+		int mask = keyTable.length - 1;
+		int hole = slot(key, mask);
+		while (keyTable[hole] != key || keyTableIds[hole] == 0) {
+			hole = (hole + 1) & mask;
+		}
+
+		for (int next = (hole + 1) & mask; keyTableIds[next] != 0; next = (next + 1) & mask) {
+			int home = slot(keyTable[next], mask);
+			// the entry can fill the hole if its home is not cyclically in (hole, next]
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keyTable[hole] = keyTable[next];
+				keyTableIds[hole] = keyTableIds[next];
+				hole = next;
+			}
+		}
+		keyTableIds[hole] = 0;
+		keyTableSize--;
+	}
+
+	private void rehash() {
+		long[] oldTable = keyTable;
+		int[] oldIds = keyTableIds;
+
+		keyTable = new long[oldTable.length * 2];
+		keyTableIds = new int[oldTable.length * 2];
+
+		int mask = keyTable.length - 1;
+		for (int i = 0; i < oldTable.length; i++) {
+			if (oldIds[i] != 0) {
+				int slot = slot(oldTable[i], mask);
+				while (keyTableIds[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keyTable[slot] = oldTable[i];
+				keyTableIds[slot] = oldIds[i];
+			}
+		}
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
@@ -0,0 +1,226 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import ghidra.framework.model.DomainObjectChangedEvent;
+import ghidra.framework.model.DomainObjectListener;
+import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressSet;
+import ghidra.program.model.listing.Function;
+import ghidra.program.model.listing.FunctionManager;
+import ghidra.program.model.listing.Instruction;
+import ghidra.program.model.listing.Program;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+import it.unive.ghidra.metrics.util.GMProgramChanges;
+
+/**
+ * Program analysis kept up to date from the program change events, with the same
+ * {@link GMHalsteadParser.ProgramMode} as the one-time program analysis.
+ *
+ * The program is parsed once, remembering the token ids of every counted instruction: per
+ * instruction for a listing sweep, per function for the sum of the function bodies. When code
+ * units change, the tokens of the old instructions (or of the functions containing them) are
+ * subtracted and the new ones are added, so each edit costs in proportion to the changed code only.
+ *
+ * Parses and change events are serialized on the parser: an event waits for a running parse
+ * and never replaces its monitor.
+ */
+public final class GMHalsteadIncrementalParser extends GMHalsteadParser implements DomainObjectListener, GMProgramChanges.Handler {
+
+	private final Program program;
+	private final GMHalsteadController controller;
+	private final ProgramMode mode;
+
+	// LISTING: token ids of each counted instruction: number of operators, operators, then the operands
+	private final NavigableMap<Address, int[]> instructionTokens;
+
+	// FUNCTIONS: token ids of the instructions of each counted function, each one preceded by its length
+	private final Map<Address, int[]> functionTokens;
+	private int[] buffer;
+	private int bufferSize;
+
+	private boolean parsed; // events before the first parse are ignored: it reads the current program
+	private boolean changed;
+
+	protected GMHalsteadIncrementalParser(Program program, GMHalsteadController controller) {
+		// token ids are needed to subtract the old instructions: never approximate
+		super(GMHalsteadParser.Type.PROGRAM, false);
+		this.program = program;
+		this.controller = controller;
+		this.mode = programMode();
+		this.instructionTokens = new TreeMap<>();
+		this.functionTokens = new HashMap<>();
+		this.buffer = new int[256];
+	}
+
+	@Override
+	public synchronized GMHalsteadParser setMonitor(TaskMonitor monitor) {
+		return super.setMonitor(monitor);
+	}
+
+	@Override
+	public synchronized Result parse() throws CancelledException {
+		return super.parse();
+	}
+
+	@Override
+	protected void parseImpl() throws CancelledException {
+		parsed = false;
+		clear();
+		instructionTokens.clear();
+		functionTokens.clear();
+
+		if (mode == ProgramMode.LISTING) {
+			parseListing(program);
+		} else {
+			FunctionManager functionManager = program.getFunctionManager();
+			getMonitor().initialize(functionManager.getFunctionCount());
+			for (Function function : functionManager.getFunctions(true)) {
+				parseCountedFunction(function);
+				getMonitor().incrementProgress(1);
+			}
+		}
+		parsed = true;
+	}
+
+	private void parseCountedFunction(Function function) throws CancelledException {
+		if (function.isExternal())
+			return;
+
+		bufferSize = 0;
+		parseFunction(function);
+		functionTokens.put(function.getEntryPoint(), Arrays.copyOf(buffer, bufferSize));
+	}
+
+	private void unparseCountedFunction(Address entryPoint) {
+		int[] tokens = functionTokens.remove(entryPoint);
+		if (tokens == null)
+			return;
+
+		for (int i = 0; i < tokens.length; i += 1 + tokens[i]) {
+			unparseInstruction(tokens, i + 1, i + 1 + tokens[i]);
+		}
+	}
+
+	@Override
+	protected void instructionParsed(Instruction instruction, int[] operatorIds, int numOperators, int[] operandIds, int numOperands) {
+		int length = 1 + numOperators + numOperands;
+
+		int[] tokens;
+		int start;
+		if (mode == ProgramMode.LISTING) {
+			tokens = new int[length];
+			start = 0;
+			instructionTokens.put(instruction.getAddress(), tokens);
+		} else {
+			if (bufferSize + 1 + length > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, bufferSize + 1 + length));
+			}
+			tokens = buffer;
+			tokens[bufferSize] = length;
+			start = bufferSize + 1;
+			bufferSize += 1 + length;
+		}
+
+		tokens[start] = numOperators;
+		System.arraycopy(operatorIds, 0, tokens, start + 1, numOperators);
+		System.arraycopy(operandIds, 0, tokens, start + 1 + numOperators, numOperands);
+	}
+
+	public void register() {
+		program.addListener(this);
+	}
+
+	public void unregister() {
+		program.removeListener(this);
+	}
+
+	@Override
+	public void domainObjectChanged(DomainObjectChangedEvent ev) {
+		Result result;
+		synchronized (this) {
+			if (!parsed)
+				return;
+
+			// a change event is not part of a computation of the controller: never cancelled, and
+			// the monitor set for the next parse is restored
+			TaskMonitor monitor = getMonitor();
+			setMonitor(TaskMonitor.DUMMY);
+			try {
+				changed = false;
+				GMProgramChanges.dispatch(ev, this);
+			} finally {
+				setMonitor(monitor);
+			}
+
+			if (!changed)
+				return;
+
+			result = createResult();
+		}
+
+		controller.programChanged(result);
+	}
+
+	@Override
+	public void codeChanged(Address start, Address end) {
+		AddressSet range = new AddressSet(start, end);
+
+		if (mode == ProgramMode.LISTING) {
+			NavigableMap<Address, int[]> removed = instructionTokens.subMap(start, true, end, true);
+			for (int[] tokens : removed.values()) {
+				unparseInstruction(tokens);
+			}
+			removed.clear();
+
+			program.getListing().getInstructions(range, true).forEach(instr -> parseInstruction(instr));
+		} else {
+			Iterator<Function> functions = program.getFunctionManager().getFunctionsOverlapping(range);
+			while (functions.hasNext()) {
+				reparseFunction(functions.next().getEntryPoint());
+			}
+		}
+		changed = true;
+	}
+
+	@Override
+	public void functionChanged(Address entryPoint) {
+		// function bounds do not matter for a listing sweep
+		if (mode == ProgramMode.LISTING)
+			return;
+
+		reparseFunction(entryPoint);
+		changed = true;
+	}
+
+	private void reparseFunction(Address entryPoint) {
+		unparseCountedFunction(entryPoint);
+
+		Function function = program.getFunctionManager().getFunctionAt(entryPoint);
+		if (function == null)
+			return;
+
+		try {
+			parseCountedFunction(function);
+		} catch (CancelledException e) {
+			controller.printException(e);
+		}
+	}
+
+	@Override
+	public void allChanged() {
+		try {
+			parseImpl();
+		} catch (CancelledException e) {
+			controller.printException(e);
+			return;
+		}
+		changed = true;
+	}
+}
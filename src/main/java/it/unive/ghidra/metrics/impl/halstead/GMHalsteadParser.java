@@ -1,16 +1,28 @@
 package it.unive.ghidra.metrics.impl.halstead;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import ghidra.program.model.address.AddressSetView;
 import ghidra.program.model.listing.Function;
 import ghidra.program.model.listing.FunctionIterator;
+import ghidra.program.model.listing.FunctionManager;
 import ghidra.program.model.listing.Instruction;
 import ghidra.program.model.listing.InstructionIterator;
 import ghidra.program.model.listing.Program;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+import it.unive.ghidra.metrics.impl.halstead.GMHalsteadTokenizer.Normalization;
+import it.unive.ghidra.metrics.util.GMOptions;
 import it.unive.ghidra.metrics.util.NumberUtils;
 import it.unive.ghidra.metrics.util.StringUtils;
 
@@ -21,25 +33,123 @@ public abstract class GMHalsteadParser {
 		FUNCTION; // analysis of specific function
 	}
 
+	public enum ProgramMode {
+		FUNCTIONS, // sum of the function bodies
+		LISTING; // single forward sweep over all the instructions in memory
+	}
+
+	public enum Engine {
+		MNEMONIC, // instruction mnemonics and operands, processor dependent
+		PCODE; // p-code opcodes and varnodes, comparable across processors
+	}
+
+	/**
+	 * How the program analysis walks the instructions, see {@link ProgramMode}.
+	 */
+	public static final String OPTION_PROGRAM_MODE = "halstead-program-mode";
+
+	/**
+	 * Operand tokenization, see {@link Normalization}: <code>string</code> (default) uses the
+	 * operand representation, the other levels hash the operand objects.
+	 */
+	public static final String OPTION_OPERAND_TOKENS = "halstead-operand-tokens";
+
+	/**
+	 * Number of fork-join workers for the program analysis: 1 is sequential, 0 uses all the available processors.
+	 */
+	public static final String OPTION_PARALLELISM = "halstead-parallelism";
+
+	/**
+	 * Tokens counted as operators and operands, see {@link Engine}. With the p-code engine the
+	 * program analysis runs on all the available processors unless the parallelism is set.
+	 */
+	public static final String OPTION_ENGINE = "halstead-engine";
+
+	/**
+	 * Estimates the distinct operators and operands with {@link GMHalsteadSketch}es instead of
+	 * interning every token: memory stays bounded regardless of the vocabulary size.
+	 */
+	public static final String OPTION_APPROXIMATE = "halstead-approximate";
+
+	/**
+	 * Relative standard error of the approximate distinct counts (default 0.01).
+	 */
+	public static final String OPTION_SKETCH_ERROR = "halstead-sketch-error";
+
+	/**
+	 * Approximate program analysis: file where the sketches and totals are written, to be merged by later runs.
+	 */
+	public static final String OPTION_SKETCH_OUT = "halstead-sketch-out";
+
+	/**
+	 * Approximate program analysis: sketch files of previous runs (separated by the path separator)
+	 * merged into the result, e.g. to measure the combined vocabulary of a corpus.
+	 */
+	public static final String OPTION_SKETCH_IN = "halstead-sketch-in";
+
+	private static final int SKETCH_FILE_MAGIC = 0x484C5331; // "HLS1"
+
+	// listing sweep: progress is reported every 1024 instructions
+	private static final int PROGRESS_MASK = 0x3FF;
+
 	public static final GMHalsteadProgramParser programParser(Program program) {
-		return new GMHalsteadProgramParser(program);
+		ProgramMode mode = programMode();
+		int defaultParallelism = engine() == Engine.PCODE ? 0 : 1;
+		return programParser(program, mode, GMOptions.getParallelism(OPTION_PARALLELISM, defaultParallelism));
+	}
+
+	public static final GMHalsteadProgramParser programParser(Program program, ProgramMode mode, int parallelism) {
+		return new GMHalsteadProgramParser(program, mode, parallelism);
 	}
 
 	public static final GMHalsteadFunctionParser functionParser(Function function) {
 		return new GMHalsteadFunctionParser(function);
 	}
 
+	/**
+	 * Analysis of every function of the program in a single pass.
+	 */
+	public static final GMHalsteadTable functionsTable(Program program, TaskMonitor monitor) throws CancelledException {
+		GMHalsteadTableParser parser = new GMHalsteadTableParser(program);
+		parser.setMonitor(monitor).parseImpl();
+		return parser.table;
+	}
+
 	public static final class GMHalsteadProgramParser extends GMHalsteadParser {
 		private final Program program;
+		private final ProgramMode mode;
+		private final int parallelism;
 
-		protected GMHalsteadProgramParser(Program program) {
+		protected GMHalsteadProgramParser(Program program, ProgramMode mode, int parallelism) {
 			super(GMHalsteadParser.Type.PROGRAM);
 			this.program = program;
+			this.mode = mode;
+			this.parallelism = parallelism;
 		}
 
 		@Override
-		protected void parseImpl() {
-			parseProgram(program);
+		protected void parseImpl() throws CancelledException {
+			if (mode == ProgramMode.LISTING) {
+				parseListing(program);
+			} else if (parallelism > 1) {
+				parseProgramParallel(program, parallelism);
+			} else {
+				parseProgram(program);
+			}
+
+			if (isApproximate()) {
+				String sketchIn = GMOptions.get(OPTION_SKETCH_IN, null);
+				if (sketchIn != null) {
+					for (String file : sketchIn.split(File.pathSeparator)) {
+						readSketches(Paths.get(file.trim()));
+					}
+				}
+
+				String sketchOut = GMOptions.get(OPTION_SKETCH_OUT, null);
+				if (sketchOut != null) {
+					writeSketches(Paths.get(sketchOut));
+				}
+			}
 		}
 	}
 
@@ -52,56 +162,354 @@ public abstract class GMHalsteadParser {
 		}
 
 		@Override
-		protected void parseImpl() {
+		protected void parseImpl() throws CancelledException {
 			parseFunction(function);
 		}
 	}
 
-	private final GMHalsteadParser.Type parseType;
+	private static final class GMHalsteadTableParser extends GMHalsteadParser {
+		private final Program program;
+		private GMHalsteadTable table;
+
+		protected GMHalsteadTableParser(Program program) {
+			super(GMHalsteadParser.Type.FUNCTION);
+			this.program = program;
+		}
+
+		@Override
+		protected void parseImpl() throws CancelledException {
+			FunctionManager functionManager = program.getFunctionManager();
+			table = new GMHalsteadTable(functionManager.getFunctionCount());
+			getMonitor().initialize(functionManager.getFunctionCount());
+
+			for (Function function : functionManager.getFunctions(true)) {
+				getMonitor().incrementProgress(1);
+				if (function.isExternal())
+					continue;
+
+				clear();
+				parseFunction(function);
+				table.add(function.getEntryPoint(), distinctOperators(), distinctOperands(), totalOperators(), totalOperands());
+			}
+		}
+	}
+
+	/**
+	 * Partial analysis of a subset of the program functions, merged into the final result.
+	 */
+	private static final class GMHalsteadPartialParser extends GMHalsteadParser {
+		private final List<Function> functions;
+
+		protected GMHalsteadPartialParser(List<Function> functions) {
+			super(GMHalsteadParser.Type.PROGRAM);
+			this.functions = functions;
+		}
+
+		@Override
+		protected void parseImpl() throws CancelledException {
+			for (Function function : functions) {
+				parseFunction(function);
+				getMonitor().incrementProgress(1);
+			}
+		}
+	}
+
+	private static final class GMHalsteadParseTask extends RecursiveTask<GMHalsteadParser> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Function> functions;
+		private final int threshold;
+		private final TaskMonitor monitor;
+
+		protected GMHalsteadParseTask(List<Function> functions, int threshold, TaskMonitor monitor) {
+			this.functions = functions;
+			this.threshold = threshold;
+			this.monitor = monitor;
+		}
+
+		@Override
+		protected GMHalsteadParser compute() {
+			if (functions.size() <= threshold) {
+				GMHalsteadParser partial = new GMHalsteadPartialParser(functions);
+				try {
+					partial.setMonitor(monitor).parseImpl();
+				} catch (CancelledException e) {
+					// unchecked through the pool, see parseProgramParallel
+					throw new RuntimeException(e);
+				}
+				return partial;
+			}
+
+			int mid = functions.size() / 2;
+			GMHalsteadParseTask left = new GMHalsteadParseTask(functions.subList(0, mid), threshold, monitor);
+			GMHalsteadParseTask right = new GMHalsteadParseTask(functions.subList(mid, functions.size()), threshold, monitor);
+
+			left.fork();
+			GMHalsteadParser rightPartial = right.compute();
+			GMHalsteadParser leftPartial = left.join();
+
+			leftPartial.merge(rightPartial);
+			return leftPartial;
+		}
+	}
+
+	protected static ProgramMode programMode() {
+		return GMOptions.getEnum(OPTION_PROGRAM_MODE, ProgramMode.class, ProgramMode.FUNCTIONS);
+	}
+
+	private static Engine engine() {
+		return GMOptions.getEnum(OPTION_ENGINE, Engine.class, Engine.MNEMONIC);
+	}
 
-	private final List<String> ops;
-	private final List<String> opnds;
+	private final GMHalsteadParser.Type parseType;
+	private final Normalization operandTokens;
+	private final Engine engine;
+
+	private final GMHalsteadHistogram operators;
+	private final GMHalsteadHistogram operands;
+	private int[] operatorIds;
+	private int[] operandIds;
+	private GMHalsteadPcode pcode;
+	private TaskMonitor monitor;
+
+	// approximate mode only: distinct counts are estimated, totals are plain counters
+	private final GMHalsteadSketch operatorSketch;
+	private final GMHalsteadSketch operandSketch;
+	private long operatorTotal;
+	private long operandTotal;
 
 	protected GMHalsteadParser(GMHalsteadParser.Type parseType) {
+		this(parseType, GMOptions.getBoolean(OPTION_APPROXIMATE, false));
+	}
+
+	/**
+	 * @param approximate whether distinct tokens are estimated; token ids are not available in this mode
+	 */
+	protected GMHalsteadParser(GMHalsteadParser.Type parseType, boolean approximate) {
 		this.parseType = parseType;
+		this.operandTokens = GMOptions.getEnum(OPTION_OPERAND_TOKENS, Normalization.class, Normalization.STRING);
+		this.engine = engine();
+
+		this.operators = new GMHalsteadHistogram();
+		this.operands = new GMHalsteadHistogram();
+		this.operatorIds = new int[1];
+		this.operandIds = new int[8];
+		this.monitor = TaskMonitor.DUMMY;
+
+		if (approximate) {
+			int precision = GMHalsteadSketch.precisionFor(GMOptions.getDouble(OPTION_SKETCH_ERROR, 0.01));
+			this.operatorSketch = new GMHalsteadSketch(precision);
+			this.operandSketch = new GMHalsteadSketch(precision);
+		} else {
+			this.operatorSketch = null;
+			this.operandSketch = null;
+		}
+	}
+
+	protected boolean isApproximate() {
+		return operatorSketch != null;
+	}
 
-		this.ops = new ArrayList<>();
-		this.opnds = new ArrayList<>();
+	/**
+	 * Sets the monitor checked for cancellation and reporting the parsed functions (or instructions
+	 * for a listing sweep); the default one cannot be cancelled.
+	 */
+	public GMHalsteadParser setMonitor(TaskMonitor monitor) {
+		this.monitor = monitor;
+		return this;
 	}
 
-	protected abstract void parseImpl();
+	protected TaskMonitor getMonitor() {
+		return monitor;
+	}
 
-	public Result parse() {
+	protected abstract void parseImpl() throws CancelledException;
+
+	public Result parse() throws CancelledException {
 		parseImpl();
 		return createResult();
 	}
 
-	protected void parseProgram(Program program) {
-		FunctionIterator functions = program.getFunctionManager().getFunctions(true);
-		functions.forEach(fn -> parseFunction(fn));
+	protected void parseProgram(Program program) throws CancelledException {
+		FunctionManager functionManager = program.getFunctionManager();
+		monitor.initialize(functionManager.getFunctionCount());
+
+		FunctionIterator functions = functionManager.getFunctions(true);
+		while (functions.hasNext()) {
+			parseFunction(functions.next());
+			monitor.incrementProgress(1);
+		}
+	}
+
+	/**
+	 * Single forward sweep over the listing: every instruction is counted exactly once,
+	 * including the ones that are not part of any function.
+	 */
+	protected void parseListing(Program program) throws CancelledException {
+		monitor.initialize(program.getListing().getNumInstructions());
+
+		InstructionIterator instructions = program.getListing().getInstructions(program.getMemory(), true);
+		long parsed = 0;
+		while (instructions.hasNext()) {
+			monitor.checkCanceled();
+			parseInstruction(instructions.next());
+
+			if ((++parsed & PROGRESS_MASK) == 0) {
+				monitor.incrementProgress(PROGRESS_MASK + 1);
+			}
+		}
+	}
+
+	protected void parseProgramParallel(Program program, int parallelism) throws CancelledException {
+		FunctionManager functionManager = program.getFunctionManager();
+		List<Function> functions = new ArrayList<>(functionManager.getFunctionCount());
+		functionManager.getFunctions(true).forEach(fn -> functions.add(fn));
+		monitor.initialize(functions.size());
+
+		// a few tasks per worker, to balance functions of very different sizes
+		int threshold = Math.max(1, functions.size() / (parallelism * 8));
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			merge(pool.invoke(new GMHalsteadParseTask(functions, threshold, monitor)));
+		} catch (RuntimeException e) {
+			// a task cancelled by the shared monitor
+			monitor.checkCanceled();
+			throw e;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Resets the counted operators and operands.
+	 */
+	protected void clear() {
+		operators.clear();
+		operands.clear();
+
+		if (isApproximate()) {
+			operatorSketch.clear();
+			operandSketch.clear();
+			operatorTotal = 0;
+			operandTotal = 0;
+		}
+	}
+
+	/**
+	 * @return the number of operators interned so far, see {@link #truncate(int, int)}
+	 */
+	protected int internedOperators() {
+		return operators.interned();
+	}
+
+	protected int internedOperands() {
+		return operands.interned();
+	}
+
+	/**
+	 * Resets the counted operators and operands, keeping only the first interned ones in the
+	 * dictionaries with the same ids. Not available in approximate mode.
+	 */
+	protected void truncate(int numOperators, int numOperands) {
+		operators.truncate(numOperators);
+		operands.truncate(numOperands);
+	}
+
+	/**
+	 * Adds the operators and operands counted by <code>other</code> to this parser.
+	 */
+	protected void merge(GMHalsteadParser other) {
+		operators.merge(other.operators);
+		operands.merge(other.operands);
+
+		if (isApproximate()) {
+			operatorSketch.merge(other.operatorSketch);
+			operandSketch.merge(other.operandSketch);
+			operatorTotal += other.operatorTotal;
+			operandTotal += other.operandTotal;
+		}
+	}
+
+	/**
+	 * Sketch file: magic, total operators, total operands, operator sketch, operand sketch.
+	 */
+	protected void writeSketches(Path file) {
+		byte[] operatorBytes = operatorSketch.toBytes();
+		byte[] operandBytes = operandSketch.toBytes();
+
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + 8 + operatorBytes.length + operandBytes.length);
+		buffer.putInt(SKETCH_FILE_MAGIC);
+		buffer.putLong(operatorTotal);
+		buffer.putLong(operandTotal);
+		buffer.put(operatorBytes);
+		buffer.put(operandBytes);
+
+		try {
+			Files.write(file, buffer.array());
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot write Halstead sketches to '" + file + "'", e);
+		}
+	}
+
+	/**
+	 * Merges the sketches and totals written by {@link #writeSketches(Path)} into this parser.
+	 */
+	protected void readSketches(Path file) {
+		ByteBuffer buffer;
+		try {
+			buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read Halstead sketches from '" + file + "'", e);
+		}
+
+		if (buffer.remaining() < 20 || buffer.getInt() != SKETCH_FILE_MAGIC) {
+			throw new RuntimeException("Not a Halstead sketch file: '" + file + "'");
+		}
+
+		operatorTotal += buffer.getLong();
+		operandTotal += buffer.getLong();
+		operatorSketch.merge(GMHalsteadSketch.read(buffer));
+		operandSketch.merge(GMHalsteadSketch.read(buffer));
 	}
 
-	protected void parseFunction(Function function) {
+	protected void parseFunction(Function function) throws CancelledException {
 		if (function.isExternal())
 			return;
 
 		AddressSetView body = function.getBody();
 		InstructionIterator instructions = function.getProgram().getListing().getInstructions(body, true);
-		instructions.forEach(instr -> parseInstruction(instr));
+		while (instructions.hasNext()) {
+			monitor.checkCanceled();
+			parseInstruction(instructions.next());
+		}
 	}
 
-	private void parseInstruction(Instruction instruction) {
+	protected void parseInstruction(Instruction instruction) {
+		if (engine == Engine.PCODE) {
+			parsePcode(instruction);
+			return;
+		}
+
 		{ /* OPERATOR */
 			String op = instruction.getMnemonicString();
 			if (StringUtils.isEmpty(op)) {
 				throw new RuntimeException("Empty operator found at '" + instruction.getAddressString(false, true) + "'");
 			}
 
-			addOperator(op, instruction);
+			operatorIds[0] = addOperator(op, instruction);
+		}
+
+		int numOperands = instruction.getNumOperands();
+		if (operandIds.length < numOperands) {
+			operandIds = new int[numOperands];
 		}
 
-		{ /* OPERANDS */
-			int numOperands = instruction.getNumOperands();
+		if (operandTokens != Normalization.STRING) { /* OPERANDS, structured */
+			for (int i = 0; i < numOperands; i++) {
+				operandIds[i] = addOperandKey(GMHalsteadTokenizer.operandKey(instruction, i, operandTokens));
+			}
+		} else { /* OPERANDS */
 			String opnd;
 			for (int i = 0; i < numOperands; i++) {
 				opnd = instruction.getDefaultOperandRepresentation(i);
@@ -109,33 +517,138 @@ public abstract class GMHalsteadParser {
 					throw new RuntimeException("Empty operand found at '" + instruction.getAddressString(false, true) + "'");
 				}
 
-				addOperand(opnd, instruction);
+				operandIds[i] = addOperand(opnd, instruction);
 			}
 		}
+
+		instructionParsed(instruction, operatorIds, 1, operandIds, numOperands);
+	}
+
+	/**
+	 * P-code engine: one operator per p-code op, one operand per input and output varnode.
+	 */
+	private void parsePcode(Instruction instruction) {
+		if (pcode == null) {
+			pcode = GMHalsteadPcode.of(instruction.getProgram());
+		}
+
+		long[] tokens = pcode.get(instruction);
+		int numOperators = (int) tokens[0];
+		int numOperands = tokens.length - numOperators - 1;
+
+		if (operatorIds.length < numOperators) {
+			operatorIds = new int[numOperators];
+		}
+		if (operandIds.length < numOperands) {
+			operandIds = new int[numOperands];
+		}
+
+		for (int i = 0; i < numOperators; i++) {
+			operatorIds[i] = addOperatorKey(tokens[1 + i]);
+		}
+		for (int i = 0; i < numOperands; i++) {
+			operandIds[i] = addOperandKey(tokens[1 + numOperators + i]);
+		}
+
+		instructionParsed(instruction, operatorIds, numOperators, operandIds, numOperands);
+	}
+
+	/**
+	 * Invoked after an instruction has been counted, with the ids of its tokens.
+	 * The id arrays are reused: only the first <code>numOperators</code> and <code>numOperands</code> entries are valid.
+	 */
+	protected void instructionParsed(Instruction instruction, int[] operatorIds, int numOperators, int[] operandIds, int numOperands) {
+		// nothing to do
+	}
+
+	/**
+	 * Removes the tokens of an instruction counted before: number of operators, operator ids, then the operand ids.
+	 */
+	protected void unparseInstruction(int[] tokens) {
+		unparseInstruction(tokens, 0, tokens.length);
+	}
+
+	/**
+	 * Removes the tokens of an instruction stored in <code>tokens[start .. end)</code>, in the same layout.
+	 */
+	protected void unparseInstruction(int[] tokens, int start, int end) {
+		int numOperators = tokens[start];
+		for (int i = start + 1; i <= start + numOperators; i++) {
+			operators.remove(tokens[i]);
+		}
+		for (int i = start + numOperators + 1; i < end; i++) {
+			operands.remove(tokens[i]);
+		}
 	}
 
-	private void addOperator(String opDescriptor, Instruction instruction) {
-		ops.add(opDescriptor);
+	/*
+	 * In approximate mode tokens are only sketched: the returned id is -1.
+	 */
+
+	private int addOperator(String opDescriptor, Instruction instruction) {
+		if (isApproximate()) {
+			operatorSketch.add(opDescriptor);
+			operatorTotal++;
+			return -1;
+		}
+		return operators.add(opDescriptor);
+	}
+
+	private int addOperand(String opndDescriptor, Instruction instruction) {
+		if (isApproximate()) {
+			operandSketch.add(opndDescriptor);
+			operandTotal++;
+			return -1;
+		}
+		return operands.add(opndDescriptor);
 	}
 
-	private void addOperand(String opndDescriptor, Instruction instruction) {
-		opnds.add(opndDescriptor);
+	private int addOperatorKey(long key) {
+		if (isApproximate()) {
+			operatorSketch.addKey(key);
+			operatorTotal++;
+			return -1;
+		}
+		return operators.addKey(key);
+	}
+
+	private int addOperandKey(long key) {
+		if (isApproximate()) {
+			operandSketch.addKey(key);
+			operandTotal++;
+			return -1;
+		}
+		return operands.addKey(key);
 	}
 
 	public GMHalsteadParser.Type getParseType() {
 		return parseType;
 	}
 
-	private Result createResult() {
-		// distinct operators/operands number: number of distinct keys
-		Integer _distinctOps = new HashSet<>(ops).size();
-		BigDecimal n1 = BigDecimal.valueOf(_distinctOps);
-		Integer _distinctOpnds = new HashSet<>(opnds).size();
-		BigDecimal n2 = BigDecimal.valueOf(_distinctOpnds);
+	protected int distinctOperators() {
+		return isApproximate() ? (int) Math.min(Integer.MAX_VALUE, operatorSketch.estimate()) : operators.distinct();
+	}
+
+	protected int distinctOperands() {
+		return isApproximate() ? (int) Math.min(Integer.MAX_VALUE, operandSketch.estimate()) : operands.distinct();
+	}
+
+	protected long totalOperators() {
+		return isApproximate() ? operatorTotal : operators.total();
+	}
+
+	protected long totalOperands() {
+		return isApproximate() ? operandTotal : operands.total();
+	}
+
+	protected Result createResult() {
+		// distinct operators/operands number: size of the token dictionaries, or their estimate
+		BigDecimal n1 = BigDecimal.valueOf(distinctOperators());
+		BigDecimal n2 = BigDecimal.valueOf(distinctOperands());
 
-		// total operators/operands number: union of all keys
-		BigDecimal N1 = BigDecimal.valueOf(ops.size());
-		BigDecimal N2 = BigDecimal.valueOf(opnds.size());
+		// total operators/operands number: running occurrence counters
+		BigDecimal N1 = BigDecimal.valueOf(totalOperators());
+		BigDecimal N2 = BigDecimal.valueOf(totalOperands());
 
 		return new Result(n1, n2, N1, N2);
 	}
@@ -0,0 +1,181 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ghidra.framework.model.DomainObjectChangedEvent;
+import ghidra.framework.model.DomainObjectListener;
+import ghidra.program.model.address.Address;
+import ghidra.program.model.lang.InstructionPrototype;
+import ghidra.program.model.listing.FlowOverride;
+import ghidra.program.model.listing.Instruction;
+import ghidra.program.model.listing.Program;
+import ghidra.program.model.pcode.PcodeOp;
+import ghidra.program.model.pcode.Varnode;
+import it.unive.ghidra.metrics.util.GMOptions;
+import it.unive.ghidra.metrics.util.GMProgramChanges;
+
+/**
+ * P-code tokenization of instructions: each {@link PcodeOp} opcode is an operator, each input
+ * and output {@link Varnode} is an operand. Unlike mnemonics, these tokens do not depend on the
+ * processor, so measures can be compared across architectures.
+ *
+ * The lifted tokens are cached per instruction address, one cache per program. An entry is
+ * used only if the instruction at the address still has the prototype and flow override it was
+ * lifted with, so a parse running before the cache has seen a change event does not read stale
+ * p-code. The cache is a listener of the program and drops the instructions in the changed
+ * ranges until it is released.
+ */
+public final class GMHalsteadPcode implements DomainObjectListener, GMProgramChanges.Handler {
+
+	/**
+	 * Maximum number of cached instructions per program.
+	 */
+	public static final String OPTION_CACHE_SIZE = "halstead-pcode-cache-size";
+
+	private static final long TAG_OPCODE = 1L << 56;
+
+	private static final class Lifted {
+		private final InstructionPrototype prototype;
+		private final FlowOverride flowOverride;
+		private final long[] tokens;
+
+		private Lifted(Instruction instruction, long[] tokens) {
+			this.prototype = instruction.getPrototype();
+			this.flowOverride = instruction.getFlowOverride();
+			this.tokens = tokens;
+		}
+
+		private boolean isValid(Instruction instruction) {
+			return prototype == instruction.getPrototype() && flowOverride == instruction.getFlowOverride();
+		}
+	}
+
+	private static final Map<Program, GMHalsteadPcode> caches = new WeakHashMap<>();
+
+	/**
+	 * @return the p-code cache of the program, created and registered on first use
+	 */
+	public static synchronized GMHalsteadPcode of(Program program) {
+		GMHalsteadPcode cache = caches.get(program);
+		if (cache == null) {
+			cache = new GMHalsteadPcode(GMOptions.getInt(OPTION_CACHE_SIZE, 1 << 20));
+			program.addListener(cache);
+			caches.put(program, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Unregisters and drops the p-code cache of the program, if any; the next use creates a new one.
+	 */
+	public static synchronized void release(Program program) {
+		GMHalsteadPcode cache = caches.remove(program);
+		if (cache != null) {
+			program.removeListener(cache);
+		}
+	}
+
+	// tokens of each instruction: number of operators, operator keys, then operand keys
+	private final NavigableMap<Address, Lifted> lifted;
+	private final AtomicInteger size;
+	private final int maxSize;
+
+	private GMHalsteadPcode(int maxSize) {
+		this.lifted = new ConcurrentSkipListMap<>();
+		this.size = new AtomicInteger();
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the tokens of the instruction p-code: number of operators, operator keys, then operand keys
+	 */
+	public long[] get(Instruction instruction) {
+		Address address = instruction.getAddress();
+
+		Lifted entry = lifted.get(address);
+		if (entry != null && entry.isValid(instruction))
+			return entry.tokens;
+
+		long[] tokens = lift(instruction);
+		Lifted update = new Lifted(instruction, tokens);
+		if (entry != null) {
+			lifted.replace(address, entry, update);
+		} else if (size.get() < maxSize && lifted.putIfAbsent(address, update) == null) {
+			size.incrementAndGet();
+		}
+		return tokens;
+	}
+
+	private static long[] lift(Instruction instruction) {
+		PcodeOp[] ops = instruction.getPcode();
+
+		int numOperands = 0;
+		for (PcodeOp op : ops) {
+			numOperands += op.getNumInputs() + (op.getOutput() != null ? 1 : 0);
+		}
+
+		long[] tokens = new long[1 + ops.length + numOperands];
+		tokens[0] = ops.length;
+
+		int next = 1 + ops.length;
+		for (int i = 0; i < ops.length; i++) {
+			PcodeOp op = ops[i];
+			tokens[1 + i] = TAG_OPCODE | op.getOpcode();
+
+			for (Varnode input : op.getInputs()) {
+				tokens[next++] = varnodeKey(input);
+			}
+			if (op.getOutput() != null) {
+				tokens[next++] = varnodeKey(op.getOutput());
+			}
+		}
+
+		return tokens;
+	}
+
+	private static long varnodeKey(Varnode varnode) {
+		if (varnode == null)
+			return 0;
+
+		long h = varnode.getSpace();
+		h = (h * 0x9E3779B97F4A7C15L) ^ varnode.getSize();
+		if (!varnode.isUnique()) {
+			// temporaries are numbered per translation: only their space and size are meaningful
+			h = (h * 0x9E3779B97F4A7C15L) ^ varnode.getOffset();
+		}
+		return h ^ (h >>> 29);
+	}
+
+	@Override
+	public void domainObjectChanged(DomainObjectChangedEvent ev) {
+		GMProgramChanges.dispatch(ev, this);
+	}
+
+	@Override
+	public void codeChanged(Address start, Address end) {
+		evict(lifted.subMap(start, true, end, true));
+	}
+
+	@Override
+	public void functionChanged(Address entryPoint) {
+		// cached by instruction, function bounds do not matter
+	}
+
+	@Override
+	public void allChanged() {
+		evict(lifted);
+	}
+
+	/**
+	 * Removes the entries one at a time, so the size stays exact while other threads insert.
+	 */
+	private void evict(NavigableMap<Address, Lifted> entries) {
+		while (entries.pollFirstEntry() != null) {
+			size.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct Halstead tokens in bounded memory.
+ *
+ * The sketch has <code>2^precision</code> one-byte registers and a relative standard error of
+ * about <code>1.04 / sqrt(2^precision)</code>. Sketches with the same precision merge by taking
+ * the register-wise maximum, so partial sketches of functions, programs or separate batch runs
+ * combine into the sketch of their union.
+ */
+public final class GMHalsteadSketch {
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 18;
+
+	private static final int MAGIC = 0x484C4C31; // "HLL1"
+
+	private final int precision;
+	private final byte[] registers;
+
+	public GMHalsteadSketch(int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("Sketch precision must be in [" + MIN_PRECISION + ", " + MAX_PRECISION + "]: " + precision);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * @return the smallest precision whose relative standard error does not exceed <code>error</code>
+	 */
+	public static int precisionFor(double error) {
+		if (!(error > 0 && error < 1)) {
+			throw new IllegalArgumentException("Sketch error must be in (0, 1): " + error);
+		}
+
+		double m = Math.pow(1.04 / error, 2);
+		int precision = (int) Math.ceil(Math.log(m) / Math.log(2));
+		return Math.min(MAX_PRECISION, Math.max(MIN_PRECISION, precision));
+	}
+
+	public int precision() {
+		return precision;
+	}
+
+	public double relativeError() {
+		return 1.04 / Math.sqrt(registers.length);
+	}
+
+	public void add(String token) {
+		addHash(hash(token));
+	}
+
+	public void addKey(long key) {
+		addHash(mix(key));
+	}
+
+	private void addHash(long hash) {
+		int index = (int) (hash >>> (64 - precision));
+		long rest = hash << precision;
+		int rank = Math.min(Long.numberOfLeadingZeros(rest), 64 - precision) + 1;
+		if (rank > registers[index]) {
+			registers[index] = (byte) rank;
+		}
+	}
+
+	/**
+	 * Adds all the tokens seen by <code>other</code> to this sketch.
+	 */
+	public void merge(GMHalsteadSketch other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Cannot merge sketches with precision " + precision + " and " + other.precision);
+		}
+
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(registers, (byte) 0);
+	}
+
+	/**
+	 * Estimated number of distinct tokens.
+	 */
+	public long estimate() {
+		int m = registers.length;
+
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+
+		// small range correction: linear counting while there are empty registers
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Serialized sketch: magic, precision, registers.
+	 */
+	public byte[] toBytes() {
+		ByteBuffer buffer = ByteBuffer.allocate(8 + registers.length);
+		buffer.putInt(MAGIC);
+		buffer.putInt(precision);
+		buffer.put(registers);
+		return buffer.array();
+	}
+
+	public static GMHalsteadSketch fromBytes(byte[] bytes) {
+		return read(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Reads a sketch written by {@link #toBytes()} at the current position of the buffer.
+	 */
+	public static GMHalsteadSketch read(ByteBuffer buffer) {
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+			throw new IllegalArgumentException("Not a Halstead sketch");
+		}
+
+		GMHalsteadSketch sketch = new GMHalsteadSketch(buffer.getInt());
+		if (buffer.remaining() < sketch.registers.length) {
+			throw new IllegalArgumentException("Truncated Halstead sketch");
+		}
+		buffer.get(sketch.registers);
+		return sketch;
+	}
+
+	/**
+	 * 64-bit FNV-1a of the UTF-8 bytes, finalized with {@link #mix(long)}.
+	 */
+	private static long hash(String token) {
+		long h = 0xCBF29CE484222325L;
+		for (byte b : token.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b & 0xFF;
+			h *= 0x100000001B3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * MurmurHash3 64-bit finalizer: spreads the key bits over the whole word.
+	 */
+	private static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xFF51AFD7ED558CCDL;
+		k ^= k >>> 33;
+		k *= 0xC4CEB93FE1A85A53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -0,0 +1,96 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import ghidra.program.model.address.Address;
+import it.unive.ghidra.metrics.impl.halstead.GMHalsteadParser.Result;
+
+/**
+ * Halstead base counts of every function of a program, one row per function entry point.
+ *
+ * Rows are stored in primitive arrays, sorted by entry point; the derived measures are
+ * computed on demand by {@link GMHalstead.GMHalsteadFunctionRow}.
+ */
+public final class GMHalsteadTable {
+
+	private Address[] entryPoints;
+	private int[] n1, n2; // distinct operators, operands
+	private long[] N1, N2; // total operators, operands
+	private int size;
+
+	public GMHalsteadTable(int capacity) {
+		capacity = Math.max(capacity, 16);
+
+		this.entryPoints = new Address[capacity];
+		this.n1 = new int[capacity];
+		this.n2 = new int[capacity];
+		this.N1 = new long[capacity];
+		this.N2 = new long[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Appends a row; rows must be added in ascending entry point order.
+	 */
+	public void add(Address entryPoint, int n1, int n2, long N1, long N2) {
+		if (size == entryPoints.length) {
+			grow();
+		}
+
+		this.entryPoints[size] = entryPoint;
+		this.n1[size] = n1;
+		this.n2[size] = n2;
+		this.N1[size] = N1;
+		this.N2[size] = N2;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the row of the function with the given entry point, or a negative value if it is not in the table
+	 */
+	public int indexOf(Address entryPoint) {
+		return Arrays.binarySearch(entryPoints, 0, size, entryPoint);
+	}
+
+	public Address getEntryPoint(int row) {
+		return entryPoints[row];
+	}
+
+	public int getNumDistinctOperators(int row) {
+		return n1[row];
+	}
+
+	public int getNumDistinctOperands(int row) {
+		return n2[row];
+	}
+
+	public long getNumOperators(int row) {
+		return N1[row];
+	}
+
+	public long getNumOperands(int row) {
+		return N2[row];
+	}
+
+	public Result getResult(int row) {
+		//@formatter:off
+		return new Result(
+				BigDecimal.valueOf(n1[row]), BigDecimal.valueOf(n2[row]),
+				BigDecimal.valueOf(N1[row]), BigDecimal.valueOf(N2[row]));
+		//@formatter:on
+	}
+
+	private void grow() {
+		int capacity = entryPoints.length * 2;
+		entryPoints = Arrays.copyOf(entryPoints, capacity);
+		n1 = Arrays.copyOf(n1, capacity);
+		n2 = Arrays.copyOf(n2, capacity);
+		N1 = Arrays.copyOf(N1, capacity);
+		N2 = Arrays.copyOf(N2, capacity);
+	}
+}
@@ -0,0 +1,108 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import ghidra.program.model.address.Address;
+import ghidra.program.model.lang.Register;
+import ghidra.program.model.listing.Instruction;
+import ghidra.program.model.scalar.Scalar;
+
+/**
+ * Operand tokenization from the operand objects and type bits of an instruction.
+ *
+ * Operands are hashed into 64-bit keys without formatting their textual representation.
+ * Each {@link Normalization} level merges more operands into the same token.
+ */
+public final class GMHalsteadTokenizer {
+
+	public enum Normalization {
+		STRING, // textual operand representation (no structured tokenization)
+		EXACT, // exact registers, immediates and addresses
+		REGISTER_CLASS, // registers reduced to their class (type, size, group)
+		IMMEDIATE_BUCKETED; // as REGISTER_CLASS, immediates bucketed by magnitude, addresses by space
+	}
+
+	private static final long TAG_REGISTER = 1;
+	private static final long TAG_SCALAR = 2;
+	private static final long TAG_ADDRESS = 3;
+	private static final long TAG_OTHER = 4;
+
+	private GMHalsteadTokenizer() {
+	}
+
+	/**
+	 * @return the token key of the operand at index <code>opIndex</code>
+	 */
+	public static long operandKey(Instruction instruction, int opIndex, Normalization normalization) {
+		long key = mix(0, instruction.getOperandType(opIndex));
+
+		Object[] opObjects = instruction.getOpObjects(opIndex);
+		for (Object obj : opObjects) {
+			if (obj instanceof Register) {
+				key = mix(key, TAG_REGISTER);
+				key = mix(key, registerKey((Register) obj, normalization));
+			} else if (obj instanceof Scalar) {
+				key = mix(key, TAG_SCALAR);
+				key = mix(key, scalarKey((Scalar) obj, normalization));
+			} else if (obj instanceof Address) {
+				key = mix(key, TAG_ADDRESS);
+				key = mix(key, addressKey((Address) obj, normalization));
+			} else if (obj != null) {
+				key = mix(key, TAG_OTHER);
+				key = mix(key, otherKey(obj));
+			}
+		}
+
+		return key;
+	}
+
+	private static long registerKey(Register register, Normalization normalization) {
+		if (normalization == Normalization.EXACT) {
+			return mix(register.getOffset(), register.getBitLength());
+		}
+
+		String group = register.getGroup();
+		long key = mix(register.getTypeFlags(), register.getBitLength());
+		return group == null ? key : mix(key, group.hashCode());
+	}
+
+	private static long scalarKey(Scalar scalar, Normalization normalization) {
+		long value = scalar.getValue();
+		if (normalization != Normalization.IMMEDIATE_BUCKETED) {
+			return value;
+		}
+
+		// sign and number of significant bits of the magnitude
+		long magnitude = value < 0 ? -value : value;
+		int bits = Long.SIZE - Long.numberOfLeadingZeros(magnitude);
+		return value < 0 ? -bits - 1 : bits;
+	}
+
+	private static long addressKey(Address address, Normalization normalization) {
+		long space = address.getAddressSpace().getSpaceID();
+		if (normalization == Normalization.IMMEDIATE_BUCKETED) {
+			return space;
+		}
+		return mix(space, address.getOffset());
+	}
+
+	/**
+	 * Key of any other operand object from its class and text: identity hash codes differ from a
+	 * run to the next and between equal objects.
+	 */
+	private static long otherKey(Object obj) {
+		return mix(stringKey(obj.getClass().getName()), stringKey(obj.toString()));
+	}
+
+	private static long stringKey(String s) {
+		// FNV-1a
+		long h = 0xCBF29CE484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * 0x100000001B3L;
+		}
+		return h;
+	}
+
+	private static long mix(long hash, long value) {
+		long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+}
@@ -0,0 +1,162 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse occurrence vector of Halstead tokens: ids of a program-wide dictionary, sorted
+ * ascending, with their occurrence counts.
+ *
+ * The vector of a union of functions is the sum of their vectors: distinct tokens are the
+ * non-zero entries, total tokens the sum of the counts.
+ */
+public final class GMHalsteadVector {
+	public static final GMHalsteadVector EMPTY = new GMHalsteadVector(new int[0], new int[0], 0);
+
+	/**
+	 * Accumulates token ids into a dense histogram, tracking the touched ids so that
+	 * building the sparse vector and resetting cost in proportion to the distinct tokens.
+	 */
+	public static final class Builder {
+		private int[] counts = new int[256];
+		private int[] touched = new int[64];
+		private int numTouched;
+
+		public void add(int id) {
+			if (id >= counts.length) {
+				counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+			}
+			if (counts[id]++ == 0) {
+				if (numTouched == touched.length) {
+					touched = Arrays.copyOf(touched, touched.length * 2);
+				}
+				touched[numTouched++] = id;
+			}
+		}
+
+		/**
+		 * @return the vector of the ids added since the last build
+		 */
+		public GMHalsteadVector build() {
+			GMHalsteadVector vector = GMHalsteadVector.of(counts, touched, numTouched);
+			for (int i = 0; i < numTouched; i++) {
+				counts[touched[i]] = 0;
+			}
+			numTouched = 0;
+			return vector;
+		}
+	}
+
+	private final int[] ids;
+	private final int[] counts;
+	private final long total;
+
+	private GMHalsteadVector(int[] ids, int[] counts, long total) {
+		this.ids = ids;
+		this.counts = counts;
+		this.total = total;
+	}
+
+	/**
+	 * Sparse vector of a dense histogram, reading only the <code>touched</code> ids (not necessarily sorted).
+	 */
+	public static GMHalsteadVector of(int[] denseCounts, int[] touched, int numTouched) {
+		int[] ids = Arrays.copyOf(touched, numTouched);
+		Arrays.sort(ids);
+
+		int[] counts = new int[numTouched];
+		long total = 0;
+		for (int i = 0; i < numTouched; i++) {
+			counts[i] = denseCounts[ids[i]];
+			total += counts[i];
+		}
+		return new GMHalsteadVector(ids, counts, total);
+	}
+
+	/**
+	 * Number of distinct tokens: <strong>n</strong>
+	 */
+	public int distinct() {
+		return ids.length;
+	}
+
+	/**
+	 * Number of token occurrences: <strong>N</strong>
+	 */
+	public long total() {
+		return total;
+	}
+
+	public int id(int i) {
+		return ids[i];
+	}
+
+	public int count(int i) {
+		return counts[i];
+	}
+
+	/**
+	 * @return the vector with the same distinct tokens, each counted once
+	 */
+	public GMHalsteadVector support() {
+		int[] ones = new int[ids.length];
+		Arrays.fill(ones, 1);
+		return new GMHalsteadVector(ids, ones, ids.length);
+	}
+
+	/**
+	 * @return the sum of the two vectors
+	 */
+	public GMHalsteadVector add(GMHalsteadVector other) {
+		if (other.ids.length == 0)
+			return this;
+		if (ids.length == 0)
+			return other;
+
+		int[] sumIds = new int[ids.length + other.ids.length];
+		int[] sumCounts = new int[sumIds.length];
+
+		int i = 0, j = 0, k = 0;
+		while (i < ids.length && j < other.ids.length) {
+			if (ids[i] < other.ids[j]) {
+				sumIds[k] = ids[i];
+				sumCounts[k++] = counts[i++];
+			} else if (ids[i] > other.ids[j]) {
+				sumIds[k] = other.ids[j];
+				sumCounts[k++] = other.counts[j++];
+			} else {
+				sumIds[k] = ids[i];
+				sumCounts[k++] = counts[i++] + other.counts[j++];
+			}
+		}
+		while (i < ids.length) {
+			sumIds[k] = ids[i];
+			sumCounts[k++] = counts[i++];
+		}
+		while (j < other.ids.length) {
+			sumIds[k] = other.ids[j];
+			sumCounts[k++] = other.counts[j++];
+		}
+
+		return new GMHalsteadVector(Arrays.copyOf(sumIds, k), Arrays.copyOf(sumCounts, k), total + other.total);
+	}
+
+	/**
+	 * @return the sum of all the vectors, merged pairwise to keep every merge balanced
+	 */
+	public static GMHalsteadVector sum(List<GMHalsteadVector> vectors) {
+		if (vectors.isEmpty())
+			return EMPTY;
+
+		GMHalsteadVector[] level = vectors.toArray(new GMHalsteadVector[0]);
+		int size = level.length;
+		while (size > 1) {
+			int next = 0;
+			for (int i = 0; i < size; i += 2) {
+				level[next++] = i + 1 < size ? level[i].add(level[i + 1]) : level[i];
+			}
+			size = next;
+		}
+		return level[0];
+	}
+}
@@ -0,0 +1,301 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ghidra.program.model.address.Address;
+import ghidra.program.model.listing.Function;
+import ghidra.program.model.listing.Instruction;
+import ghidra.program.model.listing.Program;
+import ghidra.program.model.symbol.Namespace;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+import it.unive.ghidra.metrics.impl.callgraph.GMCallGraphAnalysis;
+import it.unive.ghidra.metrics.impl.callgraph.GMCallGraphSnapshot;
+import it.unive.ghidra.metrics.impl.halstead.GMHalsteadParser.Result;
+
+/**
+ * Operator and operand {@link GMHalsteadVector}s of every function of a program, against
+ * program-wide token dictionaries.
+ *
+ * The result of any set of functions (a namespace, a function and its callees, ...) is computed
+ * by summing their vectors, without walking the listing again. Rows are grouped by namespace
+ * while the vectors are built. Call-tree rollups are computed once over the
+ * {@link GMCallGraphSnapshot} condensed into strongly connected components, folding the callee
+ * components into their callers in reverse topological order: the distinct tokens of a component
+ * are the ones of its functions plus the ones of its callee components, and its totals are its
+ * own plus the ones of its callee components. As in a call tree, a component reached by several
+ * callee components counts once for each of them; totals saturate at {@link Long#MAX_VALUE}.
+ */
+public final class GMHalsteadVectors {
+
+	/**
+	 * Single pass over the functions, collecting the token ids of each one into sparse vectors.
+	 */
+	private static final class GMHalsteadVectorParser extends GMHalsteadParser {
+		private final Program program;
+		private final GMHalsteadVectors vectors;
+
+		private final GMHalsteadVector.Builder operatorBuilder = new GMHalsteadVector.Builder();
+		private final GMHalsteadVector.Builder operandBuilder = new GMHalsteadVector.Builder();
+
+		protected GMHalsteadVectorParser(Program program, GMHalsteadVectors vectors) {
+			// token ids are the dictionary: never approximate
+			super(GMHalsteadParser.Type.PROGRAM, false);
+			this.program = program;
+			this.vectors = vectors;
+		}
+
+		@Override
+		protected void parseImpl() throws CancelledException {
+			getMonitor().initialize(program.getFunctionManager().getFunctionCount());
+
+			for (Function function : program.getFunctionManager().getFunctions(true)) {
+				getMonitor().incrementProgress(1);
+				if (function.isExternal())
+					continue;
+
+				parseFunction(function);
+				vectors.add(function, operatorBuilder.build(), operandBuilder.build());
+			}
+		}
+
+		@Override
+		protected void instructionParsed(Instruction instruction, int[] operatorIds, int numOperators, int[] operandIds, int numOperands) {
+			for (int i = 0; i < numOperators; i++) {
+				operatorBuilder.add(operatorIds[i]);
+			}
+			for (int i = 0; i < numOperands; i++) {
+				operandBuilder.add(operandIds[i]);
+			}
+		}
+	}
+
+	public static GMHalsteadVectors build(Program program, TaskMonitor monitor) throws CancelledException {
+		GMHalsteadVectors vectors = new GMHalsteadVectors(program);
+		new GMHalsteadVectorParser(program, vectors).setMonitor(monitor).parseImpl();
+		return vectors;
+	}
+
+	private final Program program;
+	private final long modificationNumber;
+
+	// one row per function, sorted by entry point
+	private Address[] entryPoints;
+	private GMHalsteadVector[] operators;
+	private GMHalsteadVector[] operands;
+	private int size;
+
+	// rows of every namespace, nested namespaces included, by namespace id
+	private final Map<Long, List<Integer>> namespaceRows = new HashMap<>();
+
+	// call graph condensed into components, with the call-tree result of each component
+	private int[] component;
+	private int numComponents;
+	private GMHalsteadVector[] treeOperators;
+	private GMHalsteadVector[] treeOperands;
+	private long[] treeOperatorTotals;
+	private long[] treeOperandTotals;
+
+	private GMHalsteadVectors(Program program) {
+		int capacity = Math.max(16, program.getFunctionManager().getFunctionCount());
+
+		this.program = program;
+		this.modificationNumber = program.getModificationNumber();
+		this.entryPoints = new Address[capacity];
+		this.operators = new GMHalsteadVector[capacity];
+		this.operands = new GMHalsteadVector[capacity];
+		this.size = 0;
+	}
+
+	private void add(Function function, GMHalsteadVector operatorVector, GMHalsteadVector operandVector) {
+		if (size == entryPoints.length) {
+			int capacity = size * 2;
+			entryPoints = Arrays.copyOf(entryPoints, capacity);
+			operators = Arrays.copyOf(operators, capacity);
+			operands = Arrays.copyOf(operands, capacity);
+		}
+
+		entryPoints[size] = function.getEntryPoint();
+		operators[size] = operatorVector;
+		operands[size] = operandVector;
+
+		Namespace parent = function.getParentNamespace();
+		while (parent != null) {
+			namespaceRows.computeIfAbsent(parent.getID(), id -> new ArrayList<>()).add(size);
+			parent = parent.isGlobal() ? null : parent.getParentNamespace();
+		}
+		size++;
+	}
+
+	/**
+	 * @return true if the program has not been modified since the vectors were built
+	 */
+	public boolean isValid() {
+		return program.getModificationNumber() == modificationNumber;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the row of the function with the given entry point, or a negative value if it has no vectors
+	 */
+	public int indexOf(Address entryPoint) {
+		return Arrays.binarySearch(entryPoints, 0, size, entryPoint);
+	}
+
+	public GMHalsteadVector getOperators(int row) {
+		return operators[row];
+	}
+
+	public GMHalsteadVector getOperands(int row) {
+		return operands[row];
+	}
+
+	/**
+	 * @return the result of the union of the given functions
+	 */
+	public Result result(Collection<Function> functions) {
+		List<Integer> rows = new ArrayList<>(functions.size());
+		for (Function function : functions) {
+			int row = indexOf(function.getEntryPoint());
+			if (row >= 0) {
+				rows.add(row);
+			}
+		}
+		return rowsResult(rows);
+	}
+
+	/**
+	 * @return the result of all the functions in the namespace or in any of its nested namespaces
+	 */
+	public Result namespaceResult(Namespace namespace) {
+		return rowsResult(namespaceRows.getOrDefault(namespace.getID(), Collections.emptyList()));
+	}
+
+	private Result rowsResult(Collection<Integer> rows) {
+		List<GMHalsteadVector> operatorVectors = new ArrayList<>(rows.size());
+		List<GMHalsteadVector> operandVectors = new ArrayList<>(rows.size());
+		for (int row : rows) {
+			operatorVectors.add(operators[row]);
+			operandVectors.add(operands[row]);
+		}
+
+		GMHalsteadVector ops = GMHalsteadVector.sum(operatorVectors);
+		GMHalsteadVector opnds = GMHalsteadVector.sum(operandVectors);
+		return createResult(ops.distinct(), opnds.distinct(), ops.total(), opnds.total());
+	}
+
+	/**
+	 * @return the result of the function and of all the functions reachable from it through calls
+	 * @param monitor monitor of the call graph snapshot, built by the first call
+	 */
+	public synchronized Result callTreeResult(Function function, TaskMonitor monitor) throws CancelledException {
+		int root = indexOf(function.getEntryPoint());
+		if (root < 0)
+			return createResult(0, 0, 0, 0);
+
+		if (component == null) {
+			condense(monitor);
+		}
+
+		int c = component[root];
+		return createResult(treeOperators[c].distinct(), treeOperands[c].distinct(), treeOperatorTotals[c], treeOperandTotals[c]);
+	}
+
+	/**
+	 * Condenses the call graph into strongly connected components and computes the call-tree
+	 * result of every component, callee components first.
+	 */
+	private void condense(TaskMonitor monitor) throws CancelledException {
+		GMCallGraphSnapshot graph = GMCallGraphSnapshot.build(program, monitor);
+		GMCallGraphAnalysis analysis = GMCallGraphAnalysis.analyze(graph, monitor);
+
+		// rows and snapshot functions are both the non-external functions in entry point order
+		int[] functionOf = new int[size];
+		int[] componentOf = new int[size];
+		numComponents = analysis.numComponents();
+		for (int row = 0; row < size; row++) {
+			functionOf[row] = graph.functionIndex(entryPoints[row]);
+			componentOf[row] = functionOf[row] >= 0 ? analysis.getComponent(functionOf[row]) : numComponents++;
+		}
+		component = componentOf;
+
+		// rows of each component
+		int[] firstRow = new int[numComponents + 1];
+		for (int row = 0; row < size; row++) {
+			firstRow[component[row] + 1]++;
+		}
+		for (int c = 0; c < numComponents; c++) {
+			firstRow[c + 1] += firstRow[c];
+		}
+		int[] rows = new int[size];
+		int[] next = Arrays.copyOf(firstRow, numComponents);
+		for (int row = 0; row < size; row++) {
+			rows[next[component[row]]++] = row;
+		}
+
+		treeOperators = new GMHalsteadVector[numComponents];
+		treeOperands = new GMHalsteadVector[numComponents];
+		treeOperatorTotals = new long[numComponents];
+		treeOperandTotals = new long[numComponents];
+
+		int[] seen = new int[numComponents]; // last component + 1 each callee component has been folded into
+
+		// components are numbered callees first: the callee components of c are all lower than c
+		for (int c = 0; c < numComponents; c++) {
+			monitor.checkCanceled();
+
+			List<GMHalsteadVector> operatorVectors = new ArrayList<>();
+			List<GMHalsteadVector> operandVectors = new ArrayList<>();
+			long operatorTotal = 0, operandTotal = 0;
+
+			for (int i = firstRow[c]; i < firstRow[c + 1]; i++) {
+				int row = rows[i];
+				operatorVectors.add(operators[row]);
+				operandVectors.add(operands[row]);
+				operatorTotal = saturatedAdd(operatorTotal, operators[row].total());
+				operandTotal = saturatedAdd(operandTotal, operands[row].total());
+
+				int fn = functionOf[row];
+				if (fn < 0)
+					continue;
+
+				for (int edge = graph.succStart(fn); edge < graph.succEnd(fn); edge++) {
+					int target = analysis.getComponent(graph.succTarget(edge));
+					if (target == c || seen[target] == c + 1)
+						continue;
+
+					seen[target] = c + 1;
+					operatorVectors.add(treeOperators[target]);
+					operandVectors.add(treeOperands[target]);
+					operatorTotal = saturatedAdd(operatorTotal, treeOperatorTotals[target]);
+					operandTotal = saturatedAdd(operandTotal, treeOperandTotals[target]);
+				}
+			}
+
+			// only the distinct tokens are meaningful: counts are reset to keep them bounded
+			treeOperators[c] = GMHalsteadVector.sum(operatorVectors).support();
+			treeOperands[c] = GMHalsteadVector.sum(operandVectors).support();
+			treeOperatorTotals[c] = operatorTotal;
+			treeOperandTotals[c] = operandTotal;
+		}
+	}
+
+	private static long saturatedAdd(long a, long b) {
+		long sum = a + b;
+		return sum < 0 ? Long.MAX_VALUE : sum;
+	}
+
+	private static Result createResult(int n1, int n2, long N1, long N2) {
+		return new Result(BigDecimal.valueOf(n1), BigDecimal.valueOf(n2), BigDecimal.valueOf(N1), BigDecimal.valueOf(N2));
+	}
+}
@@ -1,8 +1,11 @@
 package it.unive.ghidra.metrics.impl.halstead;
 
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 import java.awt.Font;
 
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -10,6 +13,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.SwingConstants;
+import javax.swing.table.DefaultTableModel;
 
 import it.unive.ghidra.metrics.base.GMBaseMetricWindow;
 
@@ -19,10 +23,17 @@ public class GMHalsteadWindow extends GMBaseMetricWindow<GMHalstead, GMHalsteadC
 
 	private JTable tableProgramMeasure;
 	private JTable tableFunctionMeasure;
+	private JTable tableAllFunctions;
+	private JTable tableSelectionMeasure;
+	private JLabel lblNoSelection;
+	private JCheckBox chkIncremental;
+	private JButton btnComputeAllFunctions;
 	private JTabbedPane tabbedPane;
 	private JPanel pnlNoFunctionSelected;
 	private JLabel lblNewLabel;
 
+	private static final String[] ALL_FUNCTIONS_COLUMNS = { "Function", "n1", "n2", "N1", "N2", "Volume", "Difficulty", "Effort" };
+
 	public GMHalsteadWindow(GMHalsteadController controller) {
 		super(controller);
 	}
@@ -31,6 +42,8 @@ public class GMHalsteadWindow extends GMBaseMetricWindow<GMHalstead, GMHalsteadC
 	public boolean init() {
 		populateProgramMeasures();
 		populateFunctionMeasures();
+		populateAllFunctions();
+		populateSelectionMeasures();
 
 		return true;
 	}
@@ -55,7 +68,17 @@ public class GMHalsteadWindow extends GMBaseMetricWindow<GMHalstead, GMHalsteadC
 			scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
 			scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
 
-			pnlProgramMetrics.add(tableProgramMeasure.getTableHeader(), BorderLayout.NORTH);
+			JPanel pnlTop = new JPanel();
+			pnlTop.setLayout(new BorderLayout(0, 0));
+			pnlProgramMetrics.add(pnlTop, BorderLayout.NORTH);
+
+			chkIncremental = new JCheckBox("Update on program changes");
+			chkIncremental.addActionListener(ae -> {
+				getController().setIncremental(chkIncremental.isSelected());
+			});
+			pnlTop.add(chkIncremental, BorderLayout.NORTH);
+			pnlTop.add(tableProgramMeasure.getTableHeader(), BorderLayout.SOUTH);
+
 			pnlProgramMetrics.add(scrollPane, BorderLayout.CENTER);
 		}
 
@@ -87,6 +110,52 @@ public class GMHalsteadWindow extends GMBaseMetricWindow<GMHalstead, GMHalsteadC
 			pnlFunctionMetrics.add(scrollPane, BorderLayout.CENTER);
 		}
 
+		// tab 2 - All functions
+		{
+			JPanel pnlAllFunctions = new JPanel();
+			tabbedPane.addTab("All functions", null, pnlAllFunctions, null);
+			pnlAllFunctions.setLayout(new BorderLayout(0, 0));
+
+			JPanel pnlTop = new JPanel();
+			pnlTop.setLayout(new FlowLayout(FlowLayout.LEADING));
+			pnlAllFunctions.add(pnlTop, BorderLayout.NORTH);
+
+			btnComputeAllFunctions = new JButton("Compute all functions");
+			btnComputeAllFunctions.addActionListener(ae -> {
+				getController().runTask("Halstead all functions", monitor -> getController().computeFunctionsTable());
+				populateAllFunctions();
+			});
+			pnlTop.add(btnComputeAllFunctions);
+
+			tableAllFunctions = new GMTable();
+
+			JScrollPane scrollPane = new JScrollPane(tableAllFunctions);
+			scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+			scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+
+			pnlAllFunctions.add(scrollPane, BorderLayout.CENTER);
+		}
+
+		// tab 3 - Selection measures
+		{
+			JPanel pnlSelectionMetrics = new JPanel();
+			tabbedPane.addTab("Selection measures", null, pnlSelectionMetrics, null);
+			pnlSelectionMetrics.setLayout(new BorderLayout(0, 0));
+
+			lblNoSelection = new JLabel("Select some code in the listing");
+			lblNoSelection.setFont(new Font("Dialog", Font.BOLD | Font.ITALIC, 14));
+			lblNoSelection.setHorizontalAlignment(SwingConstants.CENTER);
+			pnlSelectionMetrics.add(lblNoSelection, BorderLayout.NORTH);
+
+			tableSelectionMeasure = new GMTable();
+
+			JScrollPane scrollPane = new JScrollPane(tableSelectionMeasure);
+			scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+			scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+
+			pnlSelectionMetrics.add(scrollPane, BorderLayout.CENTER);
+		}
+
 		return component;
 	}
 
@@ -100,6 +169,13 @@ public class GMHalsteadWindow extends GMBaseMetricWindow<GMHalstead, GMHalsteadC
 
 	private void populateProgramMeasures() {
 		populateMeasureTable(tableProgramMeasure, getMetric());
+		chkIncremental.setSelected(getController().isIncremental());
+	}
+
+	public void refreshProgramMeasures() {
+		populateProgramMeasures();
+
+		super.refresh();
 	}
 
 	private void populateFunctionMeasures() {
@@ -115,6 +191,51 @@ public class GMHalsteadWindow extends GMBaseMetricWindow<GMHalstead, GMHalsteadC
 		}
 	}
 
+	private void populateSelectionMeasures() {
+		GMHalstead selectionHalstead = getController().getMetricSelection();
+		if (selectionHalstead != null) {
+			populateMeasureTable(tableSelectionMeasure, selectionHalstead);
+
+			tableSelectionMeasure.setVisible(true);
+			lblNoSelection.setVisible(false);
+		} else {
+			tableSelectionMeasure.setVisible(false);
+			lblNoSelection.setVisible(true);
+		}
+	}
+
+	public void refreshSelectionMeasures() {
+		populateSelectionMeasures();
+
+		super.refresh();
+	}
+
+	private void populateAllFunctions() {
+		if (!getController().hasFunctionsTable()) {
+			tableAllFunctions.setVisible(false);
+			btnComputeAllFunctions.setVisible(true);
+			return;
+		}
+
+		DefaultTableModel dtm = new NonEditableTableModel();
+		dtm.setColumnIdentifiers(ALL_FUNCTIONS_COLUMNS);
+
+		for (GMHalstead row : getController().getFunctionsTableMetrics()) {
+			//@formatter:off
+			dtm.addRow(new Object[] {
+				((GMHalstead.GMHalsteadFunctionRow) row).getFunction(),
+				row.getNumDistinctOperators(), row.getNumDistinctOperands(),
+				row.getNumOperators(), row.getNumOperands(),
+				row.getVolume(), row.getDifficulty(), row.getEffort()
+			});
+			//@formatter:on
+		}
+
+		tableAllFunctions.setModel(dtm);
+		tableAllFunctions.setVisible(true);
+		btnComputeAllFunctions.setVisible(false);
+	}
+
 	public boolean isProgramTabVisible() {
 		return tabbedPane.getSelectedIndex() == 0;
 	}
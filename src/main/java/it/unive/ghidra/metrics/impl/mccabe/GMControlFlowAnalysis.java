@@ -0,0 +1,724 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import java.util.Arrays;
+
+/**
+ * Dominator-based metrics of a function of a {@link GMControlFlowGraph}: essential complexity,
+ * residue complexity, number of natural loops and their maximum nesting depth.
+ *
+ * The blocks reachable from the entry block are numbered in DFS preorder and the dominator tree
+ * is built with Lengauer-Tarjan; the post-dominator tree is built the same way on the reversed
+ * graph, from a virtual exit following every exit block.
+ *
+ * An edge to a dominator is a back edge and its target a loop header; loop bodies are collected
+ * innermost first, collapsing each finished loop into its header with a union-find, so every
+ * block is walked a constant number of times.
+ *
+ * Essential complexity: single-entry single-exit regions, from a block <code>a</code> to a block
+ * <code>b</code> post-dominating it, are the blocks dominated by <code>a</code> and not by
+ * <code>b</code>. Regions are collapsed innermost first, each into its entry block, when their
+ * blocks have no edge entering them elsewhere than at <code>a</code>, no edge leaving them
+ * elsewhere than to <code>b</code>, and at most one decision once their inner regions have been
+ * collapsed: sequences, if-then-else, switches and loops with a single exit. The essential
+ * complexity is e - n + 2 of what is left: 1 for a structured function.
+ *
+ * Residue complexity: the function is reducible if every retreating edge of the DFS is a back
+ * edge, its residue complexity is then 1. Otherwise the graph is reduced with T1/T2
+ * transformations and the residue complexity is the cyclomatic complexity of the residue. It
+ * measures irreducibility only: T1/T2 reduce every reducible graph, structured or not.
+ *
+ * Arrays are reused from a function to the next: an instance analyzes one function at a time.
+ */
+public final class GMControlFlowAnalysis {
+
+	private static final int COLLAPSED = 0; // region collapsed into its entry
+	private static final int ENTERED = 1; // region entered elsewhere than at its entry: a larger one may not be
+	private static final int REJECTED = 2; // no larger region with the same entry can be collapsed
+
+	private final GMControlFlowGraph graph;
+
+	// current function: its blocks are graph.functionBlock(blocksStart .. blocksEnd), in block order
+	private int blocksStart, blocksEnd;
+	private int[] blockOffsets, blockTargets; // edges between the function blocks, by position
+	private boolean[] blockExit;
+
+	// blocks reachable from the entry block, numbered in DFS preorder (0 is the entry block)
+	private int size;
+	private int[] preorder; // position in the function blocks -> preorder, -1 if not reachable
+	private int[] blockOf; // preorder -> position
+	private int[] parent; // DFS tree parent
+	private int[] last; // last preorder of the DFS subtree
+	private int[] succOffsets, succs; // edges between reachable blocks, by preorder
+	private int[] predOffsets, preds;
+	private boolean[] exit; // edge to the virtual exit
+	private int[] worklist; // loop body walks, one entry per edge at most
+	private int[] stack, cursor;
+
+	private final GMDominatorTree dominators;
+	private final GMDominatorTree postDominators;
+
+	// reversed graph: vertex 0 is the virtual exit, the others are numbered in DFS preorder from it
+	private int[] reverseNumber; // preorder -> reversed graph vertex, -1 if the exit cannot be reached
+	private int[] reverseVertex; // reversed graph vertex -> preorder
+	private int[] reverseParent, reverseOffsets, reversePreds;
+	private int[] exitBlocks;
+	private int numExits;
+	private int[] ipdom; // immediate post-dominator, exitVertex() for the virtual exit, -1 if none
+
+	private int[] loopHeader; // innermost enclosing loop header, -1 if none
+	private int[] loopDepth; // nesting depth of a loop header, 0 for the other blocks
+	private int[] unionFind, mark;
+
+	// region collapsing and T1/T2
+	private int[] rep; // block a block has been merged into, itself if not merged
+	private int[] exitTo; // only successor of a collapsed region, -1 if not collapsed
+	private int[] nextAlive; // dominator walk positions of the blocks not merged, with path compression
+	private int[] edgeHead, edgeTail, edgeNext; // out edges of each block and of the blocks merged into it
+	private boolean[] queued;
+	private int stamp;
+
+	// results of the last analysis
+	private boolean reducible;
+	private int essentialComplexity;
+	private int residueComplexity;
+	private int numLoops;
+	private int maxLoopNesting;
+
+	public GMControlFlowAnalysis(GMControlFlowGraph graph) {
+		this.graph = graph;
+		this.dominators = new GMDominatorTree();
+		this.postDominators = new GMDominatorTree();
+		ensureCapacity(16, 16);
+	}
+
+	/**
+	 * Analyzes a function of the graph; the results are available until the next analysis.
+	 */
+	public void analyze(int fn) {
+		blocksStart = graph.functionBlocksStart(fn);
+		blocksEnd = graph.functionBlocksEnd(fn);
+		int numBlocks = blocksEnd - blocksStart;
+
+		int entryBlock = graph.functionEntryBlock(fn);
+		if (entryBlock < 0) {
+			analyze(0, -1, null, null, null);
+			return;
+		}
+
+		int numEdges = 0;
+		for (int i = blocksStart; i < blocksEnd; i++) {
+			int block = graph.functionBlock(i);
+			numEdges += graph.succEnd(block) - graph.succStart(block);
+		}
+		ensureCapacity(numBlocks, numEdges);
+
+		// edges to blocks of other functions are dropped
+		int e = 0;
+		for (int pos = 0; pos < numBlocks; pos++) {
+			int block = graph.functionBlock(blocksStart + pos);
+			blockOffsets[pos] = e;
+			for (int edge = graph.succStart(block); edge < graph.succEnd(block); edge++) {
+				int target = position(graph.succTarget(edge));
+				if (target >= 0) {
+					blockTargets[e++] = target;
+				}
+			}
+			blockExit[pos] = graph.isTerminal(block) || e == blockOffsets[pos];
+		}
+		blockOffsets[numBlocks] = e;
+
+		analyze(numBlocks, position(entryBlock), blockOffsets, blockTargets, blockExit);
+	}
+
+	/**
+	 * Analyzes a graph given in CSR layout.
+	 *
+	 * @param entry the entry block, -1 if none
+	 * @param offsets successors of block <code>b</code> are <code>targets[offsets[b] .. offsets[b+1])</code>
+	 * @param exits blocks flowing to the virtual exit, e.g. returns
+	 */
+	void analyze(int numBlocks, int entry, int[] offsets, int[] targets, boolean[] exits) {
+		reducible = true;
+		essentialComplexity = 0;
+		residueComplexity = 0;
+		numLoops = 0;
+		maxLoopNesting = 0;
+
+		if (entry < 0) {
+			size = 0;
+			return;
+		}
+		ensureCapacity(numBlocks, offsets[numBlocks]);
+
+		depthFirstSearch(numBlocks, entry, offsets, targets);
+		buildEdges(offsets, targets, exits);
+		dominators.build(size, parent, predOffsets, preds);
+		postDominators();
+		loops();
+
+		essentialComplexity = collapseRegions();
+		residueComplexity = reducible ? 1 : reduce();
+	}
+
+	public boolean isReducible() {
+		return reducible;
+	}
+
+	/**
+	 * @return e - n + 2 of the function once its structured regions are collapsed: 1 for a structured function; 0 without entry block
+	 */
+	public int getEssentialComplexity() {
+		return essentialComplexity;
+	}
+
+	/**
+	 * @return 1 for a reducible function, the cyclomatic complexity of its T1/T2 residue otherwise; 0 without entry block
+	 */
+	public int getResidueComplexity() {
+		return residueComplexity;
+	}
+
+	/**
+	 * @return the number of natural loops, loops sharing a header are counted once
+	 */
+	public int getNumLoops() {
+		return numLoops;
+	}
+
+	/**
+	 * @return the maximum nesting depth of the natural loops, 0 without loops
+	 */
+	public int getMaxLoopNesting() {
+		return maxLoopNesting;
+	}
+
+	private void ensureCapacity(int numBlocks, int numEdges) {
+		if (preorder == null || preorder.length < numBlocks + 1) {
+			int capacity = Math.max(numBlocks + 1, preorder == null ? 0 : preorder.length * 2);
+			blockOffsets = new int[capacity + 1];
+			blockExit = new boolean[capacity];
+			preorder = new int[capacity];
+			blockOf = new int[capacity];
+			parent = new int[capacity];
+			last = new int[capacity];
+			succOffsets = new int[capacity + 1];
+			predOffsets = new int[capacity + 1];
+			exit = new boolean[capacity];
+			stack = new int[capacity];
+			cursor = new int[capacity];
+			reverseNumber = new int[capacity];
+			reverseVertex = new int[capacity];
+			reverseParent = new int[capacity];
+			reverseOffsets = new int[capacity + 1];
+			exitBlocks = new int[capacity];
+			ipdom = new int[capacity];
+			loopHeader = new int[capacity];
+			loopDepth = new int[capacity];
+			unionFind = new int[capacity];
+			mark = new int[capacity];
+			rep = new int[capacity];
+			exitTo = new int[capacity];
+			nextAlive = new int[capacity + 1];
+			edgeHead = new int[capacity];
+			edgeTail = new int[capacity];
+			queued = new boolean[capacity];
+		}
+		if (succs == null || succs.length < numEdges) {
+			int capacity = Math.max(numEdges, succs == null ? 0 : succs.length * 2);
+			blockTargets = new int[capacity];
+			succs = new int[capacity];
+			preds = new int[capacity];
+			worklist = new int[capacity];
+			edgeNext = new int[capacity];
+		}
+		if (reversePreds == null || reversePreds.length < numEdges + numBlocks) {
+			reversePreds = new int[Math.max(numEdges + numBlocks, reversePreds == null ? 0 : reversePreds.length * 2)];
+		}
+	}
+
+	/**
+	 * @return the position of a block in the blocks of the current function, -1 if it is not one of them
+	 */
+	private int position(int block) {
+		if (block < 0)
+			return -1;
+
+		int lo = blocksStart, hi = blocksEnd - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int midBlock = graph.functionBlock(mid);
+			if (midBlock < block) {
+				lo = mid + 1;
+			} else if (midBlock > block) {
+				hi = mid - 1;
+			} else {
+				return mid - blocksStart;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Iterative DFS from the entry block: preorder numbers, tree parents and subtree ends.
+	 */
+	private void depthFirstSearch(int numBlocks, int entry, int[] offsets, int[] targets) {
+		Arrays.fill(preorder, 0, numBlocks, -1);
+
+		// the stack holds preorder numbers, the cursor the next edge of each one
+		size = 0;
+		int top = 0;
+
+		preorder[entry] = size;
+		blockOf[size] = entry;
+		parent[size] = -1;
+		cursor[size] = offsets[entry];
+		stack[top++] = size++;
+
+		while (top > 0) {
+			int v = stack[top - 1];
+			int block = blockOf[v];
+
+			if (cursor[v] < offsets[block + 1]) {
+				int target = targets[cursor[v]++];
+				if (preorder[target] < 0) {
+					int w = size++;
+					preorder[target] = w;
+					blockOf[w] = target;
+					parent[w] = v;
+					cursor[w] = offsets[target];
+					stack[top++] = w;
+				}
+			} else {
+				last[v] = size - 1;
+				top--;
+			}
+		}
+	}
+
+	/**
+	 * Successor and predecessor CSR over the preorder numbers.
+	 */
+	private void buildEdges(int[] offsets, int[] targets, boolean[] exits) {
+		Arrays.fill(succOffsets, 0, size + 1, 0);
+		Arrays.fill(predOffsets, 0, size + 1, 0);
+
+		for (int v = 0; v < size; v++) {
+			int block = blockOf[v];
+			exit[v] = exits[block];
+			succOffsets[v + 1] = offsets[block + 1] - offsets[block];
+			for (int e = offsets[block]; e < offsets[block + 1]; e++) {
+				predOffsets[preorder[targets[e]] + 1]++;
+			}
+		}
+		for (int v = 0; v < size; v++) {
+			succOffsets[v + 1] += succOffsets[v];
+			predOffsets[v + 1] += predOffsets[v];
+		}
+
+		int[] nextPred = mark; // fill position of each predecessor list
+		System.arraycopy(predOffsets, 0, nextPred, 0, size);
+		for (int v = 0; v < size; v++) {
+			int block = blockOf[v];
+			int s = succOffsets[v];
+			for (int e = offsets[block]; e < offsets[block + 1]; e++) {
+				int w = preorder[targets[e]];
+				succs[s++] = w;
+				preds[nextPred[w]++] = v;
+			}
+		}
+	}
+
+	/**
+	 * Post-dominator tree: dominators of the reversed graph, from the virtual exit. Blocks that
+	 * cannot reach an exit, e.g. in an endless loop, have no post-dominator.
+	 */
+	private void postDominators() {
+		numExits = 0;
+		for (int v = 0; v < size; v++) {
+			reverseNumber[v] = -1;
+			if (exit[v]) {
+				exitBlocks[numExits++] = v;
+			}
+		}
+
+		// DFS of the reversed graph: the successors of the virtual exit are the exit blocks, the
+		// ones of a block its predecessors; the cursor indexes them
+		int reverseSize = 1, top = 0;
+		reverseVertex[0] = -1;
+		reverseParent[0] = -1;
+		cursor[0] = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int r = stack[top - 1];
+			int v = reverseVertex[r];
+			int end = v < 0 ? numExits : predOffsets[v + 1];
+			if (cursor[r] < end) {
+				int w = v < 0 ? exitBlocks[cursor[r]++] : preds[cursor[r]++];
+				if (reverseNumber[w] < 0) {
+					int s = reverseSize++;
+					reverseNumber[w] = s;
+					reverseVertex[s] = w;
+					reverseParent[s] = r;
+					cursor[s] = predOffsets[w];
+					stack[top++] = s;
+				}
+			} else {
+				top--;
+			}
+		}
+
+		// predecessors in the reversed graph: the successors reaching the exit, and the virtual exit for the exit blocks
+		int e = 0;
+		reverseOffsets[0] = 0;
+		reverseOffsets[1] = 0;
+		for (int s = 1; s < reverseSize; s++) {
+			int v = reverseVertex[s];
+			for (int i = succOffsets[v]; i < succOffsets[v + 1]; i++) {
+				if (reverseNumber[succs[i]] >= 0) {
+					reversePreds[e++] = reverseNumber[succs[i]];
+				}
+			}
+			if (exit[v]) {
+				reversePreds[e++] = 0;
+			}
+			reverseOffsets[s + 1] = e;
+		}
+		postDominators.build(reverseSize, reverseParent, reverseOffsets, reversePreds);
+
+		for (int v = 0; v < size; v++) {
+			int r = reverseNumber[v];
+			if (r < 0) {
+				ipdom[v] = -1;
+			} else {
+				int p = postDominators.idom(r);
+				ipdom[v] = p == 0 ? exitVertex() : reverseVertex[p];
+			}
+		}
+	}
+
+	/**
+	 * @return the vertex standing for the virtual exit in the region bounds
+	 */
+	private int exitVertex() {
+		return size;
+	}
+
+	private boolean isDfsAncestor(int a, int b) {
+		return a <= b && b <= last[a];
+	}
+
+	/**
+	 * Natural loops: headers in decreasing preorder, so inner loops are collapsed before the outer ones.
+	 */
+	private void loops() {
+		for (int v = 0; v < size; v++) {
+			loopHeader[v] = -1;
+			loopDepth[v] = 0;
+			unionFind[v] = v;
+			mark[v] = -1;
+		}
+
+		for (int h = size - 1; h >= 0; h--) {
+			boolean header = false;
+			int top = 0;
+			for (int e = predOffsets[h]; e < predOffsets[h + 1]; e++) {
+				int u = preds[e];
+				if (!isDfsAncestor(h, u))
+					continue;
+
+				if (!dominators.dominates(h, u)) {
+					// retreating edge entering the loop elsewhere than its header
+					reducible = false;
+					continue;
+				}
+				if (u != h) {
+					worklist[top++] = u;
+				}
+				header = true;
+			}
+			if (!header)
+				continue;
+
+			numLoops++;
+			loopDepth[h] = 1;
+			while (top > 0) {
+				int x = find(unionFind, worklist[--top]);
+				if (x == h || mark[x] == h)
+					continue;
+
+				// a block, or the header of an inner loop already collapsed
+				mark[x] = h;
+				loopHeader[x] = h;
+				unionFind[x] = h;
+				for (int e = predOffsets[x]; e < predOffsets[x + 1]; e++) {
+					worklist[top++] = preds[e];
+				}
+			}
+		}
+
+		// headers in increasing preorder: the enclosing header comes first
+		for (int v = 0; v < size; v++) {
+			if (loopDepth[v] == 0)
+				continue;
+
+			loopDepth[v] = loopHeader[v] >= 0 ? loopDepth[loopHeader[v]] + 1 : 1;
+			maxLoopNesting = Math.max(maxLoopNesting, loopDepth[v]);
+		}
+	}
+
+	private static int find(int[] parents, int v) {
+		while (parents[v] != v) {
+			parents[v] = parents[parents[v]];
+			v = parents[v];
+		}
+		return v;
+	}
+
+	/**
+	 * Collapses the structured regions, entries in decreasing preorder so inner regions come
+	 * first; the regions of an entry are tried along its post-dominator chain, smallest first.
+	 *
+	 * @return e - n + 2 of the collapsed graph, the virtual exit included
+	 */
+	private int collapseRegions() {
+		int exitVertex = exitVertex();
+
+		// the virtual exit is dominated by the common dominator of the exit blocks
+		int exitDominator = numExits > 0 ? exitBlocks[0] : -1;
+		for (int i = 1; i < numExits; i++) {
+			while (!dominators.dominates(exitDominator, exitBlocks[i])) {
+				exitDominator = dominators.idom(exitDominator);
+			}
+		}
+
+		for (int v = 0; v < size; v++) {
+			rep[v] = v;
+			exitTo[v] = -1;
+			nextAlive[v] = v;
+			mark[v] = 0;
+		}
+		nextAlive[size] = size;
+		stamp = 0;
+
+		for (int a = size - 1; a >= 0; a--) {
+			int b = ipdom[a];
+			while (b >= 0) {
+				if (b != exitVertex && find(rep, b) != b) {
+					// inside a region already collapsed
+					b = ipdom[b];
+					continue;
+				}
+				boolean dominated = b == exitVertex ? exitDominator >= 0 && dominators.dominates(a, exitDominator) : dominators.dominates(a, b);
+				if (!dominated)
+					break;
+
+				int outcome = collapse(a, b);
+				if (outcome == REJECTED || b == exitVertex)
+					break;
+
+				b = ipdom[b];
+			}
+		}
+
+		int nodes = numExits > 0 ? 1 : 0, edges = 0;
+		for (int t = alive(0); t < size; t = alive(t + 1)) {
+			nodes++;
+			edges += countSuccessors(dominators.vertexAt(t), -1, -1);
+		}
+		return edges - nodes + 2;
+	}
+
+	/**
+	 * Collapses the region from <code>a</code> to <code>b</code> into <code>a</code> if it is structured.
+	 */
+	private int collapse(int a, int b) {
+		boolean toExit = b == exitVertex();
+		int decisions = 0;
+
+		for (int t = alive(dominators.in(a)); t <= dominators.last(a); t = alive(t + 1)) {
+			if (!toExit && t == dominators.in(b)) {
+				t = alive(dominators.last(b) + 1);
+				if (t > dominators.last(a))
+					break;
+			}
+			int x = dominators.vertexAt(t);
+
+			if (x != a) {
+				for (int e = predOffsets[x]; e < predOffsets[x + 1]; e++) {
+					int u = find(rep, preds[e]);
+					if (u != x && !inRegion(u, a, b))
+						return ENTERED;
+				}
+			}
+
+			int count = countSuccessors(x, a, b);
+			if (count < 0)
+				return REJECTED;
+
+			if (count > 1 && ++decisions > 1)
+				return REJECTED;
+		}
+
+		for (int t = alive(dominators.in(a) + 1); t <= dominators.last(a); t = alive(t + 1)) {
+			if (!toExit && t == dominators.in(b)) {
+				t = alive(dominators.last(b) + 1);
+				if (t > dominators.last(a))
+					break;
+			}
+			rep[dominators.vertexAt(t)] = a;
+			nextAlive[t] = t + 1;
+		}
+		exitTo[a] = b;
+		return COLLAPSED;
+	}
+
+	/**
+	 * @return the number of distinct successors of a block not merged, -1 if one of them is out of
+	 *         the region from <code>a</code> to <code>b</code> (checked if <code>a</code> is not negative)
+	 */
+	private int countSuccessors(int x, int a, int b) {
+		int exitVertex = exitVertex();
+		int count = 0;
+		stamp++;
+
+		if (exitTo[x] >= 0) {
+			int s = exitTo[x] == exitVertex ? exitVertex : find(rep, exitTo[x]);
+			return a >= 0 && s != b && !inRegion(s, a, b) ? -1 : 1;
+		}
+
+		for (int e = succOffsets[x]; e <= succOffsets[x + 1]; e++) {
+			int s;
+			if (e < succOffsets[x + 1]) {
+				s = find(rep, succs[e]);
+			} else if (exit[x]) {
+				s = exitVertex;
+			} else {
+				break;
+			}
+
+			if (s < exitVertex) {
+				if (mark[s] == stamp)
+					continue;
+				mark[s] = stamp;
+			}
+			if (a >= 0 && s != b && !inRegion(s, a, b))
+				return -1;
+			count++;
+		}
+		return count;
+	}
+
+	private boolean inRegion(int x, int a, int b) {
+		if (x == exitVertex())
+			return false;
+
+		return dominators.dominates(a, x) && (b == exitVertex() || !dominators.dominates(b, x));
+	}
+
+	/**
+	 * @return the first position of the dominator walk, not before <code>t</code>, of a block not merged; size if none
+	 */
+	private int alive(int t) {
+		int r = t;
+		while (nextAlive[r] != r) {
+			r = nextAlive[r];
+		}
+		while (nextAlive[t] != r) {
+			int next = nextAlive[t];
+			nextAlive[t] = r;
+			t = next;
+		}
+		return r;
+	}
+
+	/**
+	 * T1 (self loop removal) and T2 (merge of a block into its only predecessor) until no
+	 * transformation applies, then e - n + 2 of the residue. Only run for irreducible functions.
+	 *
+	 * The out edges of the blocks merged into a block are chained to its own ones; the in edges
+	 * of a block are the ones of its first block, the others came from the block they were merged into.
+	 */
+	private int reduce() {
+		int top = 0;
+		for (int v = 0; v < size; v++) {
+			rep[v] = v;
+			int start = succOffsets[v], end = succOffsets[v + 1];
+			edgeHead[v] = start < end ? start : -1;
+			edgeTail[v] = start < end ? end - 1 : -1;
+			for (int e = start; e < end; e++) {
+				edgeNext[e] = e + 1 < end ? e + 1 : -1;
+			}
+			queued[v] = v > 0;
+			if (v > 0) {
+				stack[top++] = v;
+			}
+		}
+		int alive = size;
+
+		while (top > 0) {
+			int v = stack[--top];
+			queued[v] = false;
+			if (v == 0 || rep[v] != v)
+				continue;
+
+			int u = onlyPredecessor(v);
+			if (u < 0)
+				continue;
+
+			// T2: v merged into its only predecessor u, edges back to u dropped by T1
+			rep[v] = u;
+			alive--;
+			for (int e = edgeHead[v]; e >= 0; e = edgeNext[e]) {
+				int w = find(rep, succs[e]);
+				if (w != u && !queued[w]) {
+					queued[w] = true;
+					stack[top++] = w;
+				}
+			}
+			if (edgeHead[v] >= 0) {
+				if (edgeHead[u] < 0) {
+					edgeHead[u] = edgeHead[v];
+				} else {
+					edgeNext[edgeTail[u]] = edgeHead[v];
+				}
+				edgeTail[u] = edgeTail[v];
+			}
+			if (u > 0 && !queued[u]) {
+				queued[u] = true;
+				stack[top++] = u;
+			}
+		}
+
+		int edges = 0;
+		for (int v = 0; v < size; v++) {
+			if (rep[v] != v)
+				continue;
+
+			stamp++;
+			for (int e = edgeHead[v]; e >= 0; e = edgeNext[e]) {
+				int w = find(rep, succs[e]);
+				if (w != v && mark[w] != stamp) {
+					mark[w] = stamp;
+					edges++;
+				}
+			}
+		}
+		return edges - alive + 2;
+	}
+
+	/**
+	 * @return the only block, other than itself, with an edge to a block not merged; -1 if there are none or many
+	 */
+	private int onlyPredecessor(int v) {
+		int only = -1;
+		for (int e = predOffsets[v]; e < predOffsets[v + 1]; e++) {
+			int u = find(rep, preds[e]);
+			if (u == v || u == only)
+				continue;
+			if (only >= 0)
+				return -1;
+			only = u;
+		}
+		return only;
+	}
+}
@@ -0,0 +1,100 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import ghidra.framework.model.DomainObjectChangedEvent;
+import ghidra.framework.model.DomainObjectListener;
+import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressSet;
+import ghidra.program.model.listing.Program;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+import it.unive.ghidra.metrics.util.GMProgramChanges;
+
+/**
+ * Program changes recorded from the change events since the last {@link GMControlFlowGraph}
+ * snapshot, so that the snapshot can be updated instead of built again.
+ *
+ * Events are delivered some time after the modifications: the update is used only if the events
+ * received so far cover the current modification number of the program, otherwise the snapshot
+ * is built again.
+ */
+public final class GMControlFlowChanges implements DomainObjectListener, GMProgramChanges.Handler {
+
+	private final Program program;
+
+	private final AddressSet changedCode;
+	private final Set<Address> changedFunctions;
+	private boolean allChanged;
+	private long modificationNumber; // modification number of the program when the last event was received
+
+	public GMControlFlowChanges(Program program) {
+		this.program = program;
+		this.changedCode = new AddressSet();
+		this.changedFunctions = new LinkedHashSet<>();
+		this.modificationNumber = program.getModificationNumber();
+	}
+
+	/**
+	 * @return a valid snapshot of the program: <code>graph</code> itself, <code>graph</code> updated
+	 *         with the recorded changes, or a new snapshot
+	 */
+	public GMControlFlowGraph apply(GMControlFlowGraph graph, TaskMonitor monitor) throws CancelledException {
+		if (graph != null && graph.isValid())
+			return graph;
+
+		// the snapshot is computed out of the lock: events keep being recorded meanwhile
+		boolean rebuild;
+		AddressSet code;
+		Set<Address> functions;
+		synchronized (this) {
+			rebuild = graph == null || allChanged || modificationNumber != program.getModificationNumber();
+			code = new AddressSet(changedCode);
+			functions = new LinkedHashSet<>(changedFunctions);
+			changedCode.clear();
+			changedFunctions.clear();
+			allChanged = false;
+		}
+
+		try {
+			return rebuild ? GMControlFlowGraph.build(program, monitor) : graph.update(code, functions, monitor);
+
+		} catch (CancelledException | RuntimeException e) {
+			// the taken changes are lost: the next snapshot is built again
+			synchronized (this) {
+				allChanged = true;
+			}
+			throw e;
+		}
+	}
+
+	public void register() {
+		program.addListener(this);
+	}
+
+	public void unregister() {
+		program.removeListener(this);
+	}
+
+	@Override
+	public synchronized void domainObjectChanged(DomainObjectChangedEvent ev) {
+		GMProgramChanges.dispatch(ev, this);
+		modificationNumber = program.getModificationNumber();
+	}
+
+	@Override
+	public void codeChanged(Address start, Address end) {
+		changedCode.add(start, end);
+	}
+
+	@Override
+	public void functionChanged(Address entryPoint) {
+		changedFunctions.add(entryPoint);
+	}
+
+	@Override
+	public void allChanged() {
+		allChanged = true;
+	}
+}
@@ -0,0 +1,630 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressRange;
+import ghidra.program.model.address.AddressSet;
+import ghidra.program.model.address.AddressSetView;
+import ghidra.program.model.block.BasicBlockModel;
+import ghidra.program.model.block.CodeBlock;
+import ghidra.program.model.block.CodeBlockIterator;
+import ghidra.program.model.block.CodeBlockModel;
+import ghidra.program.model.block.CodeBlockReference;
+import ghidra.program.model.block.CodeBlockReferenceIterator;
+import ghidra.program.model.listing.Function;
+import ghidra.program.model.listing.FunctionManager;
+import ghidra.program.model.listing.Program;
+import ghidra.program.model.symbol.FlowType;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+
+/**
+ * Snapshot of the basic block graph of a program, in primitive arrays.
+ *
+ * Blocks are numbered in address order: by address space id, then by offset. Successors are
+ * stored in CSR layout: the successors of block <code>b</code> are
+ * <code>succTargets[succOffsets[b] .. succOffsets[b+1])</code>; only flow edges are kept (no
+ * calls, no indirect flows), a target of <code>-1</code> is a destination that does not start a
+ * block. The destination address of every edge is kept too, so that edges can be resolved again
+ * after an {@link #update}; the source blocks of the edges are also indexed by target block.
+ * Blocks of each function are stored in CSR layout, functions are numbered in entry point order.
+ *
+ * The snapshot is built with a single walk over {@link BasicBlockModel}, then graph metrics run
+ * over the arrays without touching the program again. After a program change, {@link #update}
+ * walks the blocks of the changed code only and keeps the other ones.
+ */
+public final class GMControlFlowGraph {
+
+	public static final byte FLAG_TERMINAL = 0x1; // block flow ends the function (e.g. return)
+	public static final byte FLAG_ENTRY = 0x2; // block starts at the entry point of its function
+
+	/**
+	 * Blocks collected by a walk, in any order, with their destinations by address.
+	 */
+	private static final class GMBlockList {
+		private int size;
+		private int[] spaces = new int[64];
+		private long[] starts = new long[64];
+		private int[] functions = new int[64];
+		private boolean[] terminal = new boolean[64];
+		private int[] destOffsets = new int[65];
+
+		private int numDests;
+		private int[] destSpaces = new int[64];
+		private long[] destAddresses = new long[64];
+
+		private void addBlock(int space, long start, int fn, boolean isTerminal) {
+			if (size == starts.length) {
+				int capacity = size * 2;
+				spaces = Arrays.copyOf(spaces, capacity);
+				starts = Arrays.copyOf(starts, capacity);
+				functions = Arrays.copyOf(functions, capacity);
+				terminal = Arrays.copyOf(terminal, capacity);
+				destOffsets = Arrays.copyOf(destOffsets, capacity + 1);
+			}
+			spaces[size] = space;
+			starts[size] = start;
+			functions[size] = fn;
+			terminal[size] = isTerminal;
+			destOffsets[size] = numDests;
+			size++;
+			destOffsets[size] = numDests;
+		}
+
+		private void addDestination(int space, long address) {
+			if (numDests == destAddresses.length) {
+				destSpaces = Arrays.copyOf(destSpaces, numDests * 2);
+				destAddresses = Arrays.copyOf(destAddresses, numDests * 2);
+			}
+			destSpaces[numDests] = space;
+			destAddresses[numDests] = address;
+			numDests++;
+			destOffsets[size] = numDests;
+		}
+
+		private void addCodeBlock(CodeBlock codeBlock, FunctionManager functionManager, Address[] functionEntries, TaskMonitor monitor)
+				throws CancelledException {
+			Address start = codeBlock.getFirstStartAddress();
+
+			Function function = functionManager.getFunctionContaining(start);
+			int fn = function != null ? Arrays.binarySearch(functionEntries, function.getEntryPoint()) : -1;
+			addBlock(start.getAddressSpace().getSpaceID(), start.getOffset(), fn < 0 ? -1 : fn, codeBlock.getFlowType().isTerminal());
+
+			CodeBlockReferenceIterator references = codeBlock.getDestinations(monitor);
+			while (references.hasNext()) {
+				CodeBlockReference reference = references.next();
+				FlowType flowType = reference.getFlowType();
+				if (flowType.isIndirect() || flowType.isCall()) {
+					continue;
+				}
+				Address destination = reference.getDestinationAddress();
+				addDestination(destination.getAddressSpace().getSpaceID(), destination.getOffset());
+			}
+		}
+	}
+
+	private final Program program;
+	private final long modificationNumber;
+
+	// update of a previous snapshot: its modification number and the functions whose blocks have changed
+	private final long baseModificationNumber; // -1 for a new snapshot
+	private final Set<Address> updatedFunctions;
+	private final boolean updatedOutside; // blocks outside the functions have changed
+
+	private final int[] blockSpaces;
+	private final long[] blockStarts;
+	private final int[] blockFunction; // function index, -1 if the block is not in a function
+	private final byte[] blockFlags;
+	private final int[] succOffsets;
+	private final int[] succTargets;
+	private final int[] destSpaces; // destination address of each edge
+	private final long[] destAddresses;
+	private final int[] predOffsets; // source blocks of the edges to block b: predSources[predOffsets[b] .. predOffsets[b+1])
+	private final int[] predSources;
+
+	private final Address[] functionEntries;
+	private final int[] functionBlockOffsets;
+	private final int[] functionBlocks;
+
+	/**
+	 * Sorts the blocks of the list in address order and resolves their destinations; when several
+	 * blocks of the list start at the same address, the first one added is kept.
+	 */
+	private GMControlFlowGraph(Program program, long modificationNumber, GMBlockList list, Address[] functionEntries,
+			long baseModificationNumber, Set<Address> updatedFunctions, boolean updatedOutside) {
+		this.program = program;
+		this.modificationNumber = modificationNumber;
+		this.baseModificationNumber = baseModificationNumber;
+		this.updatedFunctions = updatedFunctions;
+		this.updatedOutside = updatedOutside;
+		this.functionEntries = functionEntries;
+
+		int[] order = new int[list.size];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		sort(order, list.spaces, list.starts);
+
+		int numBlocks = 0;
+		int numEdges = 0;
+		for (int k = 0; k < order.length; k++) {
+			int i = order[k];
+			if (k > 0 && compare(list.spaces[i], list.starts[i], list.spaces[order[k - 1]], list.starts[order[k - 1]]) == 0)
+				continue;
+			order[numBlocks++] = i;
+			numEdges += list.destOffsets[i + 1] - list.destOffsets[i];
+		}
+
+		this.blockSpaces = new int[numBlocks];
+		this.blockStarts = new long[numBlocks];
+		this.blockFunction = new int[numBlocks];
+		this.blockFlags = new byte[numBlocks];
+		this.succOffsets = new int[numBlocks + 1];
+		this.succTargets = new int[numEdges];
+		this.destSpaces = new int[numEdges];
+		this.destAddresses = new long[numEdges];
+
+		int edge = 0;
+		for (int block = 0; block < numBlocks; block++) {
+			int i = order[block];
+			int fn = list.functions[i];
+
+			byte flag = 0;
+			if (list.terminal[i]) {
+				flag |= FLAG_TERMINAL;
+			}
+			if (fn >= 0 && functionEntries[fn].getAddressSpace().getSpaceID() == list.spaces[i]
+					&& functionEntries[fn].getOffset() == list.starts[i]) {
+				flag |= FLAG_ENTRY;
+			}
+
+			blockSpaces[block] = list.spaces[i];
+			blockStarts[block] = list.starts[i];
+			blockFunction[block] = fn;
+			blockFlags[block] = flag;
+
+			succOffsets[block] = edge;
+			for (int d = list.destOffsets[i]; d < list.destOffsets[i + 1]; d++) {
+				destSpaces[edge] = list.destSpaces[d];
+				destAddresses[edge] = list.destAddresses[d];
+				edge++;
+			}
+		}
+		succOffsets[numBlocks] = edge;
+
+		// destinations resolved to block indexes, once all the blocks are in place
+		this.predOffsets = new int[numBlocks + 1];
+		for (edge = 0; edge < numEdges; edge++) {
+			int target = blockAt(destSpaces[edge], destAddresses[edge]);
+			succTargets[edge] = target >= 0 ? target : -1;
+			if (target >= 0) {
+				predOffsets[target + 1]++;
+			}
+		}
+		for (int block = 0; block < numBlocks; block++) {
+			predOffsets[block + 1] += predOffsets[block];
+		}
+
+		this.predSources = new int[predOffsets[numBlocks]];
+		int[] nextPred = Arrays.copyOf(predOffsets, numBlocks);
+		for (int block = 0; block < numBlocks; block++) {
+			for (edge = succOffsets[block]; edge < succOffsets[block + 1]; edge++) {
+				if (succTargets[edge] >= 0) {
+					predSources[nextPred[succTargets[edge]]++] = block;
+				}
+			}
+		}
+
+		// counting sort of the blocks by function, keeping the address order inside each function
+		this.functionBlockOffsets = new int[functionEntries.length + 1];
+		for (int fn : blockFunction) {
+			if (fn >= 0) {
+				functionBlockOffsets[fn + 1]++;
+			}
+		}
+		for (int fn = 0; fn < functionEntries.length; fn++) {
+			functionBlockOffsets[fn + 1] += functionBlockOffsets[fn];
+		}
+
+		this.functionBlocks = new int[functionBlockOffsets[functionEntries.length]];
+		int[] next = Arrays.copyOf(functionBlockOffsets, functionEntries.length);
+		for (int block = 0; block < numBlocks; block++) {
+			if (blockFunction[block] >= 0) {
+				functionBlocks[next[blockFunction[block]]++] = block;
+			}
+		}
+	}
+
+	/**
+	 * Stable merge sort of block list indexes by address: blocks starting at the same address stay in list order.
+	 */
+	private static void sort(int[] order, int[] spaces, long[] starts) {
+		int[] from = order, to = new int[order.length];
+		for (int width = 1; width < order.length; width *= 2) {
+			for (int lo = 0; lo < order.length; lo += 2 * width) {
+				int mid = Math.min(lo + width, order.length), hi = Math.min(lo + 2 * width, order.length);
+				int i = lo, j = mid, k = lo;
+				while (i < mid && j < hi) {
+					to[k++] = compare(spaces[from[j]], starts[from[j]], spaces[from[i]], starts[from[i]]) < 0 ? from[j++] : from[i++];
+				}
+				System.arraycopy(from, i, to, k, mid - i);
+				System.arraycopy(from, j, to, k + mid - i, hi - j);
+			}
+			int[] swap = from;
+			from = to;
+			to = swap;
+		}
+		if (from != order) {
+			System.arraycopy(from, 0, order, 0, order.length);
+		}
+	}
+
+	private static Address[] functionEntries(Program program) {
+		FunctionManager functionManager = program.getFunctionManager();
+
+		List<Address> entries = new ArrayList<>(functionManager.getFunctionCount());
+		for (Function function : functionManager.getFunctions(true)) {
+			if (!function.isExternal()) {
+				entries.add(function.getEntryPoint());
+			}
+		}
+		return entries.toArray(new Address[0]);
+	}
+
+	public static GMControlFlowGraph build(Program program, TaskMonitor monitor) throws CancelledException {
+		return build(program, new BasicBlockModel(program), monitor);
+	}
+
+	/**
+	 * @param blockModel basic blocks of the program
+	 */
+	static GMControlFlowGraph build(Program program, CodeBlockModel blockModel, TaskMonitor monitor) throws CancelledException {
+		long modificationNumber = program.getModificationNumber();
+		FunctionManager functionManager = program.getFunctionManager();
+		Address[] functionEntries = functionEntries(program);
+
+		// the number of blocks is not known in advance: progress counts the blocks
+		monitor.setIndeterminate(true);
+
+		GMBlockList list = new GMBlockList();
+		CodeBlockIterator codeBlockIterator = blockModel.getCodeBlocks(monitor);
+		while (codeBlockIterator.hasNext()) {
+			monitor.checkCanceled();
+			monitor.incrementProgress(1);
+			list.addCodeBlock(codeBlockIterator.next(), functionManager, functionEntries, monitor);
+		}
+
+		return new GMControlFlowGraph(program, modificationNumber, list, functionEntries, -1, null, true);
+	}
+
+	/**
+	 * Snapshot of the program after the given changes, walking only the blocks that they can
+	 * affect: the blocks in the changed code, the blocks of the changed functions, the blocks they
+	 * flowed to and the blocks split or merged by the new flows. The other blocks are copied from
+	 * this snapshot.
+	 *
+	 * @param changedCode code changed since this snapshot was built
+	 * @param changedFunctions entry points of the functions added, removed or with a new body since this snapshot was built
+	 */
+	public GMControlFlowGraph update(AddressSetView changedCode, Collection<Address> changedFunctions, TaskMonitor monitor)
+			throws CancelledException {
+		return update(changedCode, changedFunctions, new BasicBlockModel(program), monitor);
+	}
+
+	/**
+	 * @param blockModel basic blocks of the program
+	 */
+	GMControlFlowGraph update(AddressSetView changedCode, Collection<Address> changedFunctions, CodeBlockModel blockModel,
+			TaskMonitor monitor) throws CancelledException {
+		long modificationNumber = program.getModificationNumber();
+		FunctionManager functionManager = program.getFunctionManager();
+		Address[] entries = functionEntries(program);
+
+		boolean[] dropped = new boolean[numBlocks()];
+		AddressSet walk = new AddressSet(changedCode);
+
+		for (Address entryPoint : changedFunctions) {
+			int fn = functionIndex(entryPoint);
+			if (fn >= 0) {
+				for (int i = functionBlocksStart(fn); i < functionBlocksEnd(fn); i++) {
+					drop(functionBlocks[i], dropped, walk);
+				}
+			}
+
+			// an entry point starts a block
+			int block = blockAt(entryPoint);
+			if (block >= 0) {
+				drop(block, dropped, walk);
+			} else {
+				split(entryPoint.getAddressSpace().getSpaceID(), entryPoint.getOffset(), dropped, walk);
+			}
+
+			Function function = functionManager.getFunctionAt(entryPoint);
+			if (function != null && !function.isExternal()) {
+				walk.add(function.getBody());
+			}
+		}
+		for (AddressRange range : changedCode.getAddressRanges()) {
+			split(range.getAddressSpace().getSpaceID(), range.getMinAddress().getOffset(), dropped, walk);
+			dropRange(range, dropped, walk);
+		}
+
+		// blocks flowing into the changed code: their destinations may have changed with it
+		for (AddressRange range : changedCode.getAddressRanges()) {
+			int space = range.getAddressSpace().getSpaceID();
+			long max = range.getMaxAddress().getOffset();
+
+			int block = blockAt(space, range.getMinAddress().getOffset());
+			for (block = block >= 0 ? block : -block - 1; block < numBlocks(); block++) {
+				if (blockSpaces[block] != space || Long.compareUnsigned(blockStarts[block], max) > 0)
+					break;
+				for (int i = predOffsets[block]; i < predOffsets[block + 1]; i++) {
+					walk.add(getBlockStart(predSources[i]));
+				}
+			}
+		}
+
+		monitor.setIndeterminate(true);
+
+		GMBlockList list = new GMBlockList();
+		AddressSet walked = new AddressSet();
+		Set<Address> walkedStarts = new HashSet<>();
+
+		AddressSet pending = walk.subtract(walked);
+		while (!pending.isEmpty()) {
+			walked.add(pending);
+
+			CodeBlockIterator codeBlockIterator = blockModel.getCodeBlocksContaining(pending, monitor);
+			while (codeBlockIterator.hasNext()) {
+				monitor.checkCanceled();
+				monitor.incrementProgress(1);
+				CodeBlock codeBlock = codeBlockIterator.next();
+				if (!walkedStarts.add(codeBlock.getFirstStartAddress()))
+					continue;
+
+				int from = list.numDests;
+				list.addCodeBlock(codeBlock, functionManager, entries, monitor);
+
+				// old blocks starting inside the walked block have been merged into it
+				for (AddressRange range : codeBlock.getAddressRanges()) {
+					dropRange(range, dropped, walk);
+				}
+
+				// the walked block and its destinations split the old blocks they start inside
+				split(list.spaces[list.size - 1], list.starts[list.size - 1], dropped, walk);
+				for (int d = from; d < list.numDests; d++) {
+					split(list.destSpaces[d], list.destAddresses[d], dropped, walk);
+				}
+			}
+
+			pending = walk.subtract(walked);
+		}
+
+		// functions of the walked and of the dropped blocks
+		Set<Address> updatedFunctions = new HashSet<>(changedFunctions);
+		boolean updatedOutside = false;
+		for (int i = 0; i < list.size; i++) {
+			if (list.functions[i] >= 0) {
+				updatedFunctions.add(entries[list.functions[i]]);
+			} else {
+				updatedOutside = true;
+			}
+		}
+
+		// blocks of the walk first: they replace the old blocks starting at the same address
+		for (int block = 0; block < numBlocks(); block++) {
+			if (dropped[block]) {
+				if (blockFunction[block] >= 0) {
+					updatedFunctions.add(functionEntries[blockFunction[block]]);
+				} else {
+					updatedOutside = true;
+				}
+				continue;
+			}
+
+			int fn = blockFunction[block];
+			if (fn >= 0) {
+				fn = Arrays.binarySearch(entries, functionEntries[fn]);
+			}
+			list.addBlock(blockSpaces[block], blockStarts[block], fn < 0 ? -1 : fn, isTerminal(block));
+			for (int edge = succOffsets[block]; edge < succOffsets[block + 1]; edge++) {
+				list.addDestination(destSpaces[edge], destAddresses[edge]);
+			}
+		}
+
+		return new GMControlFlowGraph(program, modificationNumber, list, entries, this.modificationNumber, updatedFunctions, updatedOutside);
+	}
+
+	/**
+	 * Drops an old block, walking again the addresses up to the next old block, where it may have
+	 * been split, and the blocks it flowed to, which may no longer start a block.
+	 */
+	private void drop(int block, boolean[] dropped, AddressSet walk) {
+		if (dropped[block])
+			return;
+
+		dropped[block] = true;
+		Address start = getBlockStart(block);
+		if (block + 1 < numBlocks() && blockSpaces[block + 1] == blockSpaces[block]) {
+			walk.add(start, getAddress(blockSpaces[block], blockStarts[block + 1] - 1));
+		} else {
+			walk.add(start, start.getAddressSpace().getMaxAddress());
+		}
+		for (int edge = succOffsets[block]; edge < succOffsets[block + 1]; edge++) {
+			walk.add(getAddress(destSpaces[edge], destAddresses[edge]));
+		}
+	}
+
+	private void split(int space, long offset, boolean[] dropped, AddressSet walk) {
+		int block = blockAt(space, offset);
+		int containing = -block - 2;
+		if (block < 0 && containing >= 0 && blockSpaces[containing] == space) {
+			drop(containing, dropped, walk);
+		}
+	}
+
+	private void dropRange(AddressRange range, boolean[] dropped, AddressSet walk) {
+		int space = range.getAddressSpace().getSpaceID();
+		long max = range.getMaxAddress().getOffset();
+
+		int block = blockAt(space, range.getMinAddress().getOffset());
+		for (block = block >= 0 ? block : -block - 1; block < numBlocks(); block++) {
+			if (blockSpaces[block] != space || Long.compareUnsigned(blockStarts[block], max) > 0)
+				break;
+			drop(block, dropped, walk);
+		}
+	}
+
+	/**
+	 * @return true if the program has not been modified since the snapshot was built
+	 */
+	public boolean isValid() {
+		return program.getModificationNumber() == modificationNumber;
+	}
+
+	public long getModificationNumber() {
+		return modificationNumber;
+	}
+
+	/**
+	 * @return true if this snapshot is an {@link #update} of the snapshot of the given modification number
+	 */
+	public boolean isUpdateOf(long modificationNumber) {
+		return baseModificationNumber >= 0 && baseModificationNumber == modificationNumber;
+	}
+
+	/**
+	 * @return the entry points of the functions whose blocks may differ from the ones of the base snapshot, see {@link #isUpdateOf}
+	 */
+	public Set<Address> getUpdatedFunctions() {
+		return updatedFunctions;
+	}
+
+	/**
+	 * @return true if the blocks outside the functions may differ from the ones of the base snapshot, see {@link #isUpdateOf}
+	 */
+	public boolean isUpdatedOutside() {
+		return updatedOutside;
+	}
+
+	public Program getProgram() {
+		return program;
+	}
+
+	public int numBlocks() {
+		return blockStarts.length;
+	}
+
+	public int numEdges() {
+		return succTargets.length;
+	}
+
+	public int numFunctions() {
+		return functionEntries.length;
+	}
+
+	public Address getBlockStart(int block) {
+		return getAddress(blockSpaces[block], blockStarts[block]);
+	}
+
+	private Address getAddress(int space, long offset) {
+		return program.getAddressFactory().getAddressSpace(space).getAddress(offset);
+	}
+
+	/**
+	 * @return the block starting at the address, or a negative value if no block starts there
+	 */
+	public int blockAt(Address address) {
+		return blockAt(address.getAddressSpace().getSpaceID(), address.getOffset());
+	}
+
+	/**
+	 * @return the block starting at the address, or <code>-(insertion point + 1)</code> if no block starts there
+	 */
+	private int blockAt(int space, long offset) {
+		int lo = 0, hi = blockStarts.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = compare(blockSpaces[mid], blockStarts[mid], space, offset);
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	private static int compare(int space1, long offset1, int space2, long offset2) {
+		return space1 != space2 ? Integer.compare(space1, space2) : Long.compareUnsigned(offset1, offset2);
+	}
+
+	public int getBlockFunction(int block) {
+		return blockFunction[block];
+	}
+
+	public boolean isTerminal(int block) {
+		return (blockFlags[block] & FLAG_TERMINAL) != 0;
+	}
+
+	public boolean isEntry(int block) {
+		return (blockFlags[block] & FLAG_ENTRY) != 0;
+	}
+
+	public int succStart(int block) {
+		return succOffsets[block];
+	}
+
+	public int succEnd(int block) {
+		return succOffsets[block + 1];
+	}
+
+	/**
+	 * @return the target block of a successor edge, -1 if the destination does not start a block
+	 */
+	public int succTarget(int edge) {
+		return succTargets[edge];
+	}
+
+	/**
+	 * @return the function with the given entry point, or a negative value if it is not in the snapshot
+	 */
+	public int functionIndex(Address entryPoint) {
+		return Arrays.binarySearch(functionEntries, entryPoint);
+	}
+
+	public Address getFunctionEntry(int fn) {
+		return functionEntries[fn];
+	}
+
+	public int functionBlocksStart(int fn) {
+		return functionBlockOffsets[fn];
+	}
+
+	public int functionBlocksEnd(int fn) {
+		return functionBlockOffsets[fn + 1];
+	}
+
+	public int functionBlock(int i) {
+		return functionBlocks[i];
+	}
+
+	/**
+	 * @return the entry block of the function, or -1 if no block starts at its entry point
+	 */
+	public int functionEntryBlock(int fn) {
+		for (int i = functionBlockOffsets[fn]; i < functionBlockOffsets[fn + 1]; i++) {
+			if (isEntry(functionBlocks[i]))
+				return functionBlocks[i];
+		}
+		return -1;
+	}
+}
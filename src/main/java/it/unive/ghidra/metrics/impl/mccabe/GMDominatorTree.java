@@ -0,0 +1,188 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import java.util.Arrays;
+
+/**
+ * Dominator tree of a graph whose vertices are numbered in DFS preorder from the root 0.
+ *
+ * The tree is built with Lengauer-Tarjan and path compression, then walked once: dominance is
+ * tested in constant time on the intervals of the walk, and the vertices of a subtree are the
+ * ones of an interval. Arrays are reused from a graph to the next.
+ */
+public final class GMDominatorTree {
+
+	private int size;
+
+	private int[] idom;
+	private int[] semi, ancestor, label, bucketHead, bucketNext, stack;
+	private int[] in, last, order; // walk of the tree: interval of each vertex, vertex at each position
+
+	public GMDominatorTree() {
+		ensureCapacity(16);
+	}
+
+	/**
+	 * @param size number of vertices, all reachable from the root 0
+	 * @param parent DFS tree parent of each vertex, -1 for the root
+	 * @param predOffsets predecessors of vertex <code>v</code> are <code>preds[predOffsets[v] .. predOffsets[v+1])</code>
+	 */
+	public void build(int size, int[] parent, int[] predOffsets, int[] preds) {
+		this.size = size;
+		ensureCapacity(size);
+		if (size == 0)
+			return;
+
+		for (int v = 0; v < size; v++) {
+			semi[v] = v;
+			label[v] = v;
+			ancestor[v] = -1;
+			bucketHead[v] = -1;
+		}
+
+		for (int w = size - 1; w > 0; w--) {
+			for (int e = predOffsets[w]; e < predOffsets[w + 1]; e++) {
+				int u = eval(preds[e]);
+				if (semi[u] < semi[w]) {
+					semi[w] = semi[u];
+				}
+			}
+			bucketNext[w] = bucketHead[semi[w]];
+			bucketHead[semi[w]] = w;
+
+			int p = parent[w];
+			ancestor[w] = p;
+
+			for (int v = bucketHead[p]; v >= 0; v = bucketNext[v]) {
+				int u = eval(v);
+				idom[v] = semi[u] < semi[v] ? u : p;
+			}
+			bucketHead[p] = -1;
+		}
+
+		idom[0] = -1;
+		for (int w = 1; w < size; w++) {
+			if (idom[w] != semi[w]) {
+				idom[w] = idom[idom[w]];
+			}
+		}
+
+		intervals();
+	}
+
+	/**
+	 * Walk of the tree, children in CSR layout (reusing the bucket arrays).
+	 */
+	private void intervals() {
+		int[] childOffsets = bucketHead, children = bucketNext;
+		Arrays.fill(childOffsets, 0, size, 0);
+		for (int v = 1; v < size; v++) {
+			childOffsets[idom[v]]++;
+		}
+		int offset = 0;
+		for (int v = 0; v < size; v++) {
+			int count = childOffsets[v];
+			childOffsets[v] = offset;
+			offset += count;
+		}
+		int[] next = semi;
+		System.arraycopy(childOffsets, 0, next, 0, size);
+		for (int v = 1; v < size; v++) {
+			children[next[idom[v]]++] = v;
+		}
+
+		// next[v] is now the end of the children of v
+		int time = 0, top = 0;
+		stack[top++] = 0;
+		order[time] = 0;
+		in[0] = time++;
+		while (top > 0) {
+			int v = stack[top - 1];
+			if (childOffsets[v] < next[v]) {
+				int child = children[childOffsets[v]++];
+				order[time] = child;
+				in[child] = time++;
+				stack[top++] = child;
+			} else {
+				last[v] = time - 1;
+				top--;
+			}
+		}
+	}
+
+	private int eval(int v) {
+		if (ancestor[v] < 0)
+			return v;
+
+		compress(v);
+		return label[v];
+	}
+
+	private void compress(int v) {
+		int top = 0;
+		int x = v;
+		while (ancestor[ancestor[x]] >= 0) {
+			stack[top++] = x;
+			x = ancestor[x];
+		}
+		while (top > 0) {
+			x = stack[--top];
+			int a = ancestor[x];
+			if (semi[label[a]] < semi[label[x]]) {
+				label[x] = label[a];
+			}
+			ancestor[x] = ancestor[a];
+		}
+	}
+
+	private void ensureCapacity(int numVertices) {
+		if (idom == null || idom.length < numVertices) {
+			int capacity = Math.max(numVertices, idom == null ? 0 : idom.length * 2);
+			idom = new int[capacity];
+			semi = new int[capacity];
+			ancestor = new int[capacity];
+			label = new int[capacity];
+			bucketHead = new int[capacity];
+			bucketNext = new int[capacity];
+			stack = new int[capacity];
+			in = new int[capacity];
+			last = new int[capacity];
+			order = new int[capacity];
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the immediate dominator of a vertex, -1 for the root
+	 */
+	public int idom(int v) {
+		return idom[v];
+	}
+
+	/**
+	 * @return true if every path from the root to <code>b</code> goes through <code>a</code>, <code>a</code> itself included
+	 */
+	public boolean dominates(int a, int b) {
+		return in[a] <= in[b] && in[b] <= last[a];
+	}
+
+	/**
+	 * @return the position of a vertex in the walk: its subtree is the positions <code>in(v) .. last(v)</code>
+	 */
+	public int in(int v) {
+		return in[v];
+	}
+
+	public int last(int v) {
+		return last[v];
+	}
+
+	/**
+	 * @return the vertex at a position of the walk
+	 */
+	public int vertexAt(int position) {
+		return order[position];
+	}
+}
@@ -7,7 +7,9 @@ import ghidra.util.exception.CancelledException;
 import it.unive.ghidra.metrics.base.GMBaseMetric;
 import it.unive.ghidra.metrics.base.interfaces.GMMeasure;
 import it.unive.ghidra.metrics.base.interfaces.GMMeasureKey;
+import it.unive.ghidra.metrics.impl.mccabe.GMMcCabeParser.GMMcCabeFunctionParser;
 import it.unive.ghidra.metrics.impl.mccabe.GMMcCabeParser.Result;
+import it.unive.ghidra.metrics.util.GMOptions;
 import it.unive.ghidra.metrics.util.NumberUtils;
 
 public class GMMcCabe extends GMBaseMetric<GMMcCabe, GMMcCabeController, GMMcCabeWindow> {
@@ -40,8 +42,36 @@ public class GMMcCabe extends GMBaseMetric<GMMcCabe, GMMcCabeController, GMMcCab
 		}
 
 		@Override
-		protected GMMcCabeParser getParser() {
-			return GMMcCabeParser.functionParser(program, function);
+		public boolean init() {
+			GMMcCabeCache cache = getController().getFunctionCache();
+
+			Result result = cache.get(function);
+			if (result == null) {
+				try {
+					GMMcCabeParser parser = getParser();
+					result = parser.parse();
+					if (parser instanceof GMMcCabeFunctionParser) {
+						getController().blockModelRead(((GMMcCabeFunctionParser) parser).getNumBlocks());
+					}
+				} catch (CancelledException e) {
+					controller.printException(e);
+					return false;
+				}
+				// both paths attribute blocks and analyze the dominators the same way
+				cache.put(function, result);
+			}
+			return init(result);
+		}
+
+		@Override
+		protected GMMcCabeParser getParser() throws CancelledException {
+			// a single function: the default monitor; the incremental analysis keeps the snapshot valid
+			GMControlFlowGraph graph = getController().getValidControlFlowGraph();
+			if (graph == null) {
+				// the whole snapshot would be rebuilt for one function
+				return GMMcCabeParser.functionParser(getController().getBlockModel(), function);
+			}
+			return GMMcCabeParser.graphParser(graph, function);
 		}
 
 		public Function getFunction() {
@@ -49,9 +79,48 @@ public class GMMcCabe extends GMBaseMetric<GMMcCabe, GMMcCabeController, GMMcCab
 		}
 	}
 
+	/**
+	 * Function row of a {@link GMMcCabeTable}: measures are derived from the
+	 * precomputed counts, without parsing the function again.
+	 */
+	public static final class GMMcCabeFunctionRow extends GMMcCabe {
+
+		private final GMMcCabeTable table;
+		private final int row;
+
+		protected GMMcCabeFunctionRow(GMMcCabeController controller, GMMcCabeTable table, int row) {
+			super(NAME, controller);
+			this.table = table;
+			this.row = row;
+		}
+
+		@Override
+		public boolean init() {
+			return init(table.getResult(row));
+		}
+
+		@Override
+		public String getName() {
+			Function function = getFunction();
+			String fnName = function != null ? function.getName() : table.getEntryPoint(row).toString();
+			return super.getName() + "." + fnName;
+		}
+
+		public Function getFunction() {
+			return program.getFunctionManager().getFunctionAt(table.getEntryPoint(row));
+		}
+	}
+
 	private BigDecimal edges;
 	private BigDecimal nodes;
 	private BigDecimal exits;
+
+	private boolean fast; // numeric backend, resolved once per result
+
+	private BigDecimal essential; // dominator analysis, null if not computed
+	private BigDecimal residue;
+	private BigDecimal loops;
+	private BigDecimal nesting;
 	
 	protected GMMcCabe(String name, GMMcCabeController controller) {
 		super(name, controller);
@@ -64,19 +133,7 @@ public class GMMcCabe extends GMBaseMetric<GMMcCabe, GMMcCabeController, GMMcCab
 	@Override
 	public boolean init() {
 		try {
-			Result result = getParser().parse();
-
-			if (result.ok()) { 
-				this.edges = result.edges;
-				this.nodes = result.nodes;
-				this.exits = result.exits;
-	
-				GMMcCabeKey.ALL_KEYS.forEach(key -> {
-					createMeasure(key);
-				});
-	
-				return true;
-			}
+			return init(getParser().parse());
 			
 		} catch(CancelledException e) {
 			controller.printException(e);
@@ -84,9 +141,50 @@ public class GMMcCabe extends GMBaseMetric<GMMcCabe, GMMcCabeController, GMMcCab
 
 		return false;
 	}
+
+	protected boolean init(Result result) {
+		if (result.ok()) { 
+			this.edges = result.edges;
+			this.nodes = result.nodes;
+			this.exits = result.exits;
+			this.essential = result.essential;
+			this.residue = result.residue;
+			this.loops = result.loops;
+			this.nesting = result.nesting;
+			this.fast = NumberUtils.isFast();
+
+			GMMcCabeKey.ALL_KEYS.forEach(key -> {
+				createMeasure(key);
+			});
+
+			if (result.hasGraphMetrics()) {
+				GMMcCabeKey.GRAPH_KEYS.forEach(key -> {
+					createMeasure(key);
+				});
+			}
+
+			return true;
+		}
+
+		return false;
+	}
 	
-	protected GMMcCabeParser getParser() {
-		return GMMcCabeParser.programParser(getController().getProgram());
+	protected GMMcCabeParser getParser() throws CancelledException {
+		GMMcCabeParser parser;
+		if (GMOptions.getBoolean(GMMcCabeController.OPTION_INCREMENTAL, false)) {
+			parser = getController().getIncrementalParser();
+		} else {
+			parser = GMMcCabeParser.graphParser(getController().getControlFlowGraph(), null);
+		}
+		return parser.setMonitor(getController().getMonitor());
+	}
+
+	/**
+	 * Replaces the measures with the ones of a new analysis result.
+	 */
+	public boolean update(Result result) {
+		clearMeasures();
+		return init(result);
 	}
 
 
@@ -114,6 +212,11 @@ public class GMMcCabe extends GMBaseMetric<GMMcCabe, GMMcCabeController, GMMcCab
 	 * @return e - n + 2p
 	 */
 	public BigDecimal getComplexity() {
+		if (fast) {
+			long m = edges.longValue() - nodes.longValue() + exits.longValue();
+			return BigDecimal.valueOf(Math.max(m, 0));
+		}
+
 		BigDecimal a = NumberUtils.sub(edges, nodes);
 		BigDecimal b = NumberUtils.mul(exits, new BigDecimal(1));
 		BigDecimal c = NumberUtils.add(a, b);
@@ -121,6 +224,30 @@ public class GMMcCabe extends GMBaseMetric<GMMcCabe, GMMcCabeController, GMMcCab
 		return NumberUtils.gte0(c) ? c : BigDecimal.ZERO;
 	}
 
+	/**
+	 * Essential complexity: the complexity left once the structured regions have been collapsed, 1
+	 * for a structured function.
+	 */
+	public BigDecimal getEssentialComplexity() {
+		return essential;
+	}
+
+	/**
+	 * Residue complexity: 1 for a reducible graph, otherwise the complexity of the T1/T2 residue. It
+	 * measures irreducibility only, unstructured reducible functions get 1.
+	 */
+	public BigDecimal getResidueComplexity() {
+		return residue;
+	}
+
+	public BigDecimal getNumLoops() {
+		return loops;
+	}
+
+	public BigDecimal getMaxLoopNesting() {
+		return nesting;
+	}
+
 	@Override
 	public String[] getTableColumns() {
 		return TABLE_COLUMNS;
@@ -0,0 +1,91 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ghidra.framework.model.DomainObjectChangedEvent;
+import ghidra.framework.model.DomainObjectListener;
+import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressSet;
+import ghidra.program.model.listing.Function;
+import ghidra.program.model.listing.Program;
+import it.unive.ghidra.metrics.impl.mccabe.GMMcCabeParser.Result;
+import it.unive.ghidra.metrics.util.GMProgramChanges;
+
+/**
+ * Per-program cache of function results keyed by entry point, holding at most
+ * <code>capacity</code> entries: the least recently used one is evicted first.
+ *
+ * Entries are invalidated by the program change events that touch the function code.
+ */
+public final class GMMcCabeCache implements DomainObjectListener, GMProgramChanges.Handler {
+
+	private final Program program;
+	private final Map<Address, Result> entries;
+
+	public GMMcCabeCache(Program program, int capacity) {
+		this.program = program;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Address, Result> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the cached result of the function, or null if it must be computed
+	 */
+	public synchronized Result get(Function function) {
+		return entries.get(function.getEntryPoint());
+	}
+
+	public synchronized void put(Function function, Result result) {
+		entries.put(function.getEntryPoint(), result);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public void register() {
+		program.addListener(this);
+	}
+
+	public void unregister() {
+		program.removeListener(this);
+	}
+
+	@Override
+	public void domainObjectChanged(DomainObjectChangedEvent ev) {
+		GMProgramChanges.dispatch(ev, this);
+	}
+
+	@Override
+	public synchronized void codeChanged(Address start, Address end) {
+		if (entries.isEmpty())
+			return;
+
+		Iterator<Function> functions = program.getFunctionManager().getFunctionsOverlapping(new AddressSet(start, end));
+		while (functions.hasNext()) {
+			entries.remove(functions.next().getEntryPoint());
+		}
+	}
+
+	@Override
+	public synchronized void functionChanged(Address entryPoint) {
+		entries.remove(entryPoint);
+	}
+
+	@Override
+	public synchronized void allChanged() {
+		entries.clear();
+	}
+}
@@ -1,21 +1,265 @@
 package it.unive.ghidra.metrics.impl.mccabe;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ghidra.program.model.block.BasicBlockModel;
 import ghidra.program.model.listing.Program;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
 import it.unive.ghidra.metrics.GhidraMetricsPlugin;
 import it.unive.ghidra.metrics.base.GMBaseMetricController;
+import it.unive.ghidra.metrics.base.interfaces.GMMetric;
+import it.unive.ghidra.metrics.impl.mccabe.GMMcCabe.GMMcCabeFunction;
+import it.unive.ghidra.metrics.impl.mccabe.GMMcCabe.GMMcCabeFunctionRow;
+import it.unive.ghidra.metrics.impl.mccabe.GMMcCabeParser.Result;
+import it.unive.ghidra.metrics.util.GMOptions;
 
 public class GMMcCabeController extends GMBaseMetricController<GMMcCabe, GMMcCabeController, GMMcCabeWindow> {
+
+	/**
+	 * Computes and exports the measures of all the functions of the program.
+	 */
+	public static final String OPTION_ALL_FUNCTIONS = "mccabe-all-functions";
+
+	/**
+	 * Keeps the program measures up to date with the program changes.
+	 */
+	public static final String OPTION_INCREMENTAL = "mccabe-incremental";
+
+	/**
+	 * Blocks read through the shared block model before it is replaced (default 16384), which
+	 * bounds the blocks it keeps cached.
+	 */
+	public static final String OPTION_BLOCK_MODEL_BLOCKS = "mccabe-block-model-blocks";
+
+	/**
+	 * Maximum number of function results kept in the cache (default 1024).
+	 */
+	public static final String OPTION_CACHE_SIZE = "mccabe-cache-size";
+
+	private GMMcCabeTable functionsTable;
+	private GMControlFlowGraph controlFlowGraph;
+	private GMControlFlowChanges controlFlowChanges;
+	private GMMcCabeIncrementalParser incrementalParser;
+	private GMMcCabeCache functionCache;
+
+	private BasicBlockModel blockModel;
+	private long blockModelModificationNumber;
+	private long blockModelBlocks;
 	
 	public GMMcCabeController(Program program) {
 		super(program, GMMcCabe.class);
 	}
 
+	public GMMcCabeController(Program program, TaskMonitor monitor) {
+		super(program, GMMcCabe.class, monitor);
+	}
+
 	public GMMcCabeController(GhidraMetricsPlugin plugin) {
 		super(plugin, GMMcCabe.class, GMMcCabeWindow.class);
 	}
 
+	public GMMcCabeController(GhidraMetricsPlugin plugin, TaskMonitor monitor) {
+		super(plugin, GMMcCabe.class, GMMcCabeWindow.class, monitor);
+	}
+
 	@Override
 	protected void init() {
-		// do nothing
+		getFunctionCache();
+
+		if (GMOptions.getBoolean(OPTION_ALL_FUNCTIONS, false)) {
+			computeFunctionsTable();
+		}
+	}
+
+	/**
+	 * Control flow graph snapshot, updated with the program changes recorded since the last build
+	 * when the program has been modified, see {@link GMControlFlowChanges}.
+	 */
+	public GMControlFlowGraph getControlFlowGraph() throws CancelledException {
+		return getControlFlowGraph(getMonitor());
+	}
+
+	public synchronized GMControlFlowGraph getControlFlowGraph(TaskMonitor monitor) throws CancelledException {
+		controlFlowGraph = getControlFlowChanges().apply(controlFlowGraph, monitor);
+		return controlFlowGraph;
+	}
+
+	/**
+	 * Change recorder of the snapshot, registered as listener of the program on first use. It must
+	 * be registered before the listeners asking for the snapshot, which would otherwise find the
+	 * last changes not yet recorded.
+	 */
+	private synchronized GMControlFlowChanges getControlFlowChanges() {
+		if (controlFlowChanges == null) {
+			controlFlowChanges = new GMControlFlowChanges(getProgram());
+			controlFlowChanges.register();
+		}
+		return controlFlowChanges;
+	}
+
+	/**
+	 * @return the control flow graph snapshot if it has been built and the program has not been modified since, null otherwise
+	 */
+	public synchronized GMControlFlowGraph getValidControlFlowGraph() {
+		return controlFlowGraph != null && controlFlowGraph.isValid() ? controlFlowGraph : null;
+	}
+
+	/**
+	 * Block model shared by the function analyses. It is replaced when the program has been
+	 * modified, as its cached blocks are stale, and once {@link #OPTION_BLOCK_MODEL_BLOCKS} blocks
+	 * have been read through it, see {@link #blockModelRead(int)}.
+	 */
+	public synchronized BasicBlockModel getBlockModel() {
+		long modificationNumber = getProgram().getModificationNumber();
+		if (blockModel == null || blockModelModificationNumber != modificationNumber
+				|| blockModelBlocks >= GMOptions.getInt(OPTION_BLOCK_MODEL_BLOCKS, 16384)) {
+			blockModel = new BasicBlockModel(getProgram());
+			blockModelModificationNumber = modificationNumber;
+			blockModelBlocks = 0;
+		}
+		return blockModel;
+	}
+
+	/**
+	 * Records the blocks an analysis has read through the shared block model.
+	 */
+	public synchronized void blockModelRead(int numBlocks) {
+		blockModelBlocks += numBlocks;
+	}
+
+	/**
+	 * Function results cache, registered as listener of the program on first use.
+	 */
+	public synchronized GMMcCabeCache getFunctionCache() {
+		if (functionCache == null) {
+			functionCache = new GMMcCabeCache(getProgram(), GMOptions.getInt(OPTION_CACHE_SIZE, 1024));
+			functionCache.register();
+		}
+		return functionCache;
+	}
+
+	/**
+	 * Incremental program parser, registered as listener of the program on first use.
+	 */
+	public synchronized GMMcCabeIncrementalParser getIncrementalParser() {
+		if (incrementalParser == null) {
+			getControlFlowChanges();
+			incrementalParser = new GMMcCabeIncrementalParser(getProgram(), this);
+			incrementalParser.register();
+		}
+		return incrementalParser;
+	}
+
+	public synchronized boolean isIncremental() {
+		return incrementalParser != null;
+	}
+
+	/**
+	 * Switches the program measures between a one-time analysis and an incremental one.
+	 */
+	public void setIncremental(boolean incremental) {
+		if (incremental == isIncremental())
+			return;
+
+		Result[] result = { null };
+		boolean completed = runTask("McCabe program measures", monitor -> {
+			GMMcCabeParser parser;
+			if (incremental) {
+				parser = getIncrementalParser();
+			} else {
+				synchronized (this) {
+					incrementalParser.unregister();
+					incrementalParser = null;
+				}
+				parser = GMMcCabeParser.graphParser(getControlFlowGraph(), null);
+			}
+
+			result[0] = parser.setMonitor(monitor).parse();
+		});
+
+		if (completed) {
+			programChanged(result[0]);
+		}
+	}
+
+	/**
+	 * Updates the program measures with a new analysis result; the function measures are computed again.
+	 */
+	public void programChanged(Result result) {
+		getMetric().update(result);
+
+		GMMcCabe metricFn = getMetricFn();
+		if (metricFn instanceof GMMcCabeFunction) {
+			getMetric().functionChanged(((GMMcCabeFunction) metricFn).getFunction());
+		}
+
+		// program events can arrive before the window is built
+		if (guiEnabled && getWindow() != null) {
+			getWindow().refreshProgramMeasures();
+		}
+	}
+
+	@Override
+	public synchronized void dispose() {
+		if (functionCache != null) {
+			functionCache.unregister();
+			functionCache = null;
+		}
+		if (incrementalParser != null) {
+			incrementalParser.unregister();
+			incrementalParser = null;
+		}
+		if (controlFlowChanges != null) {
+			controlFlowChanges.unregister();
+			controlFlowChanges = null;
+		}
+		controlFlowGraph = null;
+		blockModel = null;
+	}
+
+	public GMMcCabeTable computeFunctionsTable() {
+		try {
+			if (GMOptions.getParallelism(GMMcCabeParser.OPTION_WORKERS, 1) > 1) {
+				functionsTable = GMMcCabeParser.functionsTable(getProgram(), getMonitor());
+			} else {
+				functionsTable = GMMcCabeParser.functionsTable(getControlFlowGraph(), getMonitor());
+			}
+		} catch (CancelledException e) {
+			printException(e);
+		}
+		return functionsTable;
+	}
+
+	public GMMcCabeTable getFunctionsTable() {
+		return functionsTable;
+	}
+
+	public boolean hasFunctionsTable() {
+		return functionsTable != null;
+	}
+
+	/**
+	 * @return the metric of each row of the functions table, empty if the table has not been computed
+	 */
+	public List<GMMcCabe> getFunctionsTableMetrics() {
+		List<GMMcCabe> rows = new ArrayList<>();
+		if (functionsTable != null) {
+			for (int row = 0; row < functionsTable.size(); row++) {
+				GMMcCabe rowMetric = new GMMcCabeFunctionRow(this, functionsTable, row);
+				if (rowMetric.init()) {
+					rows.add(rowMetric);
+				}
+			}
+		}
+		return rows;
+	}
+
+	@Override
+	protected void addExportableMetrics(Collection<GMMetric> toExport) {
+		super.addExportableMetrics(toExport);
+		toExport.addAll(getFunctionsTableMetrics());
 	}
 }
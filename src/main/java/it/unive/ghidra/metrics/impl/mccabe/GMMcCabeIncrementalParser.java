@@ -0,0 +1,191 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import ghidra.framework.model.DomainObjectChangedEvent;
+import ghidra.framework.model.DomainObjectListener;
+import ghidra.program.model.address.Address;
+import ghidra.program.model.listing.Program;
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+import it.unive.ghidra.metrics.util.GMProgramChanges;
+
+/**
+ * Program analysis kept up to date from the program change events.
+ *
+ * The blocks of the {@link GMControlFlowGraph} snapshot are counted once, with the same rule of
+ * the program analysis, and their counts are kept per function, plus the ones of the blocks
+ * outside any function; the program totals are their sum. When the program changes, the
+ * snapshot is updated and only the functions whose blocks have changed, and the blocks outside
+ * the functions if they have changed, are counted again: the totals are updated by the difference.
+ * After an undo, a redo or a restore the counts are only marked stale: they are counted again by
+ * the next {@link #parse}, under the monitor of the controller.
+ */
+public final class GMMcCabeIncrementalParser extends GMMcCabeParser implements DomainObjectListener, GMProgramChanges.Handler {
+
+	private final GMMcCabeController controller;
+
+	// counts (edges, nodes, exits) of the blocks of each function, of the blocks outside the functions, and their sum
+	private final Map<Address, long[]> functionCounts;
+	private final long[] outsideCounts;
+	private final long[] totals;
+
+	private long modificationNumber = -1; // of the snapshot the counts come from, -1 if they are stale
+	private boolean hasEntryBlock; // a block starts at the minimum address of the program
+
+	private boolean changed;
+	private boolean allChanged;
+
+	protected GMMcCabeIncrementalParser(Program program, GMMcCabeController controller) {
+		super(program, GMMcCabeParser.Type.PROGRAM);
+		this.controller = controller;
+		this.functionCounts = new HashMap<>();
+		this.outsideCounts = new long[3];
+		this.totals = new long[3];
+	}
+
+	@Override
+	public synchronized GMMcCabeParser setMonitor(TaskMonitor monitor) {
+		return super.setMonitor(monitor);
+	}
+
+	@Override
+	public synchronized Result parse() throws CancelledException {
+		if (modificationNumber < 0) {
+			parseAll(controller.getControlFlowGraph(getMonitor()));
+		}
+		return createResult();
+	}
+
+	private void parseAll(GMControlFlowGraph graph) throws CancelledException {
+		functionCounts.clear();
+		outsideCounts[EDGES] = outsideCounts[NODES] = outsideCounts[EXITS] = 0;
+
+		int entryBlock = graph.blockAt(getProgram().getMinAddress());
+		for (int block = 0; block < graph.numBlocks(); block++) {
+			getMonitor().checkCanceled();
+
+			int fn = graph.getBlockFunction(block);
+			long[] counts = fn >= 0 ? functionCounts.computeIfAbsent(graph.getFunctionEntry(fn), entry -> new long[3]) : outsideCounts;
+			countBlock(graph, block, entryBlock, counts);
+		}
+
+		totals[EDGES] = totals[NODES] = totals[EXITS] = 0;
+		functionCounts.values().forEach(counts -> add(counts, 1));
+		add(outsideCounts, 1);
+
+		modificationNumber = graph.getModificationNumber();
+		hasEntryBlock = entryBlock >= 0;
+	}
+
+	private void update(GMControlFlowGraph graph) throws CancelledException {
+		int entryBlock = graph.blockAt(getProgram().getMinAddress());
+
+		// edges to the entry block are counted differently: every block would change
+		if (!graph.isUpdateOf(modificationNumber) || hasEntryBlock != entryBlock >= 0) {
+			parseAll(graph);
+			return;
+		}
+
+		for (Address entryPoint : graph.getUpdatedFunctions()) {
+			long[] old = functionCounts.remove(entryPoint);
+			if (old != null) {
+				add(old, -1);
+			}
+
+			int fn = graph.functionIndex(entryPoint);
+			if (fn >= 0) {
+				long[] counts = new long[3];
+				for (int i = graph.functionBlocksStart(fn); i < graph.functionBlocksEnd(fn); i++) {
+					countBlock(graph, graph.functionBlock(i), entryBlock, counts);
+				}
+				functionCounts.put(entryPoint, counts);
+				add(counts, 1);
+			}
+		}
+
+		if (graph.isUpdatedOutside()) {
+			add(outsideCounts, -1);
+			outsideCounts[EDGES] = outsideCounts[NODES] = outsideCounts[EXITS] = 0;
+			for (int block = 0; block < graph.numBlocks(); block++) {
+				if (graph.getBlockFunction(block) < 0) {
+					countBlock(graph, block, entryBlock, outsideCounts);
+				}
+			}
+			add(outsideCounts, 1);
+		}
+
+		modificationNumber = graph.getModificationNumber();
+	}
+
+	private Result createResult() {
+		return new Result(BigDecimal.valueOf(totals[EDGES]), BigDecimal.valueOf(totals[NODES]), BigDecimal.valueOf(totals[EXITS]));
+	}
+
+	private void add(long[] counts, int sign) {
+		totals[EDGES] += sign * counts[EDGES];
+		totals[NODES] += sign * counts[NODES];
+		totals[EXITS] += sign * counts[EXITS];
+	}
+
+	public void register() {
+		getProgram().addListener(this);
+	}
+
+	public void unregister() {
+		getProgram().removeListener(this);
+	}
+
+	@Override
+	public void domainObjectChanged(DomainObjectChangedEvent ev) {
+		Result result;
+		synchronized (this) {
+			changed = false;
+			allChanged = false;
+			GMProgramChanges.dispatch(ev, this);
+
+			if (!changed || modificationNumber < 0)
+				return;
+
+			if (allChanged) {
+				// the whole snapshot is built again: left to the next parse
+				modificationNumber = -1;
+				return;
+			}
+
+			// changes are applied in the background of the program events: they cannot be cancelled,
+			// and the monitor set for the next parse is restored
+			TaskMonitor monitor = getMonitor();
+			setMonitor(TaskMonitor.DUMMY);
+			try {
+				update(controller.getControlFlowGraph(getMonitor()));
+			} catch (CancelledException e) {
+				controller.printException(e);
+				return;
+			} finally {
+				setMonitor(monitor);
+			}
+			result = createResult();
+		}
+
+		controller.programChanged(result);
+	}
+
+	@Override
+	public void codeChanged(Address start, Address end) {
+		changed = true;
+	}
+
+	@Override
+	public void functionChanged(Address entryPoint) {
+		changed = true;
+	}
+
+	@Override
+	public void allChanged() {
+		changed = true;
+		allChanged = true;
+	}
+}
@@ -11,6 +11,10 @@ public final class GMMcCabeKey extends GMBaseMeasureKey {
 	private static final GMMcCabeKey NUM_NODES;
 	private static final GMMcCabeKey NUM_CONNECTED_COMPONENTS;
 	private static final GMMcCabeKey COMPLEXITY;
+	private static final GMMcCabeKey ESSENTIAL_COMPLEXITY;
+	private static final GMMcCabeKey RESIDUE_COMPLEXITY;
+	private static final GMMcCabeKey NUM_LOOPS;
+	private static final GMMcCabeKey MAX_LOOP_NESTING;
 
 	private static int sn = 0;
 
@@ -20,11 +24,20 @@ public final class GMMcCabeKey extends GMBaseMeasureKey {
 		NUM_NODES	= new GMMcCabeKey("Num Nodes", "Number of nodes.", null);
 		NUM_CONNECTED_COMPONENTS	= new GMMcCabeKey("Num Connected Components", "Number of connected components.", null);
 		COMPLEXITY 	= new GMMcCabeKey("Complexity", "Cyclomatic complexity.", "M = E - N + P");
+		ESSENTIAL_COMPLEXITY	= new GMMcCabeKey("Essential Complexity", "Cyclomatic complexity of the graph left by collapsing the structured single-entry single-exit regions.", "ev = E - N + 2, 1 if structured");
+		RESIDUE_COMPLEXITY	= new GMMcCabeKey("Residue Complexity", "Cyclomatic complexity of the graph left by T1/T2 reductions: measures irreducibility only.", "1 if reducible");
+		NUM_LOOPS	= new GMMcCabeKey("Num Loops", "Number of natural loops.", null);
+		MAX_LOOP_NESTING	= new GMMcCabeKey("Max Loop Nesting", "Maximum nesting depth of the natural loops.", null);
 		//@formatter:on
 	}
 
 	public static final List<GMBaseMeasureKey> ALL_KEYS = List.of(NUM_EDGES, NUM_NODES, NUM_CONNECTED_COMPONENTS, COMPLEXITY);
 
+	/**
+	 * Measures of the dominator analysis, available when the control flow graph snapshot is used.
+	 */
+	public static final List<GMBaseMeasureKey> GRAPH_KEYS = List.of(ESSENTIAL_COMPLEXITY, RESIDUE_COMPLEXITY, NUM_LOOPS, MAX_LOOP_NESTING);
+
 	public GMMcCabeKey(String name, String description, String formula) {
 		super(GMMeasureKey.Type.NUMERIC, name, description, formula, sn++);
 	}
@@ -1,17 +1,32 @@
 package it.unive.ghidra.metrics.impl.mccabe;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressSetView;
 import ghidra.program.model.block.BasicBlockModel;
 import ghidra.program.model.block.CodeBlock;
 import ghidra.program.model.block.CodeBlockIterator;
 import ghidra.program.model.block.CodeBlockReference;
 import ghidra.program.model.block.CodeBlockReferenceIterator;
 import ghidra.program.model.listing.Function;
+import ghidra.program.model.listing.FunctionManager;
 import ghidra.program.model.listing.Program;
 import ghidra.program.model.symbol.FlowType;
 import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
+import it.unive.ghidra.metrics.util.GMOptions;
 import it.unive.ghidra.metrics.util.GMTaskMonitor;
 import it.unive.ghidra.metrics.util.NumberUtils;
 
@@ -21,6 +36,20 @@ public abstract class GMMcCabeParser {
 		PROGRAM, // analysis of entire program
 		FUNCTION; // analysis of specific function
 	}
+
+	/**
+	 * Number of workers of the functions table: 1 (default) counts the functions over the
+	 * {@link GMControlFlowGraph} snapshot, built with a single sweep over the code blocks, together
+	 * with the dominator analysis; more workers count them over the program, 0 uses all the
+	 * available processors.
+	 */
+	public static final String OPTION_WORKERS = "mccabe-workers";
+
+	// functions claimed at once by a worker
+	private static final int WORKER_CHUNK_SIZE = 64;
+
+	// indexes of the block counters
+	static final int EDGES = 0, NODES = 1, EXITS = 2;
 	
 
 	public static final GMMcCabeParser programParser(Program program) {
@@ -28,9 +57,188 @@ public abstract class GMMcCabeParser {
 	}
 
 	public static final GMMcCabeParser functionParser(Program program, Function function) {
-		return new GMMcCabeFunctionParser(program, function);
+		return functionParser(new BasicBlockModel(program), function);
+	}
+
+	/**
+	 * Analysis of a function over a shared block model, e.g. the one of {@link GMMcCabeController#getBlockModel()}:
+	 * the blocks cached by the model are reused by the next analyses.
+	 */
+	public static final GMMcCabeParser functionParser(BasicBlockModel basicBlockModel, Function function) {
+		return new GMMcCabeFunctionParser(basicBlockModel, function);
 	}
 	
+	/**
+	 * Analysis of every function of the program, with the number of workers set by {@link #OPTION_WORKERS}.
+	 */
+	public static final GMMcCabeTable functionsTable(Program program, TaskMonitor monitor) throws CancelledException {
+		int workers = GMOptions.getParallelism(OPTION_WORKERS, 1);
+		return functionsTableParallel(program, workers, monitor);
+	}
+
+	private static GMMcCabeTable createTable(FunctionManager functionManager, List<Function> functions) {
+		List<Address> entryPoints = new ArrayList<>(functionManager.getFunctionCount());
+		for (Function function : functionManager.getFunctions(true)) {
+			if (!function.isExternal()) {
+				entryPoints.add(function.getEntryPoint());
+				functions.add(function);
+			}
+		}
+		return new GMMcCabeTable(entryPoints.toArray(new Address[0]));
+	}
+
+	/**
+	 * Analysis of every function of the program on <code>workers</code> threads. Each worker owns
+	 * its {@link BasicBlockModel} and a monitor reporting to <code>monitor</code>, claims chunks of
+	 * consecutive functions and writes the counts in their table rows: rows are sorted by entry
+	 * point whatever the scheduling. Blocks are attributed as in the {@link GMControlFlowGraph}
+	 * snapshot, to the function containing their first address.
+	 */
+	public static final GMMcCabeTable functionsTableParallel(Program program, int workers, TaskMonitor monitor) throws CancelledException {
+		List<Function> functions = new ArrayList<>();
+		GMMcCabeTable table = createTable(program.getFunctionManager(), functions);
+		monitor.initialize(functions.size());
+
+		AtomicInteger nextChunk = new AtomicInteger();
+		int numChunks = (functions.size() + WORKER_CHUNK_SIZE - 1) / WORKER_CHUNK_SIZE;
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+		GMTaskMonitor parent = GMTaskMonitor.of(monitor);
+		List<GMTaskMonitor> monitors = new ArrayList<>();
+		try {
+			for (int w = 0; w < workers; w++) {
+				GMTaskMonitor workerMonitor = parent.child();
+				monitors.add(workerMonitor);
+
+				completion.submit(() -> {
+					BasicBlockModel basicBlockModel = new BasicBlockModel(program);
+					long[] counts = new long[3];
+
+					int chunk;
+					while ((chunk = nextChunk.getAndIncrement()) < numChunks) {
+						int to = Math.min(functions.size(), (chunk + 1) * WORKER_CHUNK_SIZE);
+						for (int row = chunk * WORKER_CHUNK_SIZE; row < to; row++) {
+							workerMonitor.checkCanceled();
+
+							counts[EDGES] = counts[NODES] = counts[EXITS] = 0;
+							countFunction(basicBlockModel, functions.get(row), counts, workerMonitor);
+							table.set(row, counts[EDGES], counts[NODES], counts[EXITS]);
+							workerMonitor.incrementProgress(1);
+						}
+					}
+					return null;
+				});
+			}
+
+			// in completion order: the first failure stops the other workers at once
+			for (int w = 0; w < workers; w++) {
+				completion.take().get();
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancelledException();
+
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancelledException) {
+				throw (CancelledException) e.getCause();
+			}
+			throw new RuntimeException("McCabe worker failed", e.getCause());
+
+		} finally {
+			// stops the workers still running after a failure; the given monitor is not cancelled
+			monitors.forEach(workerMonitor -> workerMonitor.cancel());
+			executor.shutdownNow();
+		}
+
+		return table;
+	}
+
+	/**
+	 * Analysis of every function of a control flow graph snapshot, without touching the program;
+	 * the counts and the dominator analysis of a function are computed together.
+	 */
+	public static final GMMcCabeTable functionsTable(GMControlFlowGraph graph, TaskMonitor monitor) throws CancelledException {
+		Address[] entryPoints = new Address[graph.numFunctions()];
+		for (int fn = 0; fn < entryPoints.length; fn++) {
+			entryPoints[fn] = graph.getFunctionEntry(fn);
+		}
+		GMMcCabeTable table = new GMMcCabeTable(entryPoints);
+		monitor.initialize(entryPoints.length);
+
+		GMControlFlowAnalysis analysis = new GMControlFlowAnalysis(graph);
+		long[] counts = new long[3];
+		for (int fn = 0; fn < entryPoints.length; fn++) {
+			monitor.checkCanceled();
+			monitor.incrementProgress(1);
+			counts[EDGES] = counts[NODES] = counts[EXITS] = 0;
+			countFunction(graph, fn, counts);
+			table.set(fn, counts[EDGES], counts[NODES], counts[EXITS]);
+
+			analysis.analyze(fn);
+			table.setGraphMetrics(fn, analysis.getEssentialComplexity(), analysis.getResidueComplexity(), analysis.getNumLoops(), analysis.getMaxLoopNesting());
+		}
+		return table;
+	}
+
+	public static final GMMcCabeParser graphParser(GMControlFlowGraph graph, Function function) {
+		return new GMMcCabeGraphParser(graph, function);
+	}
+
+	/**
+	 * Analysis over a {@link GMControlFlowGraph} snapshot: the blocks of a function are the ones
+	 * attributed to it by the snapshot. The result includes the dominator analysis: for the whole
+	 * program, essential and residue complexities and loops are summed over the functions and the nesting is
+	 * the maximum one.
+	 */
+	public static final class GMMcCabeGraphParser extends GMMcCabeParser {
+		private final GMControlFlowGraph graph;
+		private final Function function;
+
+		protected GMMcCabeGraphParser(GMControlFlowGraph graph, Function function) {
+			super(graph.getProgram(), function == null ? GMMcCabeParser.Type.PROGRAM : GMMcCabeParser.Type.FUNCTION);
+			this.graph = graph;
+			this.function = function;
+		}
+
+		@Override
+		public Result parse() throws CancelledException {
+			long[] counts = new long[3];
+			GMControlFlowAnalysis analysis = new GMControlFlowAnalysis(graph);
+			long essential = 0, residue = 0, loops = 0, nesting = 0;
+
+			if (function == null) {
+				int entryBlock = graph.blockAt(getProgram().getMinAddress());
+				for (int block = 0; block < graph.numBlocks(); block++) {
+					getMonitor().checkCanceled();
+					countBlock(graph, block, entryBlock, counts);
+				}
+				for (int fn = 0; fn < graph.numFunctions(); fn++) {
+					getMonitor().checkCanceled();
+					analysis.analyze(fn);
+					essential += analysis.getEssentialComplexity();
+					residue += analysis.getResidueComplexity();
+					loops += analysis.getNumLoops();
+					nesting = Math.max(nesting, analysis.getMaxLoopNesting());
+				}
+			} else {
+				int fn = graph.functionIndex(function.getEntryPoint());
+				if (fn >= 0) {
+					countFunction(graph, fn, counts);
+					analysis.analyze(fn);
+					essential = analysis.getEssentialComplexity();
+					residue = analysis.getResidueComplexity();
+					loops = analysis.getNumLoops();
+					nesting = analysis.getMaxLoopNesting();
+				}
+			}
+
+			Result result = new Result(BigDecimal.valueOf(counts[EDGES]), BigDecimal.valueOf(counts[NODES]), BigDecimal.valueOf(counts[EXITS]));
+			return result.withGraphMetrics(essential, residue, loops, nesting);
+		}
+	}
+
 	public static final class GMMcCabeProgramParser extends GMMcCabeParser {
 
 		protected GMMcCabeProgramParser(Program program) {
@@ -39,43 +247,114 @@ public abstract class GMMcCabeParser {
 
 		@Override
 		public Result parse() throws CancelledException {
-			return parseImpl(null);
+			return parseImpl(new BasicBlockModel(getProgram()), null);
 		}
 	}
 	
 
+	/**
+	 * Analysis of a single function over a {@link BasicBlockModel}: blocks are attributed as in the
+	 * functions table, to the function containing their first address. The result includes the
+	 * dominator analysis, over the same edges of the {@link GMMcCabeGraphParser}.
+	 */
 	public static final class GMMcCabeFunctionParser extends GMMcCabeParser {
+		private final BasicBlockModel basicBlockModel;
 		private final Function function;
+		private int numBlocks; // blocks read from the block model
 
-		protected GMMcCabeFunctionParser(Program program, Function function) {
-			super(program, GMMcCabeParser.Type.FUNCTION);
+		protected GMMcCabeFunctionParser(BasicBlockModel basicBlockModel, Function function) {
+			super(function.getProgram(), GMMcCabeParser.Type.FUNCTION);
+			this.basicBlockModel = basicBlockModel;
 			this.function = function;
 		}
 
 		@Override
 		public Result parse() throws CancelledException {
-			return parseImpl(function);
+			long[] counts = new long[3];
+			AddressSetView body = function.getBody();
+			Address entryPoint = function.getEntryPoint();
+
+			// blocks of the function with their destinations, by position
+			Map<Address, Integer> positions = new HashMap<>();
+			List<Address> destinations = new ArrayList<>();
+			List<Integer> destinationOffsets = new ArrayList<>(List.of(0));
+			List<Boolean> terminal = new ArrayList<>();
+
+			numBlocks = 0;
+			CodeBlockIterator codeBlockIterator = basicBlockModel.getCodeBlocksContaining(body, getMonitor());
+			while (codeBlockIterator.hasNext()) {
+				getMonitor().checkCanceled();
+				CodeBlock codeBlock = codeBlockIterator.next();
+				numBlocks++;
+				if (body.contains(codeBlock.getFirstStartAddress())) {
+					positions.put(codeBlock.getFirstStartAddress(), terminal.size());
+					terminal.add(codeBlock.getFlowType().isTerminal());
+					countBlock(codeBlock, entryPoint, counts, destinations, getMonitor());
+					destinationOffsets.add(destinations.size());
+				}
+			}
+
+			// edges to blocks of other functions are dropped
+			int size = terminal.size();
+			int[] offsets = new int[size + 1];
+			int[] targets = new int[destinations.size()];
+			boolean[] exits = new boolean[size];
+			int e = 0;
+			for (int pos = 0; pos < size; pos++) {
+				offsets[pos] = e;
+				for (int i = destinationOffsets.get(pos); i < destinationOffsets.get(pos + 1); i++) {
+					Integer target = positions.get(destinations.get(i));
+					if (target != null) {
+						targets[e++] = target;
+					}
+				}
+				exits[pos] = terminal.get(pos) || e == offsets[pos];
+			}
+			offsets[size] = e;
+
+			GMControlFlowAnalysis analysis = new GMControlFlowAnalysis(null);
+			analysis.analyze(size, positions.getOrDefault(entryPoint, -1), offsets, Arrays.copyOf(targets, e), exits);
+
+			Result result = new Result(BigDecimal.valueOf(counts[EDGES]), BigDecimal.valueOf(counts[NODES]), BigDecimal.valueOf(counts[EXITS]));
+			return result.withGraphMetrics(analysis.getEssentialComplexity(), analysis.getResidueComplexity(), analysis.getNumLoops(),
+					analysis.getMaxLoopNesting());
+		}
+
+		/**
+		 * @return the blocks read from the block model by the last parse, the ones of other functions included
+		 */
+		public int getNumBlocks() {
+			return numBlocks;
 		}
 	}
 	
 	private final Program program;
 	private final GMMcCabeParser.Type parseType;
+	private TaskMonitor monitor;
 
 	protected GMMcCabeParser(Program program, GMMcCabeParser.Type parseType) {
 		this.program = program;
 		this.parseType = parseType;
+		this.monitor = TaskMonitor.DUMMY;
+	}
+
+	/**
+	 * Sets the monitor checked for cancellation; the default one cannot be cancelled.
+	 */
+	public GMMcCabeParser setMonitor(TaskMonitor monitor) {
+		this.monitor = monitor;
+		return this;
+	}
+
+	protected TaskMonitor getMonitor() {
+		return monitor;
 	}
 	
 	public abstract Result parse() throws CancelledException;
 	
-	protected Result parseImpl(Function function) throws CancelledException {
-		BigDecimal nodes = BigDecimal.ZERO;
-		BigDecimal edges = BigDecimal.ZERO;
-		BigDecimal exits = BigDecimal.ZERO;
-
-		GMTaskMonitor monitor = new GMTaskMonitor();
+	protected Result parseImpl(BasicBlockModel basicBlockModel, Function function) throws CancelledException {
+		long[] counts = new long[3];
 		
-		BasicBlockModel basicBlockModel = new BasicBlockModel(program);
 		CodeBlockIterator codeBlockIterator;
 		Address entryPoint;
 		
@@ -88,34 +367,85 @@ public abstract class GMMcCabeParser {
 		}
 		
 		while (codeBlockIterator.hasNext()) {
-			if (monitor.isCancelled()) {
-				break;
+			monitor.checkCanceled();
+			countBlock(codeBlockIterator.next(), entryPoint, counts, null, monitor);
+		}
+
+		Result result = new Result(BigDecimal.valueOf(counts[EDGES]), BigDecimal.valueOf(counts[NODES]), BigDecimal.valueOf(counts[EXITS]));
+		return result;
+	}
+
+	/**
+	 * Adds the node, the exit and the outgoing edges of a code block to <code>counts</code>
+	 * (edges, nodes, exits). Indirect and call flows are not edges of the graph; a terminal block
+	 * flowing back to the entry point does not add an edge.
+	 *
+	 * @param edgeDestinations receives the destination of each edge, or null
+	 */
+	static void countBlock(CodeBlock codeBlock, Address entryPoint, long[] counts, List<Address> edgeDestinations, TaskMonitor monitor)
+			throws CancelledException {
+		counts[NODES]++;
+		if (codeBlock.getFlowType().isTerminal()) {
+			counts[EXITS]++;
+			counts[EDGES]++;
+		}
+		CodeBlockReferenceIterator destinations = codeBlock.getDestinations(monitor);
+		while (destinations.hasNext()) {
+			monitor.checkCanceled();
+			CodeBlockReference reference = destinations.next();
+			FlowType flowType = reference.getFlowType();
+			if (flowType.isIndirect() || flowType.isCall()) {
+				continue;
 			}
-			CodeBlock codeBlock = codeBlockIterator.next();
-			nodes = nodes.add(BigDecimal.ONE);
-			if (codeBlock.getFlowType().isTerminal()) {
-				exits = exits.add(BigDecimal.ONE);
-				edges = edges.add(BigDecimal.ONE);
+			counts[EDGES]++;
+			if (codeBlock.getFlowType().isTerminal() && reference.getDestinationAddress().equals(entryPoint)) {
+				counts[EDGES]--;
 			}
-			CodeBlockReferenceIterator destinations = codeBlock.getDestinations(monitor);
-			while (destinations.hasNext()) {
-				if (monitor.isCancelled()) {
-					break;
-				}
-				CodeBlockReference reference = destinations.next();
-				FlowType flowType = reference.getFlowType();
-				if (flowType.isIndirect() || flowType.isCall()) {
-					continue;
-				}
-				edges = edges.add(BigDecimal.ONE);
-				if (codeBlock.getFlowType().isTerminal() && reference.getDestinationAddress().equals(entryPoint)) {
-					edges = edges.subtract(BigDecimal.ONE);
-				}
+			if (edgeDestinations != null) {
+				edgeDestinations.add(reference.getDestinationAddress());
 			}
 		}
+	}
 
-		Result result = new Result(edges, nodes, exits);
-		return result;
+	/**
+	 * Adds the blocks of a function to <code>counts</code> (edges, nodes, exits). As in the single sweep,
+	 * a block belongs to the function containing its first address.
+	 */
+	static void countFunction(BasicBlockModel basicBlockModel, Function function, long[] counts, TaskMonitor monitor) throws CancelledException {
+		AddressSetView body = function.getBody();
+		CodeBlockIterator codeBlockIterator = basicBlockModel.getCodeBlocksContaining(body, monitor);
+		while (codeBlockIterator.hasNext()) {
+			CodeBlock codeBlock = codeBlockIterator.next();
+			if (body.contains(codeBlock.getFirstStartAddress())) {
+				countBlock(codeBlock, function.getEntryPoint(), counts, null, monitor);
+			}
+		}
+	}
+
+	static void countFunction(GMControlFlowGraph graph, int fn, long[] counts) {
+		int entryBlock = graph.functionEntryBlock(fn);
+		for (int i = graph.functionBlocksStart(fn); i < graph.functionBlocksEnd(fn); i++) {
+			countBlock(graph, graph.functionBlock(i), entryBlock, counts);
+		}
+	}
+
+	/**
+	 * Same counting rule of {@link #countBlock(CodeBlock, Address, long[], List, TaskMonitor)}, over the snapshot arrays.
+	 */
+	static void countBlock(GMControlFlowGraph graph, int block, int entryBlock, long[] counts) {
+		boolean terminal = graph.isTerminal(block);
+
+		counts[NODES]++;
+		if (terminal) {
+			counts[EXITS]++;
+			counts[EDGES]++;
+		}
+		for (int edge = graph.succStart(block); edge < graph.succEnd(block); edge++) {
+			counts[EDGES]++;
+			if (terminal && entryBlock >= 0 && graph.succTarget(edge) == entryBlock) {
+				counts[EDGES]--;
+			}
+		}
 	}
 
 	public Program getProgram() {
@@ -128,6 +458,7 @@ public abstract class GMMcCabeParser {
 
 	public static class Result {
 		protected final BigDecimal edges, nodes, exits;
+		protected BigDecimal essential, residue, loops, nesting; // dominator analysis, null if not computed
 		
 		public Result(BigDecimal edges, BigDecimal nodes, BigDecimal exits) {
 			super();
@@ -135,6 +466,18 @@ public abstract class GMMcCabeParser {
 			this.nodes = nodes;
 			this.exits = exits;
 		}
+
+		public Result withGraphMetrics(long essentialComplexity, long residueComplexity, long numLoops, long maxLoopNesting) {
+			this.essential = BigDecimal.valueOf(essentialComplexity);
+			this.residue = BigDecimal.valueOf(residueComplexity);
+			this.loops = BigDecimal.valueOf(numLoops);
+			this.nesting = BigDecimal.valueOf(maxLoopNesting);
+			return this;
+		}
+
+		public boolean hasGraphMetrics() {
+			return essential != null;
+		}
 		
 		public boolean ok() {
 			return NumberUtils.gt0(edges) && NumberUtils.gt0(nodes) && NumberUtils.gt0(exits);
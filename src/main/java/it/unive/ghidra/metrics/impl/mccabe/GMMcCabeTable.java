@@ -0,0 +1,108 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import ghidra.program.model.address.Address;
+import it.unive.ghidra.metrics.impl.mccabe.GMMcCabeParser.Result;
+
+/**
+ * McCabe base counts of every function of a program, one row per function entry point.
+ *
+ * Rows are fixed when the table is created, sorted by entry point, and filled by index:
+ * parsers may fill different rows concurrently. The derived measures are computed on
+ * demand by {@link GMMcCabe.GMMcCabeFunctionRow}.
+ */
+public final class GMMcCabeTable {
+
+	private final Address[] entryPoints;
+	private final long[] edges, nodes, exits;
+	private int[] essential, residue, loops, nesting; // dominator analysis, null if not computed
+
+	/**
+	 * @param entryPoints the function entry points, in ascending order
+	 */
+	public GMMcCabeTable(Address[] entryPoints) {
+		this.entryPoints = entryPoints;
+		this.edges = new long[entryPoints.length];
+		this.nodes = new long[entryPoints.length];
+		this.exits = new long[entryPoints.length];
+	}
+
+	public void set(int row, long edges, long nodes, long exits) {
+		this.edges[row] = edges;
+		this.nodes[row] = nodes;
+		this.exits[row] = exits;
+	}
+
+	/**
+	 * Adds the counts of a code block to a row.
+	 */
+	public void add(int row, long edges, long nodes, long exits) {
+		this.edges[row] += edges;
+		this.nodes[row] += nodes;
+		this.exits[row] += exits;
+	}
+
+	/**
+	 * Sets the results of the dominator analysis of a row, see {@link GMControlFlowAnalysis}.
+	 */
+	public void setGraphMetrics(int row, int essentialComplexity, int residueComplexity, int numLoops, int maxLoopNesting) {
+		if (essential == null) {
+			essential = new int[entryPoints.length];
+			residue = new int[entryPoints.length];
+			loops = new int[entryPoints.length];
+			nesting = new int[entryPoints.length];
+		}
+		this.essential[row] = essentialComplexity;
+		this.residue[row] = residueComplexity;
+		this.loops[row] = numLoops;
+		this.nesting[row] = maxLoopNesting;
+	}
+
+	public boolean hasGraphMetrics() {
+		return essential != null;
+	}
+
+	public int size() {
+		return entryPoints.length;
+	}
+
+	/**
+	 * @return the row of the function with the given entry point, or a negative value if it is not in the table
+	 */
+	public int indexOf(Address entryPoint) {
+		return Arrays.binarySearch(entryPoints, entryPoint);
+	}
+
+	public Address getEntryPoint(int row) {
+		return entryPoints[row];
+	}
+
+	public long getNumEdges(int row) {
+		return edges[row];
+	}
+
+	public long getNumNodes(int row) {
+		return nodes[row];
+	}
+
+	public long getNumConnectedComponents(int row) {
+		return exits[row];
+	}
+
+	/**
+	 * @return e - n + p, or 0 if negative
+	 */
+	public long getComplexity(int row) {
+		return Math.max(edges[row] - nodes[row] + exits[row], 0);
+	}
+
+	public Result getResult(int row) {
+		Result result = new Result(BigDecimal.valueOf(edges[row]), BigDecimal.valueOf(nodes[row]), BigDecimal.valueOf(exits[row]));
+		if (hasGraphMetrics()) {
+			result = result.withGraphMetrics(essential[row], residue[row], loops[row], nesting[row]);
+		}
+		return result;
+	}
+}
@@ -1,8 +1,11 @@
 package it.unive.ghidra.metrics.impl.mccabe;
 
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 import java.awt.Font;
 
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -10,6 +13,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.SwingConstants;
+import javax.swing.table.DefaultTableModel;
 
 import it.unive.ghidra.metrics.base.GMBaseMetricWindow;
 
@@ -17,10 +21,15 @@ public class GMMcCabeWindow extends GMBaseMetricWindow<GMMcCabe, GMMcCabeControl
 
 	private JTable tableProgramMeasure;
 	private JTable tableFunctionMeasure;
+	private JTable tableAllFunctions;
+	private JButton btnComputeAllFunctions;
+	private JCheckBox chkIncremental;
 	private JTabbedPane tabbedPane;
 	private JPanel pnlNoFunctionSelected;
 	private JLabel lblNewLabel;
 
+	private static final String[] ALL_FUNCTIONS_COLUMNS = { "Function", "Edges", "Nodes", "Exits", "Complexity", "Essential", "Residue", "Loops", "Nesting" };
+
 	public GMMcCabeWindow(GMMcCabeController controller) {
 		super(controller);
 	}
@@ -29,6 +38,7 @@ public class GMMcCabeWindow extends GMBaseMetricWindow<GMMcCabe, GMMcCabeControl
 	public boolean init() {
 		populateProgramMeasures();
 		populateFunctionMeasures();
+		populateAllFunctions();
 
 		return true;
 	}
@@ -53,7 +63,17 @@ public class GMMcCabeWindow extends GMBaseMetricWindow<GMMcCabe, GMMcCabeControl
 			scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
 			scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
 
-			pnlProgramMetrics.add(tableProgramMeasure.getTableHeader(), BorderLayout.NORTH);
+			JPanel pnlTop = new JPanel();
+			pnlTop.setLayout(new BorderLayout(0, 0));
+			pnlProgramMetrics.add(pnlTop, BorderLayout.NORTH);
+
+			chkIncremental = new JCheckBox("Update on program changes");
+			chkIncremental.addActionListener(ae -> {
+				getController().setIncremental(chkIncremental.isSelected());
+			});
+			pnlTop.add(chkIncremental, BorderLayout.NORTH);
+			pnlTop.add(tableProgramMeasure.getTableHeader(), BorderLayout.SOUTH);
+
 			pnlProgramMetrics.add(scrollPane, BorderLayout.CENTER);
 		}
 
@@ -86,6 +106,33 @@ public class GMMcCabeWindow extends GMBaseMetricWindow<GMMcCabe, GMMcCabeControl
 			// BorderLayout.NORTH);
 			pnlFunctionMetrics.add(scrollPane, BorderLayout.CENTER);
 		}
+
+		// tab 2 - All functions
+		{
+			JPanel pnlAllFunctions = new JPanel();
+			tabbedPane.addTab("All functions", null, pnlAllFunctions, null);
+			pnlAllFunctions.setLayout(new BorderLayout(0, 0));
+
+			JPanel pnlTop = new JPanel();
+			pnlTop.setLayout(new FlowLayout(FlowLayout.LEADING));
+			pnlAllFunctions.add(pnlTop, BorderLayout.NORTH);
+
+			btnComputeAllFunctions = new JButton("Compute all functions");
+			btnComputeAllFunctions.addActionListener(ae -> {
+				getController().runTask("McCabe all functions", monitor -> getController().computeFunctionsTable());
+				populateAllFunctions();
+			});
+			pnlTop.add(btnComputeAllFunctions);
+
+			tableAllFunctions = new GMTable();
+
+			JScrollPane scrollPane = new JScrollPane(tableAllFunctions);
+			scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+			scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+
+			pnlAllFunctions.add(scrollPane, BorderLayout.CENTER);
+		}
+
 		return component;
 	}
 
@@ -99,6 +146,14 @@ public class GMMcCabeWindow extends GMBaseMetricWindow<GMMcCabe, GMMcCabeControl
 
 	private void populateProgramMeasures() {
 		populateMeasureTable(tableProgramMeasure, getMetric());
+		chkIncremental.setSelected(getController().isIncremental());
+	}
+
+	public void refreshProgramMeasures() {
+		populateProgramMeasures();
+		populateFunctionMeasures();
+
+		super.refresh();
 	}
 
 	private void populateFunctionMeasures() {
@@ -114,6 +169,32 @@ public class GMMcCabeWindow extends GMBaseMetricWindow<GMMcCabe, GMMcCabeControl
 		}
 	}
 
+	private void populateAllFunctions() {
+		if (!getController().hasFunctionsTable()) {
+			tableAllFunctions.setVisible(false);
+			btnComputeAllFunctions.setVisible(true);
+			return;
+		}
+
+		DefaultTableModel dtm = new NonEditableTableModel();
+		dtm.setColumnIdentifiers(ALL_FUNCTIONS_COLUMNS);
+
+		for (GMMcCabe row : getController().getFunctionsTableMetrics()) {
+			//@formatter:off
+			dtm.addRow(new Object[] {
+				((GMMcCabe.GMMcCabeFunctionRow) row).getFunction(),
+				row.getNumEdges(), row.getNumNodes(),
+				row.getNumConnectedComponents(), row.getComplexity(),
+				row.getEssentialComplexity(), row.getResidueComplexity(), row.getNumLoops(), row.getMaxLoopNesting()
+			});
+			//@formatter:on
+		}
+
+		tableAllFunctions.setModel(dtm);
+		tableAllFunctions.setVisible(true);
+		btnComputeAllFunctions.setVisible(false);
+	}
+
 	public boolean isProgramTabVisible() {
 		return tabbedPane.getSelectedIndex() == 0;
 	}
@@ -0,0 +1,78 @@
+package it.unive.ghidra.metrics.impl.similarity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ghidra.program.model.listing.Program;
+import ghidra.program.model.mem.MemoryAccessException;
+import ghidra.program.model.mem.MemoryBlock;
+
+/**
+ * Bytes of some memory blocks of a program, one block after the other in address order.
+ *
+ * Reads copy the block bytes straight into the buffer of the caller, e.g. the one of the
+ * compressor: no intermediate copy nor file is needed.
+ */
+public final class GMSectionsInputStream extends InputStream {
+
+	private final MemoryBlock[] blocks;
+	private final byte[] single; // buffer of read()
+	private int block;
+	private long offset; // in the current block
+
+	public GMSectionsInputStream(MemoryBlock[] blocks) {
+		this.blocks = blocks;
+		this.single = new byte[1];
+	}
+
+	/**
+	 * @param names block names to keep, all the executable blocks if empty
+	 * @return the executable initialized blocks of the program with one of the names, in address order
+	 */
+	public static MemoryBlock[] executableBlocks(Program program, Collection<String> names) {
+		List<MemoryBlock> selected = new ArrayList<>();
+		for (MemoryBlock memoryBlock : program.getMemory().getBlocks()) {
+			if (memoryBlock.isExecute() && memoryBlock.isInitialized()
+					&& (names.isEmpty() || names.contains(memoryBlock.getName()))) {
+				selected.add(memoryBlock);
+			}
+		}
+		return selected.toArray(new MemoryBlock[0]);
+	}
+
+	@Override
+	public int read() throws IOException {
+		return read(single, 0, 1) == 1 ? single[0] & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		while (block < blocks.length) {
+			MemoryBlock memoryBlock = blocks[block];
+			long remaining = memoryBlock.getSize() - offset;
+			if (remaining <= 0) {
+				block++;
+				offset = 0;
+				continue;
+			}
+
+			try {
+				int count = memoryBlock.getBytes(memoryBlock.getStart().add(offset), b, off, (int) Math.min(len, remaining));
+				if (count <= 0)
+					throw new IOException("Cannot read memory block " + memoryBlock.getName() + " at offset " + offset);
+
+				offset += count;
+				return count;
+			} catch (MemoryAccessException e) {
+				throw new IOException(e);
+			}
+		}
+		return -1;
+	}
+}
@@ -1,10 +1,20 @@
 package it.unive.ghidra.metrics.impl.similarity;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ghidra.app.util.exporter.ExporterException;
 import ghidra.app.util.importer.AutoImporter;
@@ -12,13 +22,17 @@ import ghidra.app.util.importer.MessageLog;
 import ghidra.framework.model.DomainFolder;
 import ghidra.program.model.listing.Function;
 import ghidra.program.model.listing.Program;
+import ghidra.program.model.mem.MemoryBlock;
 import ghidra.util.InvalidNameException;
 import ghidra.util.Msg;
 import ghidra.util.exception.CancelledException;
 import ghidra.util.exception.DuplicateNameException;
 import ghidra.util.exception.VersionException;
+import ghidra.util.task.TaskMonitor;
 import it.unive.ghidra.metrics.base.GMBaseMetric;
 import it.unive.ghidra.metrics.base.interfaces.GMMeasure;
+import it.unive.ghidra.metrics.impl.similarity.GMSimilarityController.Source;
+import it.unive.ghidra.metrics.util.GMOptions;
 import it.unive.ghidra.metrics.util.GMTaskMonitor;
 import it.unive.ghidra.metrics.util.NumberUtils;
 import it.unive.ghidra.metrics.util.PathHelper;
@@ -58,49 +72,272 @@ public class GMSimilarity extends GMBaseMetric<GMSimilarity, GMSimilarityControl
 	}
 
 
-	protected void createMeasures(List<Path> toCompute) throws ZipException, ExporterException, IOException {
+	protected void createMeasures(List<Path> toCompute, TaskMonitor monitor) throws ZipException, ExporterException, IOException, CancelledException {
 		Path thisProgramPath = getExecutablePath(getController().getProgram());
-		Path zipPath;
+
+		if (getController().getSource() == Source.SECTIONS && !getController().getZipper().canZipInMemory()) {
+			controller.printException(new Exception("The sections source needs a zipper compressing in memory, e.g. zip or gzip."));
+			return;
+		}
+
+		GMSimilarityBaseline baseline;
 		try {
-			zipPath = doZip(thisProgramPath);
+			baseline = new GMSimilarityBaseline(thisProgramPath);
 		} catch (ZipException x) {
 			controller.printException(new Exception("If you see this error, it is very likely that you do not have 'rzip' installed in your system."
 					+ " Please procede to installation in order to continue using this plugin.", x));
 			return;
 		}
 
-		Long zipSize = Files.size(zipPath);
-		
-		for (Path path: toCompute) {
+		// measures are created in input order, whatever the order the candidates are completed in
+		BigDecimal[] similarities = new BigDecimal[toCompute.size()];
+		try {
+			monitor.initialize(toCompute.size());
+
+			int workers = Math.min(GMOptions.getParallelism(GMSimilarityController.OPTION_WORKERS, 1), toCompute.size());
+			if (workers > 1) {
+				compareParallel(baseline, toCompute, similarities, workers, monitor);
+			} else {
+				for (int i = 0; i < toCompute.size(); i++) {
+					similarities[i] = baseline.compare(toCompute.get(i), monitor);
+					monitor.incrementProgress(1);
+				}
+			}
+
+		} finally {
+			// the candidates compared before a cancellation keep their measures
+			for (int i = 0; i < toCompute.size(); i++) {
+				if (similarities[i] != null) {
+					createMeasure(new GMSimilarityKey(thisProgramPath, toCompute.get(i)), similarities[i]);
+				}
+			}
+
+			baseline.close();
+		}
+	}
+
+	/**
+	 * Compares the candidates on <code>workers</code> threads, each with a monitor reporting to
+	 * <code>monitor</code>; the similarity of each candidate is stored at its index.
+	 */
+	private void compareParallel(GMSimilarityBaseline baseline, List<Path> toCompute, BigDecimal[] similarities, int workers, TaskMonitor monitor)
+			throws ZipException, IOException, CancelledException {
+		AtomicInteger next = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+		GMTaskMonitor parent = GMTaskMonitor.of(monitor);
+		List<GMTaskMonitor> monitors = new ArrayList<>();
+		try {
+			for (int w = 0; w < workers; w++) {
+				GMTaskMonitor workerMonitor = parent.child();
+				monitors.add(workerMonitor);
+
+				completion.submit(() -> {
+					int i;
+					while ((i = next.getAndIncrement()) < toCompute.size()) {
+						similarities[i] = baseline.compare(toCompute.get(i), workerMonitor);
+						workerMonitor.incrementProgress(1);
+					}
+					return null;
+				});
+			}
+
+			// in completion order: the first failure stops the other workers at once
+			for (int w = 0; w < workers; w++) {
+				completion.take().get();
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancelledException();
+
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancelledException) {
+				throw (CancelledException) e.getCause();
+			}
+			if (e.getCause() instanceof ZipException) {
+				throw (ZipException) e.getCause();
+			}
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException("Similarity worker failed", e.getCause());
+
+		} finally {
+			// stops the workers still running after a failure; the given monitor is not cancelled
+			monitors.forEach(workerMonitor -> workerMonitor.cancel());
+			executor.shutdownNow();
+
+			// the caller reads the similarities and closes the baseline once the workers are done
+			awaitTermination(executor);
+		}
+	}
+
+	/**
+	 * Waits for the workers to stop, at their next check of their cancelled monitors: their
+	 * termination orders their writes before the reads of the caller. An interrupt does not stop
+	 * the wait, it is restored afterwards.
+	 */
+	private static void awaitTermination(ExecutorService executor) {
+		boolean interrupted = false;
+		while (!executor.isTerminated()) {
+			try {
+				executor.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Bytes compared for a program, opened once per compression.
+	 */
+	@FunctionalInterface
+	private interface GMSimilarityInput {
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * Compressed size of the current program, compared with the candidates: their files are read
+	 * from disk, imported first if the {@link Source} needs the program. Sizes are computed
+	 * in memory when the zipper can, with the sizes cache; otherwise through zip files, the
+	 * files of each candidate in a directory of its own. Candidates can be compared concurrently.
+	 */
+	private final class GMSimilarityBaseline {
+
+		private final Source source;
+		private final Set<String> sections;
+		private final GMSimilarityCache cache;
+		private final GMSimilarityInput input;
+		private final String digest;
+		private final Path path;
+		private final Path zipPath; // null in memory
+		private final long zipSize;
+
+		private GMSimilarityBaseline(Path path) throws ZipException, IOException {
+			this.source = getController().getSource();
+			this.sections = getController().getSections();
+			this.path = path;
+			if (getController().getZipper().canZipInMemory()) {
+				this.cache = getController().getSizeCache();
+				this.input = source == Source.SECTIONS ? sectionsInput(getController().getProgram()) : fileInput(path);
+				if (input == null)
+					throw new IOException("No executable memory block selected in " + getController().getProgram().getName());
+
+				this.digest = cache != null ? digest(input) : null;
+				this.zipPath = null;
+				this.zipSize = zipSize(cache, new GMSimilarityInput[] { input }, digest);
+			} else {
+				this.cache = null;
+				this.input = null;
+				this.digest = null;
+				this.zipPath = doZip(TEMP_DIR, path);
+				this.zipSize = Files.size(zipPath);
+			}
+		}
+
+		private GMSimilarityInput fileInput(Path path) {
+			return () -> Files.newInputStream(path);
+		}
+
+		/**
+		 * @return the selected executable memory blocks of the program, or null if none is selected
+		 */
+		private GMSimilarityInput sectionsInput(Program program) {
+			MemoryBlock[] blocks = GMSectionsInputStream.executableBlocks(program, sections);
+			return blocks.length > 0 ? () -> new GMSectionsInputStream(blocks) : null;
+		}
+
+		/**
+		 * @return the similarity with the candidate, or null if it cannot be read (or imported)
+		 */
+		private BigDecimal compare(Path path, TaskMonitor monitor) throws ZipException, IOException, CancelledException {
+			monitor.checkCanceled();
+			monitor.setMessage("Similarity with " + path.getFileName());
+
+			if (!source.needsProgram()) {
+				if (!Files.isRegularFile(path)) {
+					Msg.warn(GMSimilarity.this, "Not a file: " + path);
+					return null;
+				}
+				return compareBytes(path, fileInput(path));
+			}
+
 			// data for other programs
-			Program otherProgram = importNewProgram(path);
-			if (otherProgram != null) {
+			Program otherProgram = importNewProgram(path, monitor);
+			if (otherProgram == null)
+				return null;
+
+			try {
 				otherProgram.setTemporary(true);
-				
-				Path otherZipPath = doZip(getExecutablePath(otherProgram));
+
+				Path otherProgramPath = getExecutablePath(otherProgram);
+				if (source != Source.SECTIONS)
+					return compareBytes(otherProgramPath, fileInput(otherProgramPath));
+
+				GMSimilarityInput otherInput = sectionsInput(otherProgram);
+				if (otherInput == null) {
+					Msg.warn(GMSimilarity.this, "No executable memory block selected in " + path);
+					return null;
+				}
+				return compareBytes(otherProgramPath, otherInput);
+			} finally {
+				otherProgram.release(GMSimilarity.this);
+			}
+		}
+
+		/**
+		 * @param otherProgramPath the file of the candidate, compressed by the file zippers
+		 * @param otherInput the bytes of the candidate, compressed in memory
+		 */
+		private BigDecimal compareBytes(Path otherProgramPath, GMSimilarityInput otherInput) throws ZipException, IOException {
+			if (zipPath == null) {
+				String otherDigest = cache != null ? digest(otherInput) : null;
+				long otherZipSize = zipSize(cache, new GMSimilarityInput[] { otherInput }, otherDigest);
+				long concatZipSize = zipSize(cache, new GMSimilarityInput[] { input, otherInput }, digest, otherDigest);
+				return similarity(zipSize, otherZipSize, concatZipSize);
+			}
+
+			Path pairDir = Files.createTempDirectory(TEMP_DIR, "pair_");
+			try {
+				Path otherZipPath = doZip(pairDir, otherProgramPath);
 				Long otherZipSize = Files.size(otherZipPath);
-				
-				Path concatPath = PathHelper.concatPaths(TEMP_DIR, zipPath, otherZipPath);
-				Path concatZipPath = doZip(concatPath);
+
+				// C(xy) compresses the two executables, as in memory, not their zip files
+				Path concatPath = PathHelper.concatPaths(pairDir, path, otherProgramPath);
+				Path concatZipPath = doZip(pairDir, concatPath);
 				Long concatZipSize = Files.size(concatZipPath);
-	
-				Double ncd = (1.00 * concatZipSize - Math.min(zipSize, otherZipSize)) / (1.00 * Math.max(zipSize, otherZipSize));
-				BigDecimal similarity = NumberUtils.sub(BigDecimal.ONE, NumberUtils.scale(new BigDecimal(ncd), 3));
-				if ( similarity.signum() == -1 ) {
-					similarity = similarity.negate();
+
+				return similarity(zipSize, otherZipSize, concatZipSize);
+			} finally {
+				PathHelper.deleteDirectory(pairDir);
+			}
+		}
+
+		/**
+		 * Deletes the zip file and saves the cache; failures are logged, so they do not hide the
+		 * result or the exception of the comparison.
+		 */
+		private void close() {
+			try {
+				if (zipPath != null) {
+					Files.deleteIfExists(zipPath);
+				}
+			} catch (IOException e) {
+				Msg.warn(GMSimilarity.this, "Cannot delete " + zipPath, e);
+			}
+			try {
+				if (cache != null) {
+					cache.save();
 				}
-				
-				GMSimilarityKey key = new GMSimilarityKey(thisProgramPath, path);
-				createMeasure(key, similarity);
-				
-				Files.deleteIfExists(otherZipPath);
-				Files.deleteIfExists(concatPath);
-				Files.deleteIfExists(concatZipPath);
+			} catch (IOException e) {
+				Msg.warn(GMSimilarity.this, "Cannot save the compressed sizes cache", e);
 			}
 		}
-		
-		Files.deleteIfExists(zipPath);
-		
 	}
 
 	@Override
@@ -108,19 +345,71 @@ public class GMSimilarity extends GMBaseMetric<GMSimilarity, GMSimilarityControl
 
 	}
 	
-	private Path doZip(Path file) throws ZipException {
-		return getController().getZipper().zip(TEMP_DIR, file);
+	private Path doZip(Path dir, Path file) throws ZipException {
+		return getController().getZipper().zip(dir, file);
+	}
+
+	/**
+	 * @return the compressed size of the concatenation of the files, read from the cache if present
+	 */
+	private long zipSize(GMSimilarityCache cache, GMSimilarityInput[] inputs, String... digests) throws ZipException, IOException {
+		if (cache == null)
+			return zipSize(inputs);
+
+		String key = GMSimilarityCache.key(getController().getZipperName(), getController().getZipper().getLevel(), digests);
+		long size = cache.get(key);
+		if (size < 0) {
+			size = zipSize(inputs);
+			cache.put(key, size);
+		}
+		return size;
+	}
+
+	/**
+	 * @return the compressed size of the concatenation of the inputs
+	 */
+	private long zipSize(GMSimilarityInput... inputs) throws ZipException, IOException {
+		InputStream[] streams = new InputStream[inputs.length];
+		try {
+			for (int i = 0; i < inputs.length; i++) {
+				streams[i] = inputs[i].open();
+			}
+			return getController().getZipper().zipSize(streams);
+		} finally {
+			for (InputStream stream : streams) {
+				if (stream != null) {
+					stream.close();
+				}
+			}
+		}
+	}
+
+	private static String digest(GMSimilarityInput input) throws IOException {
+		try (InputStream is = input.open()) {
+			return GMSimilarityCache.digest(is);
+		}
+	}
+
+	/**
+	 * @return 1 - NCD, where NCD = (C(xy) - min(C(x), C(y))) / max(C(x), C(y))
+	 */
+	private static BigDecimal similarity(long zipSize, long otherZipSize, long concatZipSize) {
+		Double ncd = (1.00 * concatZipSize - Math.min(zipSize, otherZipSize)) / (1.00 * Math.max(zipSize, otherZipSize));
+		BigDecimal similarity = NumberUtils.sub(BigDecimal.ONE, NumberUtils.scale(new BigDecimal(ncd), 3));
+		if ( similarity.signum() == -1 ) {
+			similarity = similarity.negate();
+		}
+		return similarity;
 	}
 	
 	private Path getExecutablePath(Program program) throws IOException {
 		return Path.of(program.getExecutablePath());
 	}
 	
-	private Program importNewProgram(Path path) throws IOException {
-		GMTaskMonitor monitor = new GMTaskMonitor();
+	private Program importNewProgram(Path path, TaskMonitor monitor) throws IOException, CancelledException {
 		try {
 			return AutoImporter.importByUsingBestGuess(path.toFile(), (DomainFolder)null, this, new MessageLog(), monitor);
-		} catch (CancelledException | DuplicateNameException | InvalidNameException | VersionException e) {
+		} catch (DuplicateNameException | InvalidNameException | VersionException e) {
 			controller.printException(e);
 		}
 		
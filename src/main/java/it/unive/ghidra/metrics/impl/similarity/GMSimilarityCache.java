@@ -0,0 +1,142 @@
+package it.unive.ghidra.metrics.impl.similarity;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk cache of compressed sizes, keyed by the SHA-256 of the raw input bytes, before the
+ * compression, the zipper name and its level: the size of the same bytes compressed the same way
+ * is computed once.
+ *
+ * Sizes of concatenations are keyed by the digests of their parts, in order. The cache holds at
+ * most <code>capacity</code> sizes: the least recently used one is evicted first, and the file
+ * keeps the entries in that order. The cache file is read on first use and written back by
+ * {@link #save()}. All the methods are thread safe.
+ */
+public final class GMSimilarityCache {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Path file;
+	private final Map<String, Long> sizes;
+	private boolean loaded;
+	private boolean modified;
+
+	public GMSimilarityCache(Path file, int capacity) {
+		this.file = file;
+		this.sizes = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the key of the compressed size of the concatenation of contents with the given digests
+	 */
+	public static String key(String zipperName, int level, String... digests) {
+		return zipperName + "." + level + "." + String.join("+", digests);
+	}
+
+	/**
+	 * @return the SHA-256 of the stream content, in hexadecimal
+	 */
+	public static String digest(InputStream is) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int count;
+		while ((count = is.read(buffer)) > 0) {
+			digest.update(buffer, 0, count);
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the cached size, or -1 if it is not in the cache
+	 */
+	public synchronized long get(String key) throws IOException {
+		load();
+		Long size = sizes.get(key);
+		return size != null ? size : -1;
+	}
+
+	public synchronized void put(String key, long size) throws IOException {
+		load();
+		sizes.put(key, size);
+		modified = true;
+	}
+
+	/**
+	 * Writes the cache file if sizes have been added since it was read, one <code>key=size</code>
+	 * line per entry, least recently used first: the new content replaces the file at once, a
+	 * concurrent reader never sees a partial file.
+	 */
+	public synchronized void save() throws IOException {
+		if (!modified)
+			return;
+
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.ISO_8859_1)) {
+				writer.write("#GhidraMetrics compressed sizes");
+				writer.newLine();
+				for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+					writer.write(entry.getKey() + "=" + entry.getValue());
+					writer.newLine();
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		modified = false;
+	}
+
+	private void load() throws IOException {
+		if (loaded)
+			return;
+
+		if (Files.isRegularFile(file)) {
+			try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					int separator = line.lastIndexOf('=');
+					if (line.startsWith("#") || separator < 0)
+						continue;
+
+					try {
+						sizes.put(line.substring(0, separator), Long.parseLong(line.substring(separator + 1).trim()));
+					} catch (NumberFormatException e) {
+						// a damaged entry is computed again
+					}
+				}
+			}
+		}
+		loaded = true;
+	}
+}
@@ -2,28 +2,88 @@ package it.unive.ghidra.metrics.impl.similarity;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import ghidra.app.util.exporter.ExporterException;
+import ghidra.framework.Application;
 import ghidra.program.model.listing.Program;
+import ghidra.util.task.TaskMonitor;
 import it.unive.ghidra.metrics.GhidraMetricsPlugin;
 import it.unive.ghidra.metrics.base.GMBaseMetricController;
 import it.unive.ghidra.metrics.base.interfaces.GMZipper;
 import it.unive.ghidra.metrics.impl.GhidraMetricsFactory;
+import it.unive.ghidra.metrics.util.GMOptions;
 import it.unive.ghidra.metrics.util.ZipHelper.ZipException;
 
 public class GMSimilarityController extends GMBaseMetricController<GMSimilarity, GMSimilarityController, GMSimilarityWindow> {
 
+	/**
+	 * Keeps the compressed sizes in an on-disk cache, see {@link GMSimilarityCache} (default true).
+	 */
+	public static final String OPTION_SIZE_CACHE = "similarity-size-cache";
+
+	/**
+	 * Path of the compressed sizes cache file (default in the Ghidra user settings directory).
+	 */
+	public static final String OPTION_SIZE_CACHE_FILE = "similarity-size-cache-file";
+
+	/**
+	 * Maximum number of compressed sizes kept in the cache file (default 65536).
+	 */
+	public static final String OPTION_SIZE_CACHE_ENTRIES = "similarity-size-cache-entries";
+
+	/**
+	 * Number of candidates compared concurrently (default 1, 0 for all the available processors).
+	 */
+	public static final String OPTION_WORKERS = "similarity-workers";
+
+	/**
+	 * Bytes of the candidates compared with the program, see {@link Source} (default import).
+	 */
+	public static final String OPTION_SOURCE = "similarity-source";
+
+	/**
+	 * Names of the memory blocks compared by the sections source, comma separated, e.g. <code>.text</code>
+	 * (default all the executable blocks).
+	 */
+	public static final String OPTION_SECTIONS = "similarity-sections";
+
+	public enum Source {
+		IMPORT, // the executable file, once the candidate has been imported as a program
+		RAW, // the file read from disk, without importing it
+		SECTIONS; // the executable memory blocks of the imported program, see OPTION_SECTIONS
+
+		/**
+		 * @return true if the candidates must be imported as programs
+		 */
+		public boolean needsProgram() {
+			return this != RAW;
+		}
+	}
+
+	private static final String SIZE_CACHE_FILENAME = "ghidra_metrics_sizes.properties";
+
 	private List<Path> selectedFiles;
 	private GMZipper zipper;
+	private GMSimilarityCache sizeCache;
 	
 	public GMSimilarityController(Program program) {
 		super(program, GMSimilarity.class);
 	}
 
+	public GMSimilarityController(Program program, TaskMonitor monitor) {
+		super(program, GMSimilarity.class, monitor);
+	}
+
 	public GMSimilarityController(GhidraMetricsPlugin plugin) {
 		super(plugin, GMSimilarity.class, GMSimilarityWindow.class);
 	}
+
+	public GMSimilarityController(GhidraMetricsPlugin plugin, TaskMonitor monitor) {
+		super(plugin, GMSimilarity.class, GMSimilarityWindow.class, monitor);
+	}
 	
 	@Override
 	protected void init() {	
@@ -46,11 +106,13 @@ public class GMSimilarityController extends GMBaseMetricController<GMSimilarity,
 		getMetric().clearMeasures();
 		
 		if (hasSelectedFiles()) {
-			try {
-				getMetric().createMeasures(selectedFiles);
-			} catch (ZipException | ExporterException | IOException e) {
-				printException(e);
-			}			
+			runTask("Similarity", monitor -> {
+				try {
+					getMetric().createMeasures(selectedFiles, monitor);
+				} catch (ZipException | ExporterException | IOException e) {
+					printException(e);
+				}
+			});
 		}
 
 		if (guiEnabled) {
@@ -58,10 +120,46 @@ public class GMSimilarityController extends GMBaseMetricController<GMSimilarity,
 		}
 	}
 
+	public Source getSource() {
+		return GMOptions.getEnum(OPTION_SOURCE, Source.class, Source.IMPORT);
+	}
+
+	/**
+	 * @return the names of the memory blocks compared by the sections source, empty for all the executable blocks
+	 */
+	public Set<String> getSections() {
+		Set<String> sections = new HashSet<>();
+		for (String name : GMOptions.get(OPTION_SECTIONS, "").split(",")) {
+			if (!name.isBlank()) {
+				sections.add(name.trim());
+			}
+		}
+		return sections;
+	}
+
 	public GMZipper getZipper() {
 		return zipper;
 	}
 
+	public String getZipperName() {
+		return GhidraMetricsFactory.getZipperName(zipper);
+	}
+
+	/**
+	 * @return the compressed sizes cache, or null if it is disabled
+	 */
+	public synchronized GMSimilarityCache getSizeCache() {
+		if (!GMOptions.getBoolean(OPTION_SIZE_CACHE, true) || getZipperName() == null)
+			return null;
+
+		if (sizeCache == null) {
+			String defaultFile = Application.getUserSettingsDirectory().toPath().resolve(SIZE_CACHE_FILENAME).toString();
+			sizeCache = new GMSimilarityCache(Path.of(GMOptions.get(OPTION_SIZE_CACHE_FILE, defaultFile)),
+					GMOptions.getInt(OPTION_SIZE_CACHE_ENTRIES, 1 << 16));
+		}
+		return sizeCache;
+	}
+
 	public void setZipper(GMZipper zipper) {
 		this.zipper = zipper;
 	}
@@ -4,12 +4,14 @@ import java.util.HashMap;
 import java.util.Map;
 
 import it.unive.ghidra.metrics.impl.similarity.GMSimilarity;
+import it.unive.ghidra.metrics.util.GMOptions;
 
 public final class GMScriptArgumentParser {
 	private static final String ARG_VALUE_SEPARATOR = "=";
 
 	public static Map<GMScriptArgument<?>, String> parse(String... args) throws GMScriptException {
 		Map<GMScriptArgument<?>, String> map = new HashMap<>();
+		GMOptions.clear();
 
 		if (args != null && args.length > 0) {
 			for (String token : args) {
@@ -24,6 +26,11 @@ public final class GMScriptArgumentParser {
 				String argValue = split[1];
 
 				GMScriptArgument<?> arg = GMScriptArgument.byArgName(argName);
+				if (arg == GMScriptArgument.ARG_DEFAULT) {
+					// not a script argument: tuning option of a metric implementation
+					GMOptions.set(argName, argValue);
+					continue;
+				}
 				map.put(arg, argValue);
 			}
 		}
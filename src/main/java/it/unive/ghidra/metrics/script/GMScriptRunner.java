@@ -132,12 +132,18 @@ public class GMScriptRunner {
 		similarityZipper.setRequired(false);
 		options.addOption(similarityZipper);
 
+		Option metricOption = new Option("O", "option", true,
+				"metric tuning option as name=value (can be repeated)");
+		metricOption.setRequired(false);
+		options.addOption(metricOption);
+
 		return options;
 	}
 
 	private Path projectPath;
 	private Path ghidraAnalyzeHeadlessPath;
 	private final Map<GMScriptArgument<?>, String> scriptArgs = new HashMap<>();
+	private final List<String> metricOptions = new ArrayList<>();
 
 	private boolean recursive;
 	private boolean verbose;
@@ -190,6 +196,12 @@ public class GMScriptRunner {
 			addGhidraArg(GMScriptArgument.ARG_SIMILARITY_ZIPPER, cmd.getOptionValue("similarity-zipper"));
 		}
 
+		if (cmd.hasOption("option")) {
+			for (String metricOption : cmd.getOptionValues("option")) {
+				addMetricOption(metricOption);
+			}
+		}
+
 		if (cmd.hasOption("recursive")) {
 			setRecursive(true);
 		}
@@ -214,6 +226,13 @@ public class GMScriptRunner {
 		scriptArgs.put(arg, value);
 	}
 
+	public final void addMetricOption(String option) {
+		if (option.split("=").length != 2) {
+			throw new IllegalArgumentException("Invalid metric option, expected name=value: " + option);
+		}
+		metricOptions.add(option);
+	}
+
 	public final void run() throws IOException {
 		List<Path> pathsToProcess = getExecutableFilesInPath(inPath);
 		runGhidraHeadlessAnalyzer(pathsToProcess);
@@ -334,6 +353,7 @@ public class GMScriptRunner {
 		commands.add("-postScript");
 		commands.add(SCRIPT_NAME);
 		commands.addAll(serializeScriptArgs());
+		commands.addAll(metricOptions);
 		/* ----- */
 		commands.add("-deleteProject");
 		commands.add("-analysisTimeoutPerFile");
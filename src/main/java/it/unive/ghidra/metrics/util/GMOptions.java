@@ -0,0 +1,99 @@
+package it.unive.ghidra.metrics.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tuning switches for the metric implementations, as <code>name=value</code> pairs.
+ *
+ * In headless mode they are filled from the script arguments that do not match any
+ * {@link it.unive.ghidra.metrics.script.GMScriptArgument}; the GUI uses the defaults.
+ */
+public class GMOptions {
+
+	private static final Map<String, String> options = new HashMap<>();
+
+	public static synchronized void set(String name, String value) {
+		options.put(name, value);
+	}
+
+	public static synchronized void clear() {
+		options.clear();
+	}
+
+	public static synchronized Map<String, String> getAll() {
+		return Collections.unmodifiableMap(new HashMap<>(options));
+	}
+
+	public static synchronized String get(String name, String defaultValue) {
+		String value = options.get(name);
+		return StringUtils.isEmpty(value) ? defaultValue : value.trim();
+	}
+
+	public static int getInt(String name, int defaultValue) {
+		String value = get(name, null);
+		if (value == null)
+			return defaultValue;
+
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Option '" + name + "' is not a number: " + value, e);
+		}
+	}
+
+	public static long getLong(String name, long defaultValue) {
+		String value = get(name, null);
+		if (value == null)
+			return defaultValue;
+
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Option '" + name + "' is not a number: " + value, e);
+		}
+	}
+
+	public static double getDouble(String name, double defaultValue) {
+		String value = get(name, null);
+		if (value == null)
+			return defaultValue;
+
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Option '" + name + "' is not a number: " + value, e);
+		}
+	}
+
+	public static boolean getBoolean(String name, boolean defaultValue) {
+		String value = get(name, null);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+
+	/**
+	 * Enum values are matched ignoring case, '-' and '_' are interchangeable.
+	 */
+	public static <E extends Enum<E>> E getEnum(String name, Class<E> enumClass, E defaultValue) {
+		String value = get(name, null);
+		if (value == null)
+			return defaultValue;
+
+		String normalized = value.replace('-', '_');
+		for (E constant : enumClass.getEnumConstants()) {
+			if (constant.name().equalsIgnoreCase(normalized)) {
+				return constant;
+			}
+		}
+		throw new IllegalArgumentException("Option '" + name + "' has an invalid value: " + value);
+	}
+
+	/**
+	 * Degree of parallelism option: <code>0</code> (or a negative value) means all the available processors.
+	 */
+	public static int getParallelism(String name, int defaultValue) {
+		int parallelism = getInt(name, defaultValue);
+		return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+	}
+}
@@ -0,0 +1,74 @@
+package it.unive.ghidra.metrics.util;
+
+import ghidra.framework.model.DomainObject;
+import ghidra.framework.model.DomainObjectChangeRecord;
+import ghidra.framework.model.DomainObjectChangedEvent;
+import ghidra.program.model.address.Address;
+import ghidra.program.util.ChangeManager;
+import ghidra.program.util.ProgramChangeRecord;
+
+/**
+ * Decodes the program change events that can affect code metrics.
+ */
+public class GMProgramChanges {
+
+	public interface Handler {
+
+		/**
+		 * Code units or bytes in <code>[start, end]</code> have changed.
+		 */
+		void codeChanged(Address start, Address end);
+
+		/**
+		 * The function at <code>entryPoint</code> has been removed or its body has changed.
+		 */
+		void functionChanged(Address entryPoint);
+
+		/**
+		 * Changes cannot be tracked precisely (e.g. undo/redo): everything must be recomputed.
+		 */
+		void allChanged();
+	}
+
+	public static void dispatch(DomainObjectChangedEvent ev, Handler handler) {
+		if (ev.containsEvent(DomainObject.DO_OBJECT_RESTORED)) {
+			handler.allChanged();
+			return;
+		}
+
+		for (int i = 0; i < ev.numRecords(); i++) {
+			DomainObjectChangeRecord record = ev.getChangeRecord(i);
+			if (!(record instanceof ProgramChangeRecord))
+				continue;
+
+			ProgramChangeRecord programRecord = (ProgramChangeRecord) record;
+			switch (record.getEventType()) {
+			case ChangeManager.DOCR_CODE_ADDED:
+			case ChangeManager.DOCR_CODE_REMOVED:
+			case ChangeManager.DOCR_CODE_REPLACED:
+			case ChangeManager.DOCR_MEMORY_BYTES_CHANGED:
+				if (programRecord.getStart() != null) {
+					Address end = programRecord.getEnd() != null ? programRecord.getEnd() : programRecord.getStart();
+					handler.codeChanged(programRecord.getStart(), end);
+				}
+				break;
+			case ChangeManager.DOCR_FUNCTION_ADDED:
+			case ChangeManager.DOCR_FUNCTION_REMOVED:
+			case ChangeManager.DOCR_FUNCTION_BODY_CHANGED:
+				if (programRecord.getStart() != null) {
+					handler.functionChanged(programRecord.getStart());
+				}
+				break;
+			case ChangeManager.DOCR_MEMORY_BLOCK_ADDED:
+			case ChangeManager.DOCR_MEMORY_BLOCK_REMOVED:
+			case ChangeManager.DOCR_MEMORY_BLOCK_MOVED:
+			case ChangeManager.DOCR_MEMORY_BLOCK_SPLIT:
+			case ChangeManager.DOCR_MEMORY_BLOCKS_JOINED:
+				handler.allChanged();
+				return;
+			default:
+				break;
+			}
+		}
+	}
+}
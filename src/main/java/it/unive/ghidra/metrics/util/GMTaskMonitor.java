@@ -1,9 +1,215 @@
 package it.unive.ghidra.metrics.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ghidra.util.exception.CancelledException;
+import ghidra.util.task.TaskMonitor;
 import ghidra.util.task.TaskMonitorAdapter;
 
+/**
+ * Monitor of a metric computation: cancellation, progress (units done out of a total) and an
+ * optional time budget.
+ *
+ * Messages and progress are forwarded to a delegate, e.g. the monitor of a Ghidra task dialog or
+ * of the headless script, which can also cancel the computation. Once the time budget has elapsed
+ * the monitor is cancelled: the budget applies to each top-level computation, delimited by
+ * {@link #begin()} and {@link #end()}. Workers of a parallel computation use a {@link #child()} monitor:
+ * cancelling a child stops that worker only. All the methods can be called by concurrent workers.
+ */
 public class GMTaskMonitor extends TaskMonitorAdapter {
 
-	// DEFAULT IMPLEMENTATION
+	private volatile TaskMonitor delegate;
+
+	private volatile long timeBudgetMillis;
+	private volatile long deadline; // System.nanoTime(), meaningful only with a time budget
+	private volatile boolean cancelled;
+	private volatile boolean timedOut;
+
+	private volatile String message;
+	private volatile long maximum;
+	private final AtomicLong progress;
+	private final AtomicInteger depth; // computations running, see begin
+
+	public GMTaskMonitor() {
+		this(null);
+	}
+
+	/**
+	 * @param delegate monitor receiving messages and progress, or null
+	 */
+	public GMTaskMonitor(TaskMonitor delegate) {
+		super(true);
+		this.delegate = delegate;
+		this.progress = new AtomicLong();
+		this.depth = new AtomicInteger();
+	}
+
+	/**
+	 * @return a monitor reporting progress to this one, cancelled together with it
+	 */
+	public GMTaskMonitor child() {
+		return new GMTaskMonitor(this);
+	}
+
+	/**
+	 * @return <code>monitor</code> itself if it is a {@link GMTaskMonitor}, otherwise a monitor delegating to it
+	 */
+	public static GMTaskMonitor of(TaskMonitor monitor) {
+		return monitor instanceof GMTaskMonitor ? (GMTaskMonitor) monitor : new GMTaskMonitor(monitor);
+	}
+
+	/**
+	 * @return the previous delegate
+	 */
+	public TaskMonitor setDelegate(TaskMonitor delegate) {
+		TaskMonitor previous = this.delegate;
+		this.delegate = delegate;
+		return previous;
+	}
+
+	/**
+	 * Sets the time budget of a computation and restarts the monitor.
+	 *
+	 * @param timeBudgetMillis milliseconds before the monitor is cancelled, 0 or less for no limit
+	 */
+	public void setTimeBudget(long timeBudgetMillis) {
+		this.timeBudgetMillis = timeBudgetMillis;
+		restart();
+	}
+
+	/**
+	 * Starts a computation, paired with {@link #end()}: the outermost one restarts the monitor and
+	 * its time budget, the nested ones share them.
+	 */
+	public void begin() {
+		if (depth.getAndIncrement() == 0) {
+			restart();
+		}
+	}
+
+	public void end() {
+		depth.decrementAndGet();
+	}
+
+	/**
+	 * Clears cancellation and progress and starts the time budget again, before a new computation.
+	 */
+	public void restart() {
+		cancelled = false;
+		timedOut = false;
+		maximum = 0;
+		progress.set(0);
+		deadline = System.nanoTime() + timeBudgetMillis * 1_000_000L;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		if (cancelled)
+			return true;
+
+		TaskMonitor delegate = this.delegate;
+		if (delegate != null && delegate.isCancelled()) {
+			cancelled = true;
+		} else if (timeBudgetMillis > 0 && System.nanoTime() - deadline >= 0) {
+			timedOut = true;
+			cancelled = true;
+		}
+		return cancelled;
+	}
+
+	@Override
+	public void checkCanceled() throws CancelledException {
+		if (isCancelled()) {
+			throw timedOut ? new CancelledException("Time budget of " + timeBudgetMillis + " ms elapsed") : new CancelledException();
+		}
+	}
+
+	/**
+	 * Cancels this monitor only: the delegate is not cancelled.
+	 */
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+
+	@Override
+	public void clearCanceled() {
+		cancelled = false;
+		timedOut = false;
+	}
+
+	@Override
+	public void setMessage(String message) {
+		this.message = message;
+
+		TaskMonitor delegate = this.delegate;
+		if (delegate != null) {
+			delegate.setMessage(message);
+		}
+	}
+
+	@Override
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public void initialize(long max) {
+		maximum = max;
+		progress.set(0);
+
+		TaskMonitor delegate = this.delegate;
+		if (delegate != null) {
+			delegate.initialize(max);
+		}
+	}
+
+	@Override
+	public void setMaximum(long max) {
+		maximum = max;
+
+		TaskMonitor delegate = this.delegate;
+		if (delegate != null) {
+			delegate.setMaximum(max);
+		}
+	}
+
+	@Override
+	public long getMaximum() {
+		return maximum;
+	}
+
+	@Override
+	public void setProgress(long value) {
+		progress.set(value);
+
+		TaskMonitor delegate = this.delegate;
+		if (delegate != null) {
+			delegate.setProgress(value);
+		}
+	}
+
+	@Override
+	public void incrementProgress(long incrementAmount) {
+		progress.addAndGet(incrementAmount);
+
+		TaskMonitor delegate = this.delegate;
+		if (delegate != null) {
+			delegate.incrementProgress(incrementAmount);
+		}
+	}
+
+	@Override
+	public long getProgress() {
+		return progress.get();
+	}
 
+	@Override
+	public void setIndeterminate(boolean indeterminate) {
+		TaskMonitor delegate = this.delegate;
+		if (delegate != null) {
+			delegate.setIndeterminate(indeterminate);
+		}
+	}
 }
@@ -7,6 +7,25 @@ import java.math.RoundingMode;
 public class NumberUtils {
 
 	private static final MathContext DEFAULT_CONTEXT = MathContext.DECIMAL64;
+	private static final double LN_2 = Math.log(2);
+
+	public enum Backend {
+		PRECISE, // BigDecimal arithmetic on every derived measure
+		FAST; // primitive arithmetic, BigDecimal only for the final values
+	}
+
+	/**
+	 * Arithmetic used for the derived measures, see {@link Backend}.
+	 */
+	public static final String OPTION_BACKEND = "numeric-backend";
+
+	public static Backend backend() {
+		return GMOptions.getEnum(OPTION_BACKEND, Backend.class, Backend.PRECISE);
+	}
+
+	public static boolean isFast() {
+		return backend() == Backend.FAST;
+	}
 
 	public static boolean notEqual(BigDecimal a, BigDecimal b) {
 		return !isEqual(a, b);
@@ -76,6 +95,17 @@ public class NumberUtils {
 		return !gte0(a);
 	}
 	
+	public static double fastLog2(double n) {
+		return Math.log(n) / LN_2;
+	}
+
+	/**
+	 * @return the shortest decimal converting back to the same primitive result, as {@link Double#toString}, or null if it is not finite
+	 */
+	public static BigDecimal valueOf(double a) {
+		return Double.isFinite(a) ? BigDecimal.valueOf(a) : null;
+	}
+
 	public static BigDecimal scale(BigDecimal a, int scale) {
 		return a.setScale(scale, RoundingMode.CEILING);
 	}
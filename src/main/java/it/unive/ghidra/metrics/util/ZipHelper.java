@@ -4,6 +4,8 @@ import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.UUID;
@@ -11,15 +13,52 @@ import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import it.unive.ghidra.metrics.base.interfaces.GMZipper;
+
 public class ZipHelper {
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// the entry name is stored in the zip: files and in-memory inputs share it, so their sizes match
+	private static final String ENTRY_NAME = "data";
+
+	/**
+	 * Compressed size of the concatenation of some inputs.
+	 */
+	@FunctionalInterface
+	public interface SizeFunction {
+		long zipSize(InputStream... inputs) throws ZipException;
+	}
+
+	/**
+	 * @return a zipper writing files with <code>zipper</code> and computing in-memory sizes with <code>sizeFunction</code>
+	 */
+	public static GMZipper inMemory(GMZipper zipper, SizeFunction sizeFunction) {
+		return new GMZipper() {
+			@Override
+			public Path zip(Path dir, Path file) throws ZipException {
+				return zipper.zip(dir, file);
+			}
+
+			@Override
+			public boolean canZipInMemory() {
+				return true;
+			}
+
+			@Override
+			public long zipSize(InputStream... inputs) throws ZipException {
+				return sizeFunction.zipSize(inputs);
+			}
+		};
+	}
+
 	public static Path zip(Path dir, Path file) throws ZipException {
 		Path zip = getZipPath(dir, file, ".zip");
 
 		try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(zip.toFile()));
 				ZipOutputStream zos = new ZipOutputStream(bos)) {
 			try (FileInputStream fis = new FileInputStream(file.toFile())) {
-				ZipEntry zipEntry = new ZipEntry(file.getFileName().toString());
+				ZipEntry zipEntry = new ZipEntry(ENTRY_NAME);
 				zos.putNextEntry(zipEntry);
 
 				byte[] buffer = new byte[1024];
@@ -62,6 +101,52 @@ public class ZipHelper {
 		return zip;
 	}
 
+	/**
+	 * Same compression as {@link #zip(Path, Path)}, one entry holding the concatenation of the
+	 * inputs, written to a sink that only counts the bytes: the size is the one of the zip file of
+	 * the same bytes.
+	 */
+	public static long zipSize(InputStream... inputs) throws ZipException {
+		CountingOutputStream cos = new CountingOutputStream();
+
+		try (ZipOutputStream zos = new ZipOutputStream(cos)) {
+			zos.putNextEntry(new ZipEntry(ENTRY_NAME));
+			copy(inputs, zos);
+			zos.closeEntry();
+			zos.finish();
+		} catch(IOException e) {
+			throw new ZipException(e);
+		}
+
+		return cos.getCount();
+	}
+
+	/**
+	 * Same compression as {@link #gzip(Path, Path)}, written to a sink that only counts the bytes.
+	 */
+	public static long gzipSize(InputStream... inputs) throws ZipException {
+		CountingOutputStream cos = new CountingOutputStream();
+
+		try (GZIPOutputStream zos = new GZIPOutputStream(cos, BUFFER_SIZE)) {
+			copy(inputs, zos);
+			zos.finish();
+		} catch(IOException e) {
+			throw new ZipException(e);
+		}
+
+		return cos.getCount();
+	}
+
+	private static void copy(InputStream[] inputs, OutputStream out) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		for (InputStream input : inputs) {
+			int count;
+			while ((count = input.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+		}
+	}
+
 	/**
 	 * If 'rzip' program is not installed, an IOException will be thrown
 	 * 
@@ -106,6 +191,27 @@ public class ZipHelper {
 		return dir.resolve(Path.of(basename + "_" + uuid + ext));
 	}
 	
+	/**
+	 * Output stream discarding the bytes written to it, only their number is kept.
+	 */
+	public static class CountingOutputStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+		public long getCount() {
+			return count;
+		}
+	}
+
 	public static class ZipException extends Exception {
 		private static final long serialVersionUID = 1L;
 
@@ -0,0 +1,141 @@
+package it.unive.ghidra.metrics.impl.callgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ghidra.program.model.address.Address;
+import ghidra.util.task.TaskMonitor;
+
+public class GMCallGraphAnalysisTest {
+
+	/**
+	 * @param calls caller and callee of each call, duplicates allowed
+	 */
+	private static GMCallGraphAnalysis analyze(int numFunctions, int[][] calls) throws Exception {
+		int[] callers = new int[calls.length];
+		int[] callees = new int[calls.length];
+		for (int i = 0; i < calls.length; i++) {
+			callers[i] = calls[i][0];
+			callees[i] = calls[i][1];
+		}
+		// entry points are only needed to look functions up
+		GMCallGraphSnapshot graph = GMCallGraphSnapshot.of(null, 0, new Address[numFunctions], callers, callees, calls.length);
+		return GMCallGraphAnalysis.analyze(graph, TaskMonitor.DUMMY);
+	}
+
+	@Test
+	public void chainDepthsCountDownToTheLeaf() throws Exception {
+		GMCallGraphAnalysis analysis = analyze(4, new int[][] { { 0, 1 }, { 1, 2 }, { 2, 3 } });
+
+		assertEquals(4, analysis.numComponents());
+		assertEquals(0, analysis.numRecursive());
+		for (int fn = 0; fn < 4; fn++) {
+			assertEquals(3 - fn, analysis.getCallDepth(fn));
+			assertEquals(1, analysis.getComponentSize(fn));
+			assertFalse(analysis.isRecursive(fn));
+		}
+		assertEquals(3, analysis.maxCallDepth());
+	}
+
+	@Test
+	public void recursiveFunctionsShareTheirComponent() throws Exception {
+		// 0 and 1 call each other, 3 calls itself and 0
+		GMCallGraphAnalysis analysis = analyze(4, new int[][] { { 0, 1 }, { 1, 0 }, { 1, 2 }, { 3, 3 }, { 3, 0 } });
+
+		assertEquals(3, analysis.numComponents());
+		assertEquals(analysis.getComponent(0), analysis.getComponent(1));
+		assertEquals(2, analysis.getComponentSize(0));
+		assertTrue(analysis.isRecursive(0));
+		assertTrue(analysis.isRecursive(1));
+		assertFalse(analysis.isRecursive(2));
+		assertTrue(analysis.isRecursive(3));
+		assertEquals(3, analysis.numRecursive());
+
+		assertEquals(1, analysis.getCallDepth(0));
+		assertEquals(1, analysis.getCallDepth(1));
+		assertEquals(0, analysis.getCallDepth(2));
+		assertEquals(2, analysis.getCallDepth(3));
+	}
+
+	@Test
+	public void duplicateCallsAreCallSitesButOneEdge() throws Exception {
+		GMCallGraphAnalysis analysis = analyze(3, new int[][] { { 0, 1 }, { 0, 1 }, { 0, 2 }, { 2, 1 } });
+
+		assertEquals(3, analysis.getGraph().numEdges());
+		assertEquals(3, analysis.getCallSites(0));
+		assertEquals(2, analysis.getFanOut(0));
+		assertEquals(2, analysis.getFanIn(1));
+		assertEquals(4, analysis.numCallSites());
+		assertEquals(2, analysis.maxFanIn());
+		assertEquals(2, analysis.maxFanOut());
+	}
+
+	@Test
+	public void longChainsDoNotOverflowTheStack() throws Exception {
+		int n = 200_000;
+		int[][] calls = new int[n][];
+		for (int fn = 0; fn < n; fn++) {
+			calls[fn] = new int[] { fn, (fn + 1) % n };
+		}
+		GMCallGraphAnalysis analysis = analyze(n, calls);
+
+		assertEquals(1, analysis.numComponents());
+		assertEquals(n, analysis.getComponentSize(0));
+		assertEquals(0, analysis.maxCallDepth());
+	}
+
+	@Test
+	public void randomGraphsMatchTheTransitiveClosure() throws Exception {
+		Random random = new Random(3);
+		for (int round = 0; round < 200; round++) {
+			int n = 1 + random.nextInt(12);
+			int[][] calls = new int[random.nextInt(3 * n)][];
+			boolean[][] reach = new boolean[n][n];
+			for (int i = 0; i < calls.length; i++) {
+				calls[i] = new int[] { random.nextInt(n), random.nextInt(n) };
+				reach[calls[i][0]][calls[i][1]] = true;
+			}
+			for (int k = 0; k < n; k++) {
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < n; j++) {
+						reach[i][j] |= reach[i][k] && reach[k][j];
+					}
+				}
+			}
+			GMCallGraphAnalysis analysis = analyze(n, calls);
+
+			for (int i = 0; i < n; i++) {
+				assertEquals(reach[i][i], analysis.isRecursive(i));
+				for (int j = 0; j < n; j++) {
+					boolean together = i == j || reach[i][j] && reach[j][i];
+					assertEquals(together, analysis.getComponent(i) == analysis.getComponent(j));
+				}
+			}
+
+			// callee components first; depth is the longest chain of calls between components
+			for (int[] call : calls) {
+				int caller = analysis.getComponent(call[0]);
+				int callee = analysis.getComponent(call[1]);
+				assertTrue(callee <= caller);
+				if (callee != caller) {
+					assertTrue(analysis.getCallDepth(call[0]) >= analysis.getCallDepth(call[1]) + 1);
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				int depth = analysis.getCallDepth(i);
+				boolean tight = depth == 0;
+				for (int[] call : calls) {
+					if (analysis.getComponent(call[0]) == analysis.getComponent(i) && analysis.getComponent(call[1]) != analysis.getComponent(i)) {
+						tight |= analysis.getCallDepth(call[1]) + 1 == depth;
+					}
+				}
+				assertTrue(tight);
+			}
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.junit.Test;
+
+public class GMHalsteadHistogramTest {
+
+	/**
+	 * Counts a slice of the tokens, splitting it in halves merged as by the parallel parser.
+	 */
+	private static final class CountTask extends RecursiveTask<GMHalsteadHistogram> {
+		private static final long serialVersionUID = 1L;
+
+		private final Object[] tokens;
+		private final int from, to;
+
+		CountTask(Object[] tokens, int from, int to) {
+			this.tokens = tokens;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected GMHalsteadHistogram compute() {
+			if (to - from <= 500) {
+				return count(tokens, from, to);
+			}
+
+			int mid = (from + to) >>> 1;
+			CountTask left = new CountTask(tokens, from, mid);
+			left.fork();
+			GMHalsteadHistogram right = new CountTask(tokens, mid, to).compute();
+			GMHalsteadHistogram merged = left.join();
+			merged.merge(right);
+			return merged;
+		}
+	}
+
+	private static GMHalsteadHistogram count(Object[] tokens, int from, int to) {
+		GMHalsteadHistogram histogram = new GMHalsteadHistogram();
+		for (int i = from; i < to; i++) {
+			if (tokens[i] instanceof String) {
+				histogram.add((String) tokens[i]);
+			} else {
+				histogram.addKey((Long) tokens[i]);
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return the count of each token: ids depend on the order tokens are interned
+	 */
+	private static Map<Object, Integer> counts(GMHalsteadHistogram histogram) {
+		Map<Object, Integer> counts = new HashMap<>();
+		for (int id = 0; id < histogram.interned(); id++) {
+			if (histogram.count(id) > 0) {
+				String token = histogram.token(id);
+				counts.put(token != null ? token : (Object) histogram.key(id), histogram.count(id));
+			}
+		}
+		return counts;
+	}
+
+	private static Object[] randomTokens(Random random, int n) {
+		Object[] tokens = new Object[n];
+		for (int i = 0; i < n; i++) {
+			// skewed: a few frequent tokens and a long tail
+			int rank = (int) Math.floor(Math.pow(random.nextDouble(), 3) * 5_000);
+			tokens[i] = random.nextBoolean() ? "op" + rank : (Object) (long) rank;
+		}
+		return tokens;
+	}
+
+	@Test
+	public void countsDistinctAndTotalTokens() {
+		GMHalsteadHistogram histogram = new GMHalsteadHistogram();
+		int mov = histogram.add("mov");
+		int rax = histogram.addKey(42);
+		assertEquals(mov, histogram.add("mov"));
+		assertEquals(rax, histogram.addKey(42, 3));
+
+		assertEquals(2, histogram.distinct());
+		assertEquals(6, histogram.total());
+		assertEquals(2, histogram.count(mov));
+		assertEquals(4, histogram.count(rax));
+		assertEquals("mov", histogram.token(mov));
+		assertNull(histogram.token(rax));
+		assertEquals(42, histogram.key(rax));
+	}
+
+	@Test
+	public void removedTokensStayInterned() {
+		GMHalsteadHistogram histogram = new GMHalsteadHistogram();
+		int mov = histogram.add("mov", 2);
+		histogram.add("push");
+		histogram.remove(mov, 2);
+
+		assertEquals(1, histogram.distinct());
+		assertEquals(1, histogram.total());
+		assertEquals(2, histogram.interned());
+
+		// counted again under the same id
+		assertEquals(mov, histogram.add("mov"));
+		assertEquals(2, histogram.distinct());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void cannotRemoveMoreThanCounted() {
+		GMHalsteadHistogram histogram = new GMHalsteadHistogram();
+		histogram.remove(histogram.add("mov"), 2);
+	}
+
+	@Test
+	public void keyTableGrowsPastItsInitialCapacity() {
+		GMHalsteadHistogram histogram = new GMHalsteadHistogram();
+		for (long key = 0; key < 100_000; key++) {
+			assertEquals(key, histogram.addKey(key * 0x10000L));
+		}
+		for (long key = 0; key < 100_000; key++) {
+			assertEquals(key, histogram.addKey(key * 0x10000L));
+		}
+		assertEquals(100_000, histogram.distinct());
+		assertEquals(200_000, histogram.total());
+
+		histogram.clear();
+		assertEquals(0, histogram.interned());
+		assertEquals(0, histogram.total());
+		assertEquals(0, histogram.addKey(7));
+	}
+
+	@Test
+	public void forkJoinMergeEqualsSequentialCount() {
+		Random random = new Random(9);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int run = 0; run < 5; run++) {
+				Object[] tokens = randomTokens(random, 20_000 + random.nextInt(20_000));
+				GMHalsteadHistogram sequential = count(tokens, 0, tokens.length);
+				GMHalsteadHistogram parallel = pool.invoke(new CountTask(tokens, 0, tokens.length));
+
+				assertEquals(sequential.distinct(), parallel.distinct());
+				assertEquals(sequential.total(), parallel.total());
+				assertEquals(counts(sequential), counts(parallel));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void mergeIsCommutative() {
+		Random random = new Random(10);
+		Object[] tokens = randomTokens(random, 10_000);
+		GMHalsteadHistogram a = count(tokens, 0, 4_000);
+		GMHalsteadHistogram b = count(tokens, 4_000, tokens.length);
+
+		GMHalsteadHistogram ab = count(tokens, 0, 4_000);
+		ab.merge(b);
+		GMHalsteadHistogram ba = count(tokens, 4_000, tokens.length);
+		ba.merge(a);
+
+		assertEquals(counts(ab), counts(ba));
+		assertEquals(ab.total(), ba.total());
+	}
+
+	@Test
+	public void truncateKeepsTheIdsOfTheFirstTokens() {
+		Random random = new Random(3);
+		GMHalsteadHistogram histogram = new GMHalsteadHistogram();
+
+		// few distinct keys, so that the key table has long probe clusters
+		List<Long> keys = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			long key = random.nextInt(1000) * 1024L;
+			if (i % 3 == 0) {
+				histogram.add("token" + i);
+			} else if (!keys.contains(key)) {
+				keys.add(key);
+				histogram.addKey(key);
+			}
+		}
+		int interned = histogram.interned();
+
+		for (int query = 0; query < 50; query++) {
+			for (int i = 0; i < 100; i++) {
+				if (random.nextBoolean()) {
+					histogram.addKey(random.nextLong());
+				} else {
+					histogram.add("scratch" + random.nextInt(200));
+				}
+			}
+			histogram.truncate(interned);
+
+			assertEquals(interned, histogram.interned());
+			assertEquals(0, histogram.distinct());
+			assertEquals(0, histogram.total());
+		}
+
+		// the first tokens are still interned with the same ids, the others are new
+		for (int id = 0; id < interned; id++) {
+			String token = histogram.token(id);
+			assertEquals(id, token != null ? histogram.add(token) : histogram.addKey(histogram.key(id)));
+		}
+		assertEquals(interned, histogram.distinct());
+		assertEquals(interned, histogram.addKey(-1));
+		assertNull(histogram.token(interned));
+	}
+
+	@Test
+	public void truncateToZeroEmptiesTheDictionary() {
+		GMHalsteadHistogram histogram = new GMHalsteadHistogram();
+		histogram.add("mov");
+		histogram.addKey(42);
+		histogram.truncate(0);
+
+		assertEquals(0, histogram.interned());
+		assertEquals(0, histogram.addKey(42));
+		assertEquals(1, histogram.add("mov"));
+	}
+}
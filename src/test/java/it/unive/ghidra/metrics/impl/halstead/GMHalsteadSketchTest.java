@@ -0,0 +1,101 @@
+package it.unive.ghidra.metrics.impl.halstead;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GMHalsteadSketchTest {
+
+	// fixed inputs keep the test deterministic; 4 standard errors leave room for the bias of the raw estimate
+	private static final double MAX_SIGMAS = 4;
+
+	private static void assertWithinBound(GMHalsteadSketch sketch, long distinct) {
+		double error = Math.abs(sketch.estimate() - distinct) / (double) distinct;
+		assertTrue("estimate " + sketch.estimate() + " of " + distinct + " distinct tokens", error <= MAX_SIGMAS * sketch.relativeError());
+	}
+
+	@Test
+	public void estimatesAreWithinTheStandardErrorBound() {
+		for (int precision : new int[] { 10, 12, 14 }) {
+			for (int n : new int[] { 10, 100, 1_000, 10_000, 100_000, 1_000_000 }) {
+				GMHalsteadSketch strings = new GMHalsteadSketch(precision);
+				GMHalsteadSketch keys = new GMHalsteadSketch(precision);
+				for (int i = 0; i < n; i++) {
+					strings.add("token" + i);
+					keys.addKey(i);
+				}
+				assertWithinBound(strings, n);
+				assertWithinBound(keys, n);
+			}
+		}
+	}
+
+	@Test
+	public void duplicatesAreNotCounted() {
+		GMHalsteadSketch once = new GMHalsteadSketch(12);
+		GMHalsteadSketch repeated = new GMHalsteadSketch(12);
+		for (int i = 0; i < 5_000; i++) {
+			once.add("mov" + i);
+			for (int r = 0; r < 3; r++) {
+				repeated.add("mov" + i);
+			}
+		}
+		assertArrayEquals(once.toBytes(), repeated.toBytes());
+	}
+
+	@Test
+	public void mergeIsTheSketchOfTheUnion() {
+		GMHalsteadSketch union = new GMHalsteadSketch(12);
+		GMHalsteadSketch[] parts = new GMHalsteadSketch[4];
+		for (int p = 0; p < parts.length; p++) {
+			parts[p] = new GMHalsteadSketch(12);
+		}
+
+		// overlapping parts
+		for (int i = 0; i < 40_000; i++) {
+			union.addKey(i);
+			parts[i % 4].addKey(i);
+			parts[(i / 7) % 4].addKey(i);
+		}
+
+		GMHalsteadSketch merged = new GMHalsteadSketch(12);
+		for (GMHalsteadSketch part : parts) {
+			merged.merge(part);
+		}
+		assertArrayEquals(union.toBytes(), merged.toBytes());
+		assertWithinBound(merged, 40_000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sketchesWithDifferentPrecisionsDoNotMerge() {
+		new GMHalsteadSketch(10).merge(new GMHalsteadSketch(12));
+	}
+
+	@Test
+	public void serializationRoundTrip() {
+		GMHalsteadSketch sketch = new GMHalsteadSketch(8);
+		for (int i = 0; i < 1_000; i++) {
+			sketch.add("operand" + i);
+		}
+
+		GMHalsteadSketch read = GMHalsteadSketch.fromBytes(sketch.toBytes());
+		assertEquals(sketch.precision(), read.precision());
+		assertEquals(sketch.estimate(), read.estimate());
+		assertArrayEquals(sketch.toBytes(), read.toBytes());
+	}
+
+	@Test
+	public void precisionMeetsTheRequestedError() {
+		for (double error : new double[] { 0.2, 0.05, 0.01, 0.005 }) {
+			GMHalsteadSketch sketch = new GMHalsteadSketch(GMHalsteadSketch.precisionFor(error));
+			assertTrue(sketch.relativeError() <= error);
+			if (sketch.precision() > GMHalsteadSketch.MIN_PRECISION) {
+				// the smallest such precision
+				assertTrue(new GMHalsteadSketch(sketch.precision() - 1).relativeError() > error);
+			}
+		}
+		assertEquals(GMHalsteadSketch.MAX_PRECISION, GMHalsteadSketch.precisionFor(0.0001));
+	}
+}
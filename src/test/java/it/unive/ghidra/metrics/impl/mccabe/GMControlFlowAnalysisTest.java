@@ -0,0 +1,316 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class GMControlFlowAnalysisTest {
+
+	/**
+	 * Control flow graph built block by block; block 0 is the entry.
+	 */
+	private static final class Cfg {
+		final List<Set<Integer>> succs = new ArrayList<>();
+		final List<Boolean> exits = new ArrayList<>();
+
+		int block() {
+			succs.add(new HashSet<>());
+			exits.add(false);
+			return succs.size() - 1;
+		}
+
+		Cfg edge(int from, int to) {
+			succs.get(from).add(to);
+			return this;
+		}
+
+		Cfg exit(int block) {
+			exits.set(block, true);
+			return this;
+		}
+
+		static Cfg of(int numBlocks) {
+			Cfg cfg = new Cfg();
+			for (int i = 0; i < numBlocks; i++) {
+				cfg.block();
+			}
+			return cfg;
+		}
+
+		GMControlFlowAnalysis analyze() {
+			int n = succs.size();
+			int[] offsets = new int[n + 1];
+			List<Integer> targets = new ArrayList<>();
+			boolean[] exit = new boolean[n];
+			for (int b = 0; b < n; b++) {
+				offsets[b] = targets.size();
+				targets.addAll(succs.get(b));
+				exit[b] = exits.get(b) || succs.get(b).isEmpty();
+			}
+			offsets[n] = targets.size();
+
+			GMControlFlowAnalysis analysis = new GMControlFlowAnalysis(null);
+			analysis.analyze(n, 0, offsets, targets.stream().mapToInt(Integer::intValue).toArray(), exit);
+			return analysis;
+		}
+
+		/**
+		 * @return e - n + 2 of the blocks reachable from the entry, the virtual exit included
+		 */
+		int cyclomatic() {
+			Set<Integer> reached = new HashSet<>();
+			List<Integer> todo = new ArrayList<>(List.of(0));
+			while (!todo.isEmpty()) {
+				int b = todo.remove(todo.size() - 1);
+				if (reached.add(b)) {
+					todo.addAll(succs.get(b));
+				}
+			}
+			int edges = 0, exitEdges = 0;
+			for (int b : reached) {
+				edges += succs.get(b).size();
+				if (exits.get(b) || succs.get(b).isEmpty()) {
+					exitEdges++;
+				}
+			}
+			return edges + exitEdges - (reached.size() + (exitEdges > 0 ? 1 : 0)) + 2;
+		}
+	}
+
+	/**
+	 * Random structured code: sequences, if-then(-else), switches and loops with a single exit.
+	 *
+	 * @return the last block of the construct, falling through to the next one
+	 */
+	private static int structured(Cfg cfg, Random random, int from, int depth) {
+		if (depth == 0)
+			return from;
+
+		int cur = from;
+		int parts = 1 + random.nextInt(3);
+		for (int p = 0; p < parts; p++) {
+			int next;
+			switch (random.nextInt(6)) {
+			case 0: { // if-then
+				int then = cfg.block();
+				int join = cfg.block();
+				cfg.edge(cur, then).edge(cur, join);
+				cfg.edge(structured(cfg, random, then, depth - 1), join);
+				next = join;
+				break;
+			}
+			case 1: { // if-then-else
+				int then = cfg.block(), other = cfg.block(), join = cfg.block();
+				cfg.edge(cur, then).edge(cur, other);
+				cfg.edge(structured(cfg, random, then, depth - 1), join);
+				cfg.edge(structured(cfg, random, other, depth - 1), join);
+				next = join;
+				break;
+			}
+			case 2: { // switch
+				int join = cfg.block();
+				int cases = 2 + random.nextInt(4);
+				for (int c = 0; c < cases; c++) {
+					int body = cfg.block();
+					cfg.edge(cur, body);
+					cfg.edge(structured(cfg, random, body, depth - 1), join);
+				}
+				next = join;
+				break;
+			}
+			case 3: { // while
+				int header = cfg.block(), body = cfg.block(), after = cfg.block();
+				cfg.edge(cur, header).edge(header, body).edge(header, after);
+				cfg.edge(structured(cfg, random, body, depth - 1), header);
+				next = after;
+				break;
+			}
+			case 4: { // do-while
+				int body = cfg.block(), after = cfg.block();
+				cfg.edge(cur, body);
+				int latch = structured(cfg, random, body, depth - 1);
+				cfg.edge(latch, body).edge(latch, after);
+				next = after;
+				break;
+			}
+			default: { // sequence
+				next = cfg.block();
+				cfg.edge(cur, next);
+			}
+			}
+			cur = next;
+		}
+		return cur;
+	}
+
+	@Test
+	public void straightLine() {
+		GMControlFlowAnalysis analysis = Cfg.of(3).edge(0, 1).edge(1, 2).analyze();
+
+		assertEquals(1, analysis.getEssentialComplexity());
+		assertEquals(1, analysis.getResidueComplexity());
+		assertEquals(0, analysis.getNumLoops());
+	}
+
+	@Test
+	public void ifThenElseWithTwoReturns() {
+		// the returns meet at the virtual exit
+		GMControlFlowAnalysis analysis = Cfg.of(3).edge(0, 1).edge(0, 2).analyze();
+
+		assertEquals(1, analysis.getEssentialComplexity());
+	}
+
+	@Test
+	public void nestedLoops() {
+		// 0 -> 1 (outer header) -> 2 (inner header) -> 3 -> 2; 2 -> 4 -> 1; 1 -> 5
+		Cfg cfg = Cfg.of(6).edge(0, 1).edge(1, 2).edge(1, 5).edge(2, 3).edge(3, 2).edge(2, 4).edge(4, 1);
+		GMControlFlowAnalysis analysis = cfg.analyze();
+
+		assertEquals(1, analysis.getEssentialComplexity());
+		assertEquals(2, analysis.getNumLoops());
+		assertEquals(2, analysis.getMaxLoopNesting());
+		assertTrue(analysis.isReducible());
+	}
+
+	@Test
+	public void breakOutOfLoopIsNotStructured() {
+		// while loop whose body also leaves the loop to the return: reducible, but not structured
+		Cfg cfg = Cfg.of(5).edge(0, 1).edge(1, 2).edge(1, 3).edge(2, 1).edge(2, 4).edge(3, 4);
+		GMControlFlowAnalysis analysis = cfg.analyze();
+
+		assertTrue(analysis.isReducible());
+		assertEquals(1, analysis.getResidueComplexity());
+		assertTrue(analysis.getEssentialComplexity() > 1);
+		assertTrue(analysis.getEssentialComplexity() <= cfg.cyclomatic());
+	}
+
+	@Test
+	public void jumpIntoBranchIsNotStructured() {
+		// the then part jumps into the else part: no proper region is left to collapse
+		Cfg cfg = Cfg.of(4).edge(0, 1).edge(0, 2).edge(1, 2).edge(1, 3).edge(2, 3);
+		GMControlFlowAnalysis analysis = cfg.analyze();
+
+		assertTrue(analysis.isReducible());
+		assertEquals(cfg.cyclomatic(), analysis.getEssentialComplexity());
+	}
+
+	@Test
+	public void jumpIntoLoopIsIrreducible() {
+		// 1 and 2 form a loop entered at both
+		Cfg cfg = Cfg.of(4).edge(0, 1).edge(0, 2).edge(1, 2).edge(2, 1).edge(2, 3);
+		GMControlFlowAnalysis analysis = cfg.analyze();
+
+		assertFalse(analysis.isReducible());
+		assertEquals(cfg.cyclomatic(), analysis.getResidueComplexity());
+		assertTrue(analysis.getEssentialComplexity() > 1);
+	}
+
+	@Test
+	public void endlessLoop() {
+		GMControlFlowAnalysis analysis = Cfg.of(2).edge(0, 1).edge(1, 1).analyze();
+
+		assertEquals(1, analysis.getNumLoops());
+		assertEquals(2, analysis.getEssentialComplexity());
+	}
+
+	@Test
+	public void structuredCodeHasEssentialComplexityOne() {
+		Random random = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			Cfg cfg = new Cfg();
+			cfg.exit(structured(cfg, random, cfg.block(), 1 + random.nextInt(4)));
+			GMControlFlowAnalysis analysis = cfg.analyze();
+
+			assertEquals("structured graph " + i, 1, analysis.getEssentialComplexity());
+			assertEquals(1, analysis.getResidueComplexity());
+		}
+	}
+
+	@Test
+	public void essentialComplexityIsBoundedByCyclomaticComplexity() {
+		Random random = new Random(11);
+		for (int i = 0; i < 2000; i++) {
+			int n = 1 + random.nextInt(25);
+			Cfg cfg = Cfg.of(n);
+			for (int e = random.nextInt(2 * n + 1); e > 0; e--) {
+				cfg.edge(random.nextInt(n), random.nextInt(n));
+			}
+			GMControlFlowAnalysis analysis = cfg.analyze();
+
+			int cyclomatic = cfg.cyclomatic();
+			assertTrue("graph " + i, analysis.getEssentialComplexity() <= cyclomatic);
+			assertTrue("graph " + i, analysis.getEssentialComplexity() >= Math.min(1, cyclomatic));
+			assertEquals("graph " + i, naiveResidue(cfg), analysis.getResidueComplexity());
+		}
+	}
+
+	/**
+	 * T1/T2 on sets: the limit graph is unique whatever the order of the transformations.
+	 */
+	private static int naiveResidue(Cfg cfg) {
+		int n = cfg.succs.size();
+		List<Set<Integer>> out = new ArrayList<>(), in = new ArrayList<>();
+		for (int v = 0; v < n; v++) {
+			out.add(new HashSet<>());
+			in.add(new HashSet<>());
+		}
+
+		// reachable blocks only
+		Set<Integer> reached = new HashSet<>();
+		List<Integer> todo = new ArrayList<>(List.of(0));
+		while (!todo.isEmpty()) {
+			int b = todo.remove(todo.size() - 1);
+			if (reached.add(b)) {
+				todo.addAll(cfg.succs.get(b));
+			}
+		}
+		for (int v : reached) {
+			for (int w : cfg.succs.get(v)) {
+				if (w != v) {
+					out.get(v).add(w);
+					in.get(w).add(v);
+				}
+			}
+		}
+
+		Set<Integer> alive = new HashSet<>(reached);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int v : new ArrayList<>(alive)) {
+				if (v == 0 || !alive.contains(v) || in.get(v).size() != 1)
+					continue;
+
+				int u = in.get(v).iterator().next();
+				out.get(u).remove(v);
+				for (int w : out.get(v)) {
+					in.get(w).remove(v);
+					if (w != u) {
+						out.get(u).add(w);
+						in.get(w).add(u);
+					}
+				}
+				alive.remove(v);
+				changed = true;
+			}
+		}
+
+		boolean reducible = alive.size() == 1;
+		if (reducible)
+			return 1;
+
+		int edges = 0;
+		for (int v : alive) {
+			edges += out.get(v).size();
+		}
+		return edges - alive.size() + 2;
+	}
+}
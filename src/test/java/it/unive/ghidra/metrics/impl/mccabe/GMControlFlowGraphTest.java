@@ -0,0 +1,484 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressSet;
+import ghidra.program.model.address.AddressSetView;
+import ghidra.program.model.address.AddressSpace;
+import ghidra.program.model.address.DefaultAddressFactory;
+import ghidra.program.model.address.GenericAddressSpace;
+import ghidra.program.model.block.CodeBlock;
+import ghidra.program.model.block.CodeBlockIterator;
+import ghidra.program.model.block.CodeBlockModel;
+import ghidra.program.model.block.CodeBlockReference;
+import ghidra.program.model.block.CodeBlockReferenceIterator;
+import ghidra.program.model.listing.Function;
+import ghidra.program.model.listing.FunctionIterator;
+import ghidra.program.model.listing.FunctionManager;
+import ghidra.program.model.listing.Program;
+import ghidra.program.model.symbol.FlowType;
+import ghidra.program.model.symbol.RefType;
+import ghidra.util.task.TaskMonitor;
+
+public class GMControlFlowGraphTest {
+
+	private interface Method {
+		Object invoke(Object[] args) throws Throwable;
+	}
+
+	/**
+	 * @return an implementation of the interface with the given methods only
+	 */
+	private static <T> T proxy(Class<T> type, Map<String, Method> methods) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return type.getSimpleName();
+			}
+			Method implementation = methods.get(method.getName());
+			if (implementation == null)
+				throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+			return implementation.invoke(args);
+		}));
+	}
+
+	private static <T> T iterator(Class<T> type, Iterable<?> elements) {
+		Iterator<?> iterator = elements.iterator();
+		Map<String, Method> methods = new HashMap<>();
+		methods.put("hasNext", args -> iterator.hasNext());
+		methods.put("next", args -> iterator.next());
+		T proxy = proxy(type, methods);
+		methods.put("iterator", args -> proxy);
+		return proxy;
+	}
+
+	private static final int FALL = 0, JUMP = 1, BRANCH = 2, RETURN = 3, CALL = 4;
+
+	/**
+	 * Program of one-byte instructions, whose basic blocks are derived as {@link ghidra.program.model.block.BasicBlockModel} does.
+	 */
+	private static final class FakeProgram {
+		private final AddressSpace space = new GenericAddressSpace("ram", 32, AddressSpace.TYPE_RAM, 0);
+		private final DefaultAddressFactory addressFactory = new DefaultAddressFactory(new AddressSpace[] { space });
+
+		private final int[] kind;
+		private final int[] target;
+		private final TreeSet<Integer> entries = new TreeSet<>();
+		private long modificationNumber = 1;
+
+		private final Program program;
+		private final CodeBlockModel blockModel;
+
+		FakeProgram(int size) {
+			this.kind = new int[size];
+			this.target = new int[size];
+
+			Map<String, Method> functionManager = new HashMap<>();
+			functionManager.put("getFunctionCount", args -> entries.size());
+			functionManager.put("getFunctions", args -> iterator(FunctionIterator.class, functions()));
+			functionManager.put("getFunctionAt", args -> entries.contains(offset(args[0])) ? function(offset(args[0])) : null);
+			functionManager.put("getFunctionContaining", args -> {
+				Integer entry = bodies().get(offset(args[0]));
+				return entry != null ? function(entry) : null;
+			});
+			FunctionManager manager = proxy(FunctionManager.class, functionManager);
+
+			Map<String, Method> program = new HashMap<>();
+			program.put("getModificationNumber", args -> modificationNumber);
+			program.put("getFunctionManager", args -> manager);
+			program.put("getAddressFactory", args -> addressFactory);
+			this.program = proxy(Program.class, program);
+
+			Map<String, Method> blockModel = new HashMap<>();
+			blockModel.put("getCodeBlocks", args -> iterator(CodeBlockIterator.class, blocks(null)));
+			blockModel.put("getCodeBlocksContaining", args -> iterator(CodeBlockIterator.class, blocks((AddressSetView) args[0])));
+			this.blockModel = proxy(CodeBlockModel.class, blockModel);
+		}
+
+		Address address(int offset) {
+			return space.getAddress(offset);
+		}
+
+		private static int offset(Object address) {
+			return (int) ((Address) address).getOffset();
+		}
+
+		/**
+		 * @return the function of each instruction: the instructions flowing from its entry point,
+		 *         up to other entry points and to the instructions of the functions before it
+		 */
+		Map<Integer, Integer> bodies() {
+			Map<Integer, Integer> functionOf = new HashMap<>();
+			for (int entry : entries) {
+				List<Integer> work = new ArrayList<>(List.of(entry));
+				while (!work.isEmpty()) {
+					int i = work.remove(work.size() - 1);
+					if (i >= kind.length || functionOf.containsKey(i) || i != entry && entries.contains(i))
+						continue;
+					functionOf.put(i, entry);
+					if (kind[i] != JUMP && kind[i] != RETURN) {
+						work.add(i + 1);
+					}
+					if (kind[i] == JUMP || kind[i] == BRANCH) {
+						work.add(target[i]);
+					}
+				}
+			}
+			return functionOf;
+		}
+
+		private Function function(int entry) {
+			AddressSet body = new AddressSet();
+			bodies().forEach((i, fn) -> {
+				if (fn == entry) {
+					body.add(address(i));
+				}
+			});
+
+			Map<String, Method> function = new HashMap<>();
+			function.put("getEntryPoint", args -> address(entry));
+			function.put("getBody", args -> body);
+			function.put("isExternal", args -> false);
+			return proxy(Function.class, function);
+		}
+
+		private List<Function> functions() {
+			List<Function> functions = new ArrayList<>();
+			for (int entry : entries) {
+				functions.add(function(entry));
+			}
+			return functions;
+		}
+
+		private boolean isLeader(int i) {
+			if (i == 0 || entries.contains(i))
+				return true;
+			if (kind[i - 1] == JUMP || kind[i - 1] == BRANCH || kind[i - 1] == RETURN)
+				return true;
+			for (int j = 0; j < kind.length; j++) {
+				if ((kind[j] == JUMP || kind[j] == BRANCH) && target[j] == i)
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * @return the blocks containing any address of the set, all of them if the set is null
+		 */
+		private List<CodeBlock> blocks(AddressSetView set) {
+			List<CodeBlock> blocks = new ArrayList<>();
+			int start = 0;
+			for (int i = 0; i < kind.length; i++) {
+				if (i + 1 < kind.length && !isLeader(i + 1))
+					continue;
+
+				boolean selected = set == null;
+				for (int j = start; j <= i && !selected; j++) {
+					selected = set.contains(address(j));
+				}
+				if (selected) {
+					blocks.add(block(start, i));
+				}
+				start = i + 1;
+			}
+			return blocks;
+		}
+
+		private CodeBlock block(int start, int end) {
+			List<CodeBlockReference> destinations = new ArrayList<>();
+			for (int i = start; i <= end; i++) {
+				if (kind[i] == CALL) {
+					destinations.add(reference(RefType.UNCONDITIONAL_CALL, target[i]));
+				}
+			}
+			if (kind[end] == JUMP || kind[end] == BRANCH) {
+				destinations.add(reference(kind[end] == JUMP ? RefType.UNCONDITIONAL_JUMP : RefType.CONDITIONAL_JUMP, target[end]));
+			}
+			if (kind[end] != JUMP && kind[end] != RETURN && end + 1 < kind.length) {
+				destinations.add(reference(RefType.FALL_THROUGH, end + 1));
+			}
+			FlowType flowType = kind[end] == RETURN ? RefType.TERMINATOR : RefType.FALL_THROUGH;
+
+			Map<String, Method> block = new HashMap<>();
+			block.put("getFirstStartAddress", args -> address(start));
+			block.put("getFlowType", args -> flowType);
+			block.put("getDestinations", args -> iterator(CodeBlockReferenceIterator.class, destinations));
+			block.put("getAddressRanges", args -> new AddressSet(address(start), address(end)).getAddressRanges());
+			return proxy(CodeBlock.class, block);
+		}
+
+		private CodeBlockReference reference(FlowType flowType, int destination) {
+			Map<String, Method> reference = new HashMap<>();
+			reference.put("getFlowType", args -> flowType);
+			reference.put("getDestinationAddress", args -> address(destination));
+			return proxy(CodeBlockReference.class, reference);
+		}
+
+		GMControlFlowGraph build() throws Exception {
+			return GMControlFlowGraph.build(program, blockModel, TaskMonitor.DUMMY);
+		}
+
+		GMControlFlowGraph update(GMControlFlowGraph graph, AddressSet changedCode, Set<Integer> changedFunctions) throws Exception {
+			List<Address> functions = new ArrayList<>();
+			for (int entry : changedFunctions) {
+				functions.add(address(entry));
+			}
+			return graph.update(changedCode, functions, blockModel, TaskMonitor.DUMMY);
+		}
+	}
+
+	private static void assertSameBlock(GMControlFlowGraph expected, int e, GMControlFlowGraph actual, int a) {
+		assertEquals(expected.getBlockStart(e), actual.getBlockStart(a));
+		assertEquals(expected.isTerminal(e), actual.isTerminal(a));
+		assertEquals(expected.isEntry(e), actual.isEntry(a));
+		assertEquals(expected.succEnd(e) - expected.succStart(e), actual.succEnd(a) - actual.succStart(a));
+		for (int i = 0; i < expected.succEnd(e) - expected.succStart(e); i++) {
+			int expectedTarget = expected.succTarget(expected.succStart(e) + i);
+			int actualTarget = actual.succTarget(actual.succStart(a) + i);
+			assertEquals(expectedTarget >= 0 ? expected.getBlockStart(expectedTarget) : null,
+					actualTarget >= 0 ? actual.getBlockStart(actualTarget) : null);
+		}
+	}
+
+	private static void assertSameGraph(GMControlFlowGraph expected, GMControlFlowGraph actual) {
+		assertEquals(expected.getModificationNumber(), actual.getModificationNumber());
+		assertEquals(expected.numBlocks(), actual.numBlocks());
+		assertEquals(expected.numEdges(), actual.numEdges());
+		for (int block = 0; block < expected.numBlocks(); block++) {
+			assertSameBlock(expected, block, actual, block);
+			assertEquals(expected.getBlockFunction(block), actual.getBlockFunction(block));
+		}
+
+		assertEquals(expected.numFunctions(), actual.numFunctions());
+		for (int fn = 0; fn < expected.numFunctions(); fn++) {
+			assertEquals(expected.getFunctionEntry(fn), actual.getFunctionEntry(fn));
+			assertEquals(expected.functionEntryBlock(fn), actual.functionEntryBlock(fn));
+			assertEquals(expected.functionBlocksStart(fn), actual.functionBlocksStart(fn));
+			assertEquals(expected.functionBlocksEnd(fn), actual.functionBlocksEnd(fn));
+			for (int i = expected.functionBlocksStart(fn); i < expected.functionBlocksEnd(fn); i++) {
+				assertEquals(expected.functionBlock(i), actual.functionBlock(i));
+			}
+		}
+	}
+
+	/**
+	 * The functions and the blocks outside the functions that the update does not report as
+	 * changed keep the blocks of the base snapshot, as the incremental McCabe counts rely on.
+	 */
+	private static void assertUpdatesReported(GMControlFlowGraph base, GMControlFlowGraph updated) {
+		assertTrue(updated.isUpdateOf(base.getModificationNumber()));
+
+		for (int fn = 0; fn < updated.numFunctions(); fn++) {
+			Address entryPoint = updated.getFunctionEntry(fn);
+			if (updated.getUpdatedFunctions().contains(entryPoint))
+				continue;
+
+			int old = base.functionIndex(entryPoint);
+			assertTrue("function " + entryPoint + " added but not reported", old >= 0);
+			assertEquals(base.functionBlocksEnd(old) - base.functionBlocksStart(old), updated.functionBlocksEnd(fn) - updated.functionBlocksStart(fn));
+			for (int i = 0; i < updated.functionBlocksEnd(fn) - updated.functionBlocksStart(fn); i++) {
+				assertSameBlock(base, base.functionBlock(base.functionBlocksStart(old) + i), updated, updated.functionBlock(updated.functionBlocksStart(fn) + i));
+			}
+		}
+		for (int fn = 0; fn < base.numFunctions(); fn++) {
+			Address entryPoint = base.getFunctionEntry(fn);
+			assertTrue("function " + entryPoint + " removed but not reported",
+					updated.functionIndex(entryPoint) >= 0 || updated.getUpdatedFunctions().contains(entryPoint));
+		}
+
+		if (!updated.isUpdatedOutside()) {
+			List<Integer> baseOutside = new ArrayList<>(), updatedOutside = new ArrayList<>();
+			for (int block = 0; block < base.numBlocks(); block++) {
+				if (base.getBlockFunction(block) < 0) {
+					baseOutside.add(block);
+				}
+			}
+			for (int block = 0; block < updated.numBlocks(); block++) {
+				if (updated.getBlockFunction(block) < 0) {
+					updatedOutside.add(block);
+				}
+			}
+			assertEquals(baseOutside.size(), updatedOutside.size());
+			for (int i = 0; i < baseOutside.size(); i++) {
+				assertSameBlock(base, baseOutside.get(i), updated, updatedOutside.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Entry points of the functions added, removed or with a new body between the two bodies maps.
+	 */
+	private static Set<Integer> changedFunctions(Map<Integer, Integer> before, Map<Integer, Integer> after, Set<Integer> entriesBefore,
+			Set<Integer> entriesAfter) {
+		Set<Integer> changed = new HashSet<>();
+		for (int entry : entriesBefore) {
+			if (!entriesAfter.contains(entry)) {
+				changed.add(entry);
+			}
+		}
+		for (int entry : entriesAfter) {
+			if (!entriesBefore.contains(entry)) {
+				changed.add(entry);
+			}
+		}
+		Set<Integer> instructions = new HashSet<>(before.keySet());
+		instructions.addAll(after.keySet());
+		for (int i : instructions) {
+			Integer b = before.get(i), a = after.get(i);
+			if (b != null && !b.equals(a)) {
+				changed.add(b);
+			}
+			if (a != null && !a.equals(b)) {
+				changed.add(a);
+			}
+		}
+		return changed;
+	}
+
+	@Test
+	public void jumpIntoABlockSplitsIt() throws Exception {
+		FakeProgram p = new FakeProgram(12);
+		p.entries.add(0);
+		p.kind[11] = RETURN;
+		GMControlFlowGraph base = p.build();
+		assertEquals(1, base.numBlocks());
+
+		// a branch at 3 to 8 splits the block in three
+		p.kind[3] = BRANCH;
+		p.target[3] = 8;
+		p.modificationNumber++;
+		GMControlFlowGraph updated = p.update(base, new AddressSet(p.address(3)), Set.of());
+
+		assertEquals(3, updated.numBlocks());
+		assertSameGraph(p.build(), updated);
+		assertUpdatesReported(base, updated);
+
+		// and removing it merges them again
+		p.kind[3] = FALL;
+		p.modificationNumber++;
+		GMControlFlowGraph merged = p.update(updated, new AddressSet(p.address(3)), Set.of());
+
+		assertEquals(1, merged.numBlocks());
+		assertSameGraph(p.build(), merged);
+		assertUpdatesReported(updated, merged);
+	}
+
+	@Test
+	public void newFunctionSplitsTheBlockOfItsEntryPoint() throws Exception {
+		FakeProgram p = new FakeProgram(10);
+		p.entries.add(0);
+		p.kind[4] = RETURN;
+		p.kind[9] = RETURN;
+		GMControlFlowGraph base = p.build();
+
+		Map<Integer, Integer> before = p.bodies();
+		Set<Integer> entriesBefore = new TreeSet<>(p.entries);
+		p.entries.add(7);
+		p.modificationNumber++;
+		GMControlFlowGraph updated = p.update(base, new AddressSet(), changedFunctions(before, p.bodies(), entriesBefore, p.entries));
+
+		assertEquals(3, updated.numBlocks());
+		assertEquals(2, updated.numFunctions());
+		assertSameGraph(p.build(), updated);
+		assertUpdatesReported(base, updated);
+	}
+
+	@Test
+	public void randomEditsMatchARebuild() throws Exception {
+		Random random = new Random(5);
+		for (int round = 0; round < 300; round++) {
+			int size = 2 + random.nextInt(40);
+			FakeProgram p = new FakeProgram(size);
+			for (int i = 0; i < size; i++) {
+				p.kind[i] = random.nextInt(8) < 4 ? FALL : random.nextInt(5);
+				p.target[i] = random.nextInt(size);
+			}
+			for (int i = 0; i < size; i += 1 + random.nextInt(size)) {
+				p.entries.add(i);
+			}
+			GMControlFlowGraph graph = p.build();
+
+			for (int edit = 0; edit < 10; edit++) {
+				Map<Integer, Integer> before = p.bodies();
+				Set<Integer> entriesBefore = new TreeSet<>(p.entries);
+				AddressSet changedCode = new AddressSet();
+
+				for (int n = 1 + random.nextInt(3); n > 0; n--) {
+					int i = random.nextInt(size);
+					if (random.nextInt(4) == 0) {
+						if (!p.entries.remove(i)) {
+							p.entries.add(i);
+						}
+					} else {
+						p.kind[i] = random.nextInt(5);
+						p.target[i] = random.nextInt(size);
+						changedCode.add(p.address(i));
+					}
+				}
+				p.modificationNumber++;
+
+				GMControlFlowGraph updated = p.update(graph, changedCode, changedFunctions(before, p.bodies(), entriesBefore, p.entries));
+				assertSameGraph(p.build(), updated);
+				assertUpdatesReported(graph, updated);
+				graph = updated;
+			}
+		}
+	}
+
+	@Test
+	public void unchangedProgramKeepsEveryBlock() throws Exception {
+		FakeProgram p = new FakeProgram(20);
+		p.entries.addAll(Arrays.asList(0, 6, 13));
+		p.kind[2] = BRANCH;
+		p.target[2] = 5;
+		p.kind[5] = RETURN;
+		p.kind[9] = CALL;
+		p.target[9] = 0;
+		p.kind[12] = JUMP;
+		p.target[12] = 7;
+		p.kind[19] = RETURN;
+		GMControlFlowGraph base = p.build();
+
+		p.modificationNumber++;
+		GMControlFlowGraph updated = p.update(base, new AddressSet(), Set.of());
+
+		assertSameGraph(p.build(), updated);
+		assertTrue(updated.getUpdatedFunctions().isEmpty());
+		assertFalse(updated.isUpdatedOutside());
+	}
+
+	@Test
+	public void callsAreNotFlowEdges() throws Exception {
+		FakeProgram p = new FakeProgram(6);
+		p.entries.addAll(Arrays.asList(0, 4));
+		p.kind[1] = CALL;
+		p.target[1] = 4;
+		p.kind[3] = RETURN;
+		p.kind[5] = RETURN;
+		GMControlFlowGraph graph = p.build();
+
+		assertEquals(2, graph.numBlocks());
+		assertEquals(0, graph.succEnd(0) - graph.succStart(0));
+	}
+}
@@ -0,0 +1,193 @@
+package it.unive.ghidra.metrics.impl.mccabe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GMDominatorTreeTest {
+
+	/**
+	 * Graph renumbered in DFS preorder from vertex 0, unreachable vertices dropped.
+	 */
+	private static final class Numbered {
+		int size;
+		int[] parent;
+		int[] predOffsets, preds;
+		List<List<Integer>> succs = new ArrayList<>();
+	}
+
+	private static Numbered number(List<List<Integer>> graph) {
+		int n = graph.size();
+		int[] number = new int[n];
+		Arrays.fill(number, -1);
+		int[] vertex = new int[n];
+
+		Numbered g = new Numbered();
+		g.parent = new int[n];
+		dfs(graph, 0, -1, number, vertex, g);
+
+		for (int v = 0; v < g.size; v++) {
+			List<Integer> succs = new ArrayList<>();
+			for (int w : graph.get(vertex[v])) {
+				succs.add(number[w]);
+			}
+			g.succs.add(succs);
+		}
+
+		g.predOffsets = new int[g.size + 1];
+		for (List<Integer> succs : g.succs) {
+			for (int w : succs) {
+				g.predOffsets[w + 1]++;
+			}
+		}
+		for (int v = 0; v < g.size; v++) {
+			g.predOffsets[v + 1] += g.predOffsets[v];
+		}
+		g.preds = new int[g.predOffsets[g.size]];
+		int[] next = Arrays.copyOf(g.predOffsets, g.size);
+		for (int v = 0; v < g.size; v++) {
+			for (int w : g.succs.get(v)) {
+				g.preds[next[w]++] = v;
+			}
+		}
+		return g;
+	}
+
+	private static void dfs(List<List<Integer>> graph, int v, int parent, int[] number, int[] vertex, Numbered g) {
+		number[v] = g.size;
+		vertex[g.size] = v;
+		g.parent[g.size] = parent;
+		g.size++;
+		for (int w : graph.get(v)) {
+			if (number[w] < 0) {
+				dfs(graph, w, number[v], number, vertex, g);
+			}
+		}
+	}
+
+	/**
+	 * Iterative data flow: the dominators of a vertex are itself and the common dominators of its predecessors.
+	 */
+	private static BitSet[] naiveDominators(Numbered g) {
+		BitSet[] dom = new BitSet[g.size];
+		for (int v = 0; v < g.size; v++) {
+			dom[v] = new BitSet();
+			if (v == 0) {
+				dom[v].set(0);
+			} else {
+				dom[v].set(0, g.size);
+			}
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int v = 1; v < g.size; v++) {
+				BitSet d = new BitSet();
+				d.set(0, g.size);
+				for (int e = g.predOffsets[v]; e < g.predOffsets[v + 1]; e++) {
+					d.and(dom[g.preds[e]]);
+				}
+				d.set(v);
+				if (!d.equals(dom[v])) {
+					dom[v] = d;
+					changed = true;
+				}
+			}
+		}
+		return dom;
+	}
+
+	private static List<List<Integer>> randomGraph(Random random, int n, int extraEdges) {
+		List<List<Integer>> graph = new ArrayList<>();
+		for (int v = 0; v < n; v++) {
+			graph.add(new ArrayList<>());
+		}
+		// a random tree keeps most vertices reachable, the other edges go anywhere
+		for (int v = 1; v < n; v++) {
+			graph.get(random.nextInt(v)).add(v);
+		}
+		for (int i = 0; i < extraEdges; i++) {
+			graph.get(random.nextInt(n)).add(random.nextInt(n));
+		}
+		return graph;
+	}
+
+	private static void check(GMDominatorTree tree, Numbered g) {
+		tree.build(g.size, g.parent, g.predOffsets, g.preds);
+		BitSet[] dom = naiveDominators(g);
+
+		for (int b = 0; b < g.size; b++) {
+			for (int a = 0; a < g.size; a++) {
+				assertEquals(a + " dom " + b, dom[b].get(a), tree.dominates(a, b));
+			}
+
+			// the immediate dominator is the strict dominator dominated by all the others
+			int idom = -1;
+			for (int a = dom[b].nextSetBit(0); a >= 0; a = dom[b].nextSetBit(a + 1)) {
+				if (a != b && (idom < 0 || dom[a].cardinality() > dom[idom].cardinality())) {
+					idom = a;
+				}
+			}
+			assertEquals("idom of " + b, idom, tree.idom(b));
+		}
+
+		for (int v = 0; v < g.size; v++) {
+			assertEquals(v, tree.vertexAt(tree.in(v)));
+			assertEquals(tree.last(v) - tree.in(v) + 1, countDominated(dom, v));
+		}
+	}
+
+	private static int countDominated(BitSet[] dom, int a) {
+		int count = 0;
+		for (BitSet d : dom) {
+			if (d.get(a)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void matchesNaiveSolverOnRandomGraphs() {
+		Random random = new Random(42);
+		GMDominatorTree tree = new GMDominatorTree(); // reused, as by the analysis
+		for (int i = 0; i < 500; i++) {
+			int n = 1 + random.nextInt(40);
+			check(tree, number(randomGraph(random, n, random.nextInt(3 * n + 1))));
+		}
+	}
+
+	@Test
+	public void diamondAndLoop() {
+		// 0 -> 1, 2; 1, 2 -> 3; 3 -> 1 (loop back into a branch), 3 -> 4
+		List<List<Integer>> graph = List.of(List.of(1, 2), List.of(3), List.of(3), List.of(1, 4), List.of());
+		Numbered g = number(graph);
+		GMDominatorTree tree = new GMDominatorTree();
+		tree.build(g.size, g.parent, g.predOffsets, g.preds);
+
+		assertEquals(-1, tree.idom(0));
+		for (int v = 1; v < g.size; v++) {
+			assertTrue(tree.dominates(0, v));
+		}
+		check(tree, g);
+	}
+
+	@Test
+	public void singleVertex() {
+		Numbered g = number(List.of(List.of(0)));
+		GMDominatorTree tree = new GMDominatorTree();
+		tree.build(g.size, g.parent, g.predOffsets, g.preds);
+
+		assertEquals(1, tree.size());
+		assertEquals(-1, tree.idom(0));
+		assertTrue(tree.dominates(0, 0));
+	}
+}
@@ -0,0 +1,133 @@
+package it.unive.ghidra.metrics.impl.similarity;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import ghidra.program.model.address.Address;
+import ghidra.program.model.mem.MemoryAccessException;
+import ghidra.program.model.mem.MemoryBlock;
+
+public class GMSectionsInputStreamTest {
+
+	/**
+	 * @return an address at the given offset of its block; only {@link Address#add} is supported
+	 */
+	private static Address address(long offset) {
+		return (Address) Proxy.newProxyInstance(Address.class.getClassLoader(), new Class<?>[] { Address.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "add":
+				return address(offset + (long) args[0]);
+			case "getOffset":
+				return offset;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	/**
+	 * @param maxRead most bytes returned by each {@link MemoryBlock#getBytes}, as memory may return fewer than asked
+	 * @param failAt offset of the first unreadable byte, or -1
+	 */
+	private static MemoryBlock block(String name, byte[] bytes, int maxRead, long failAt) {
+		return (MemoryBlock) Proxy.newProxyInstance(MemoryBlock.class.getClassLoader(), new Class<?>[] { MemoryBlock.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getName":
+				return name;
+			case "getSize":
+				return (long) bytes.length;
+			case "getStart":
+				return address(0);
+			case "getBytes":
+				int offset = (int) ((Address) args[0]).getOffset();
+				byte[] b = (byte[]) args[1];
+				int off = (int) args[2];
+				int len = (int) args[3];
+				assertTrue("read past the end of " + name, offset + len <= bytes.length);
+				if (failAt >= 0 && offset + len > failAt)
+					throw new MemoryAccessException("unreadable");
+
+				int count = Math.min(len, maxRead);
+				System.arraycopy(bytes, offset, b, off, count);
+				return count;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static byte[] bytes(int size, int seed) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) (seed + 37 * i);
+		}
+		return bytes;
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.write(part, 0, part.length);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] readAll(GMSectionsInputStream in, int bufferSize) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[bufferSize + 2];
+		int count;
+		while ((count = in.read(buffer, 1, bufferSize)) != -1) {
+			assertTrue(count > 0 && count <= bufferSize);
+			out.write(buffer, 1, count);
+		}
+		assertEquals(-1, in.read(buffer, 1, bufferSize));
+		return out.toByteArray();
+	}
+
+	@Test
+	public void readsCrossBlockBoundaries() throws Exception {
+		byte[] a = bytes(5, 1), b = bytes(1, 2), c = bytes(7, 3);
+		byte[] expected = concat(a, b, c);
+
+		for (int bufferSize : new int[] { 1, 2, 3, 5, 6, 13, 64 }) {
+			for (int maxRead : new int[] { 1, 2, Integer.MAX_VALUE }) {
+				MemoryBlock[] blocks = { block("empty", new byte[0], maxRead, -1), block("a", a, maxRead, -1),
+						block("b", b, maxRead, -1), block("empty", new byte[0], maxRead, -1), block("c", c, maxRead, -1) };
+				assertArrayEquals(expected, readAll(new GMSectionsInputStream(blocks), bufferSize));
+			}
+		}
+	}
+
+	@Test
+	public void singleBytesAreUnsigned() throws Exception {
+		byte[] a = { 0, (byte) 0x7f, (byte) 0x80 }, b = { (byte) 0xff };
+		GMSectionsInputStream in = new GMSectionsInputStream(new MemoryBlock[] { block("a", a, 1, -1), block("b", b, 1, -1) });
+
+		assertEquals(0, in.read());
+		assertEquals(0x7f, in.read());
+		assertEquals(0x80, in.read());
+		assertEquals(0xff, in.read());
+		assertEquals(-1, in.read());
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void emptyReadsReturnZero() throws Exception {
+		GMSectionsInputStream in = new GMSectionsInputStream(new MemoryBlock[0]);
+		assertEquals(0, in.read(new byte[4], 0, 0));
+		assertEquals(-1, in.read(new byte[4], 0, 4));
+	}
+
+	@Test(expected = IOException.class)
+	public void unreadableMemoryIsAnIOException() throws Exception {
+		GMSectionsInputStream in = new GMSectionsInputStream(new MemoryBlock[] { block("a", bytes(10, 4), 4, 6) });
+		readAll(in, 4);
+	}
+}
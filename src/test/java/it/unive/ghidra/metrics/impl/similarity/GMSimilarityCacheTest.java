@@ -0,0 +1,98 @@
+package it.unive.ghidra.metrics.impl.similarity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GMSimilarityCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path cacheFile() {
+		return folder.getRoot().toPath().resolve("cache").resolve("sizes.properties");
+	}
+
+	@Test
+	public void leastRecentlyUsedSizeIsEvicted() throws Exception {
+		GMSimilarityCache cache = new GMSimilarityCache(cacheFile(), 2);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		assertEquals(1, cache.get("a")); // b is now the least recently used
+		cache.put("c", 3);
+
+		assertEquals(1, cache.get("a"));
+		assertEquals(-1, cache.get("b"));
+		assertEquals(3, cache.get("c"));
+	}
+
+	@Test
+	public void sizesSurviveASaveAndLoad() throws Exception {
+		String pairKey = GMSimilarityCache.key("zip", 9, "x", "y");
+
+		GMSimilarityCache cache = new GMSimilarityCache(cacheFile(), 3);
+		cache.put("a", 10);
+		cache.put(pairKey, 20);
+		cache.put("c", 30);
+		cache.get("a");
+		cache.save();
+
+		// least recently used first
+		List<String> lines = Files.readAllLines(cacheFile(), StandardCharsets.ISO_8859_1);
+		assertEquals(List.of(pairKey + "=20", "c=30", "a=10"), lines.subList(1, lines.size()));
+
+		GMSimilarityCache loaded = new GMSimilarityCache(cacheFile(), 3);
+		assertEquals(10, loaded.get("a"));
+		assertEquals(20, loaded.get(pairKey));
+		assertEquals(30, loaded.get("c"));
+
+		// a new load keeps the order of the file: the pair is evicted first
+		loaded = new GMSimilarityCache(cacheFile(), 3);
+		loaded.put("d", 40);
+		assertEquals(-1, loaded.get(pairKey));
+		assertEquals(10, loaded.get("a"));
+	}
+
+	@Test
+	public void damagedEntriesAreIgnored() throws Exception {
+		Files.createDirectories(cacheFile().getParent());
+		Files.write(cacheFile(), List.of("#comment", "a=1", "b=oops", "no separator", "c = 3"), StandardCharsets.ISO_8859_1);
+
+		GMSimilarityCache cache = new GMSimilarityCache(cacheFile(), 10);
+		assertEquals(1, cache.get("a"));
+		assertEquals(-1, cache.get("b"));
+		assertEquals(3, cache.get("c "));
+	}
+
+	@Test
+	public void unmodifiedCacheIsNotWritten() throws Exception {
+		GMSimilarityCache cache = new GMSimilarityCache(cacheFile(), 10);
+		assertEquals(-1, cache.get("a"));
+		cache.save();
+
+		assertFalse(Files.exists(cacheFile()));
+	}
+
+	@Test
+	public void keysTellZippersLevelsAndOrderApart() throws Exception {
+		String x = GMSimilarityCache.digest(new ByteArrayInputStream("x".getBytes(StandardCharsets.US_ASCII)));
+		String y = GMSimilarityCache.digest(new ByteArrayInputStream("y".getBytes(StandardCharsets.US_ASCII)));
+
+		assertEquals(64, x.length());
+		assertTrue(x.matches("[0-9a-f]+"));
+		assertNotEquals(GMSimilarityCache.key("zip", 1, x), GMSimilarityCache.key("zip", 9, x));
+		assertNotEquals(GMSimilarityCache.key("zip", 9, x), GMSimilarityCache.key("gzip", 9, x));
+		assertNotEquals(GMSimilarityCache.key("zip", 9, x, y), GMSimilarityCache.key("zip", 9, y, x));
+	}
+}
@@ -0,0 +1,58 @@
+package it.unive.ghidra.metrics.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipHelperTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] randomText(Random random, int size) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) ('a' + random.nextInt(random.nextBoolean() ? 4 : 26));
+		}
+		return bytes;
+	}
+
+	@Test
+	public void inMemorySizesMatchTheFiles() throws Exception {
+		Random random = new Random(1);
+		Path dir = folder.getRoot().toPath();
+
+		for (String name : new String[] { "a", "a_much_longer_executable_name.exe" }) {
+			byte[] bytes = randomText(random, 200_000);
+			Path file = dir.resolve(name);
+			Files.write(file, bytes);
+
+			assertEquals(Files.size(ZipHelper.zip(dir, file)), ZipHelper.zipSize(new ByteArrayInputStream(bytes)));
+			assertEquals(Files.size(ZipHelper.gzip(dir, file)), ZipHelper.gzipSize(new ByteArrayInputStream(bytes)));
+		}
+	}
+
+	@Test
+	public void sizeOfConcatenationMatchesTheConcatenatedFile() throws Exception {
+		Random random = new Random(2);
+		Path dir = folder.getRoot().toPath();
+
+		byte[] x = randomText(random, 50_000);
+		byte[] y = randomText(random, 70_000);
+		byte[] xy = new byte[x.length + y.length];
+		System.arraycopy(x, 0, xy, 0, x.length);
+		System.arraycopy(y, 0, xy, x.length, y.length);
+		Path file = Files.write(dir.resolve("xy"), xy);
+
+		InputStream[] inputs = { new ByteArrayInputStream(x), new ByteArrayInputStream(y) };
+		assertEquals(Files.size(ZipHelper.zip(dir, file)), ZipHelper.zipSize(inputs));
+	}
+}